@@ -0,0 +1,78 @@
+package net.englab.contextsearcher.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH result files written with {@code -rf json}, usually of the baseline and the candidate build.
+ * For every benchmark present in both files, it prints the change of the score and of the allocated bytes
+ * per operation. A change of the score is only flagged when the error margins of the two runs don't overlap.
+ */
+public class BenchmarkComparison {
+
+    private static final String[] ALLOCATION_METRICS = {"gc.alloc.rate.norm", "·gc.alloc.rate.norm"};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BenchmarkComparison <baseline.json> <candidate.json>");
+            System.exit(1);
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, JsonNode> baseline = read(objectMapper.readTree(new File(args[0])));
+        Map<String, JsonNode> candidate = read(objectMapper.readTree(new File(args[1])));
+
+        System.out.printf("%-90s %14s %14s %8s %12s %12s%n",
+                "Benchmark", "Baseline", "Candidate", "Change", "B/op before", "B/op after");
+        baseline.forEach((name, before) -> {
+            JsonNode after = candidate.get(name);
+            if (after == null) {
+                return;
+            }
+            double scoreBefore = before.at("/primaryMetric/score").asDouble();
+            double scoreAfter = after.at("/primaryMetric/score").asDouble();
+            double errorBefore = before.at("/primaryMetric/scoreError").asDouble();
+            double errorAfter = after.at("/primaryMetric/scoreError").asDouble();
+            boolean significant = Math.abs(scoreAfter - scoreBefore) > errorBefore + errorAfter;
+
+            System.out.printf("%-90s %14.3f %14.3f %+7.1f%%%s %12s %12s%n",
+                    name, scoreBefore, scoreAfter, (scoreAfter / scoreBefore - 1) * 100, significant ? "*" : " ",
+                    allocation(before), allocation(after));
+        });
+        System.out.println("* the difference is larger than the error margins of both runs");
+    }
+
+    /**
+     * Maps the results by the benchmark name along with its parameters.
+     */
+    private static Map<String, JsonNode> read(JsonNode results) {
+        Map<String, JsonNode> byName = new LinkedHashMap<>();
+        for (JsonNode result : results) {
+            Map<String, String> params = new TreeMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = result.path("params").fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                params.put(field.getKey(), field.getValue().asText());
+            }
+            String name = result.path("benchmark").asText().replaceFirst("^net\\.englab\\.contextsearcher\\.", "");
+            byName.put(params.isEmpty() ? name : name + params, result);
+        }
+        return byName;
+    }
+
+    private static String allocation(JsonNode result) {
+        for (String metric : ALLOCATION_METRICS) {
+            JsonNode score = result.path("secondaryMetrics").path(metric).path("score");
+            if (!score.isMissingNode()) {
+                return String.format("%.0f", score.asDouble());
+            }
+        }
+        return "-";
+    }
+}
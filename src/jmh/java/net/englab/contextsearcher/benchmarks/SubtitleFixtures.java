@@ -0,0 +1,124 @@
+package net.englab.contextsearcher.benchmarks;
+
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeMap;
+import com.google.common.collect.TreeRangeMap;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic subtitles and search hits for the benchmarks.
+ * Every fixture is built from a seeded random, so all the builds we compare measure the same data.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class SubtitleFixtures {
+
+    private static final String[] WORDS = {
+            "the", "a", "of", "and", "to", "in", "is", "you", "that", "it", "light", "radiation", "universe",
+            "Big", "Bang,", "telephone", "Manchester", "microwave", "background.", "factor", "Lorentz", "don't"
+    };
+
+    /**
+     * Generates the subtitles of a video. The entries have 3 to 12 words, like the auto-generated subtitles do.
+     *
+     * @param random        the source of randomness
+     * @param entryCount    the number of subtitle entries
+     * @return the subtitle entries
+     */
+    public static List<SubtitleEntry> subtitles(Random random, int entryCount) {
+        List<SubtitleEntry> entries = new ArrayList<>(entryCount);
+        double time = 0;
+        for (int i = 0; i < entryCount; i++) {
+            int wordCount = 3 + random.nextInt(10);
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j < wordCount; j++) {
+                if (j > 0) {
+                    text.append(' ');
+                }
+                text.append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            double duration = 1 + random.nextInt(4000) / 1000.0;
+            entries.add(new SubtitleEntry(time, time + duration, List.of(text.toString())));
+            time += duration;
+        }
+        return entries;
+    }
+
+    /**
+     * Picks a sentence in the subtitles and highlights some of its words the way Elasticsearch does.
+     * The sentence starts at a word of one entry and spans up to 3 entries.
+     *
+     * @param random        the source of randomness
+     * @param subtitles     the subtitles of the video
+     * @param matchRatio    the share of the words of the sentence that are highlighted
+     * @param preTag        the tag that opens a highlighted word
+     * @param postTag       the tag that closes a highlighted word
+     * @return the sentence
+     */
+    public static Sentence sentence(Random random, List<SubtitleEntry> subtitles, double matchRatio,
+                                    String preTag, String postTag) {
+        int firstEntryIndex = random.nextInt(subtitles.size());
+        int lastEntryIndex = Math.min(subtitles.size() - 1, firstEntryIndex + random.nextInt(3));
+
+        String firstText = subtitles.get(firstEntryIndex).text().get(0);
+        String[] firstWords = firstText.split(" ");
+        int startWord = random.nextInt(firstWords.length);
+        int sentencePosition = 0;
+        for (int i = 0; i < startWord; i++) {
+            sentencePosition += firstWords[i].length() + 1;
+        }
+
+        RangeMap<Integer, Integer> sentenceRangeMap = TreeRangeMap.create();
+        StringBuilder sentence = new StringBuilder();
+        for (int i = firstEntryIndex; i <= lastEntryIndex; i++) {
+            String text = subtitles.get(i).text().get(0);
+            int start = sentence.length();
+            if (i > firstEntryIndex) {
+                sentence.append(' ');
+            }
+            sentence.append(i == firstEntryIndex ? text.substring(sentencePosition) : text);
+            sentenceRangeMap.put(Range.closedOpen(start, sentence.length()), i);
+        }
+
+        StringBuilder highlight = new StringBuilder();
+        boolean matched = false;
+        for (String word : sentence.toString().split(" ")) {
+            if (!highlight.isEmpty()) {
+                highlight.append(' ');
+            }
+            if (random.nextDouble() < matchRatio) {
+                highlight.append(preTag).append(word).append(postTag);
+                matched = true;
+            } else {
+                highlight.append(word);
+            }
+        }
+        if (!matched) {
+            // elastic never returns a hit without a match
+            int end = highlight.indexOf(" ");
+            highlight.insert(end < 0 ? highlight.length() : end, postTag).insert(0, preTag);
+        }
+
+        return new Sentence(sentence.toString(), sentencePosition, sentenceRangeMap, highlight.toString(),
+                firstEntryIndex, lastEntryIndex);
+    }
+
+    /**
+     * A sentence of the subtitles as the indexer stores it in a video fragment document.
+     *
+     * @param text              the text of the sentence
+     * @param sentencePosition  the position where the sentence starts in its first subtitle entry
+     * @param sentenceRangeMap  the map from the positions in the sentence to the subtitle entry indices
+     * @param highlight         the sentence with the highlighted words wrapped in tags
+     * @param firstEntryIndex   the index of the first subtitle entry of the sentence
+     * @param lastEntryIndex    the index of the last subtitle entry of the sentence
+     */
+    public record Sentence(String text, int sentencePosition, RangeMap<Integer, Integer> sentenceRangeMap,
+                           String highlight, int firstEntryIndex, int lastEntryIndex) {
+    }
+}
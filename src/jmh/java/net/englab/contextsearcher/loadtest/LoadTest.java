@@ -0,0 +1,246 @@
+package net.englab.contextsearcher.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import net.englab.common.search.json.SearchCommonModule;
+import net.englab.contextsearcher.ContextSearcherApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs the whole application against a stub Elasticsearch ({@link StubElasticsearch}) and an embedded
+ * H2 database in PostgreSQL mode seeded with synthetic videos ({@link LoadTestData}), and sweeps
+ * the search endpoint with an increasing number of concurrent clients.
+ * <p>
+ * For every level, it reports the throughput, the latency percentiles and the bytes allocated per request.
+ * The clients and the stub run in the same JVM, so the allocation includes their share as well.
+ * It's roughly the same for every build, so the numbers are good for comparing two builds
+ * rather than for telling what a request costs in production.
+ */
+public class LoadTest {
+
+    private static final String INDEX_NAME = "videos-load-test";
+    private static final String SUBTITLE_INDEX_PREFIX = "subtitles-";
+    private static final String JDBC_URL =
+            "jdbc:h2:mem:context_searcher;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        ObjectMapper objectMapper = JsonMapper.builder()
+                .findAndAddModules()
+                .addModule(new SearchCommonModule())
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .build();
+
+        long start = System.nanoTime();
+        String subtitleIndexName = options.elasticSubtitleStorage() ? SUBTITLE_INDEX_PREFIX + INDEX_NAME : null;
+        LoadTestData data = new LoadTestData(JDBC_URL, INDEX_NAME, subtitleIndexName, options, objectMapper);
+        System.out.printf("Seeded %d videos in %d ms%n", options.videoCount(), (System.nanoTime() - start) / 1_000_000);
+
+        try (StubElasticsearch elasticsearch = new StubElasticsearch(objectMapper, INDEX_NAME, data.hits(),
+                options.esLatency(), options.totalHits(), subtitleIndexName, data.subtitleDocuments());
+             ConfigurableApplicationContext context = startApplication(elasticsearch, options);
+             HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+
+            System.out.printf("%11s %9s %7s %10s %9s %9s %9s %9s %12s%n",
+                    "Concurrency", "Requests", "Errors", "Req/s", "p50 ms", "p90 ms", "p99 ms", "max ms", "KB/request");
+            List<LevelResult> results = new ArrayList<>();
+            for (int concurrency : options.concurrency()) {
+                LevelResult result = runLevel(client, baseUrl, options, concurrency);
+                results.add(result);
+                System.out.printf("%11d %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f %12.1f%n",
+                        result.concurrency(), result.requests(), result.errors(), result.throughput(),
+                        result.p50Millis(), result.p90Millis(), result.p99Millis(), result.maxMillis(),
+                        result.allocatedBytesPerRequest() / 1024.0);
+            }
+
+            Files.createDirectories(options.output().toAbsolutePath().getParent());
+            objectMapper.writeValue(options.output().toFile(), Map.of("options", options, "results", results));
+            System.out.println("The results are written to " + options.output());
+        }
+    }
+
+    private static ConfigurableApplicationContext startApplication(StubElasticsearch elasticsearch, LoadTestOptions options) {
+        // the command line arguments take precedence over application.properties
+        return new SpringApplicationBuilder(ContextSearcherApplication.class).run(
+                "--server.port=0",
+                "--spring.elasticsearch.uris=" + elasticsearch.url(),
+                "--spring.datasource.url=" + JDBC_URL,
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                // the migrations are written for PostgreSQL, and the schema is already created by the seeding
+                "--spring.flyway.enabled=false",
+                "--context-searcher.warm-up.enabled=false",
+                "--context-searcher.phrase-suggestions.enabled=false",
+                "--context-searcher.search-result-cache.enabled=" + options.searchCache(),
+                "--context-searcher.subtitle-storage.mode=" + options.subtitleStorage(),
+                "--context-searcher.subtitle-storage.index-prefix=" + SUBTITLE_INDEX_PREFIX,
+                "--management.tracing.sampling.probability=0",
+                "--logging.level.root=WARN"
+        );
+    }
+
+    /**
+     * Runs the clients for the warm-up and the measurement, and collects the requests started during the measurement.
+     */
+    private static LevelResult runLevel(HttpClient client, String baseUrl, LoadTestOptions options, int concurrency)
+            throws InterruptedException {
+        long measurementStart = System.nanoTime() + options.warmUp().toNanos();
+        long measurementEnd = measurementStart + options.duration().toNanos();
+
+        List<Worker> workers = new ArrayList<>(concurrency);
+        List<Thread> threads = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            Worker worker = new Worker(client, baseUrl, options, new Random(i), measurementStart, measurementEnd);
+            workers.add(worker);
+            threads.add(Thread.ofVirtual().name("load-test-client-" + i).start(worker));
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Thread.sleep(Duration.ofNanos(Math.max(0, measurementStart - System.nanoTime())));
+        long allocatedBefore = threadMXBean.getTotalThreadAllocatedBytes();
+        Thread.sleep(Duration.ofNanos(Math.max(0, measurementEnd - System.nanoTime())));
+        long allocatedAfter = threadMXBean.getTotalThreadAllocatedBytes();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int requests = 0;
+        int errors = 0;
+        for (Worker worker : workers) {
+            requests += worker.latencyCount;
+            errors += worker.errors;
+        }
+        long[] latencies = new long[requests];
+        int position = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, position, worker.latencyCount);
+            position += worker.latencyCount;
+        }
+        Arrays.sort(latencies);
+
+        return new LevelResult(
+                concurrency,
+                requests,
+                errors,
+                requests / (options.duration().toNanos() / 1e9),
+                percentile(latencies, 0.5),
+                percentile(latencies, 0.9),
+                percentile(latencies, 0.99),
+                percentile(latencies, 1),
+                requests + errors == 0 ? 0 : (double) (allocatedAfter - allocatedBefore) / (requests + errors)
+        );
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * The results of one concurrency level.
+     *
+     * @param concurrency               the number of concurrent clients
+     * @param requests                  the number of successful requests during the measurement
+     * @param errors                    the number of failed requests during the measurement
+     * @param throughput                the number of successful requests per second
+     * @param p50Millis                 the median latency of the successful requests
+     * @param p90Millis                 the 90th percentile of the latency
+     * @param p99Millis                 the 99th percentile of the latency
+     * @param maxMillis                 the maximum latency
+     * @param allocatedBytesPerRequest  the bytes allocated in the whole JVM during the measurement per request
+     */
+    record LevelResult(int concurrency, int requests, int errors, double throughput,
+                       double p50Millis, double p90Millis, double p99Millis, double maxMillis,
+                       double allocatedBytesPerRequest) {
+    }
+
+    /**
+     * A client that sends one search after another, each for a random phrase of the configured set.
+     */
+    private static final class Worker implements Runnable {
+
+        private final HttpClient client;
+        private final String baseUrl;
+        private final LoadTestOptions options;
+        private final Random random;
+        private final long measurementStart;
+        private final long measurementEnd;
+
+        private long[] latencies = new long[1024];
+        private int latencyCount;
+        private int errors;
+
+        Worker(HttpClient client, String baseUrl, LoadTestOptions options, Random random,
+               long measurementStart, long measurementEnd) {
+            this.client = client;
+            this.baseUrl = baseUrl;
+            this.options = options;
+            this.random = random;
+            this.measurementStart = measurementStart;
+            this.measurementEnd = measurementEnd;
+        }
+
+        @Override
+        public void run() {
+            long now;
+            while ((now = System.nanoTime()) < measurementEnd) {
+                boolean measured = now >= measurementStart;
+                boolean succeeded;
+                try {
+                    HttpResponse<Void> response = client.send(nextRequest(), HttpResponse.BodyHandlers.discarding());
+                    succeeded = response.statusCode() == 200;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    succeeded = false;
+                }
+                if (!measured) {
+                    continue;
+                }
+                if (succeeded) {
+                    if (latencyCount == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, latencies.length * 2);
+                    }
+                    latencies[latencyCount++] = System.nanoTime() - now;
+                } else {
+                    errors++;
+                }
+            }
+        }
+
+        private HttpRequest nextRequest() {
+            String phrase = "load test phrase " + random.nextInt(options.phraseCount());
+            StringBuilder uri = new StringBuilder(baseUrl)
+                    .append("/api/v1/search?phrase=").append(URLEncoder.encode(phrase, StandardCharsets.UTF_8))
+                    .append("&size=").append(options.size());
+            if (options.window() != null) {
+                uri.append("&window=").append(options.window());
+            }
+            return HttpRequest.newBuilder(URI.create(uri.toString())).GET().build();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package net.englab.contextsearcher.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.englab.common.search.models.common.EnglishVariety;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.benchmarks.SubtitleFixtures;
+import net.englab.contextsearcher.models.entities.SubtitleConverter;
+import net.englab.contextsearcher.subtitles.SubtitleCodec;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static net.englab.common.search.models.elastic.VideoIndexProperties.SENTENCE;
+
+/**
+ * Seeds the embedded database with synthetic videos and prepares the Elasticsearch hits pointing at them.
+ * The subtitles are generated from a seeded random, so every run searches the same data.
+ * <p>
+ * Only a few sentences of every video are kept for the stub, the subtitles themselves live in the database only.
+ */
+class LoadTestData {
+
+    /**
+     * The schema of the table as it is in production, where it's created by the indexer.
+     * The migrations of this service only add to it.
+     */
+    private static final String CREATE_TABLE = """
+            CREATE TABLE indexed_video (
+                id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                index_name VARCHAR(255),
+                youtube_video_id VARCHAR(255),
+                variety VARCHAR(255),
+                subtitles TEXT,
+                subtitles_binary BYTEA
+            )
+            """;
+
+    private static final String CREATE_INDEX = """
+            CREATE INDEX indexed_video_index_name_youtube_video_id_idx ON indexed_video (index_name, youtube_video_id)
+            """;
+
+    private static final String INSERT_VIDEO = """
+            INSERT INTO indexed_video (index_name, youtube_video_id, variety, subtitles, subtitles_binary)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    private static final int SENTENCES_PER_VIDEO = 4;
+    private static final int INSERT_BATCH_SIZE = 100;
+
+    private final List<ObjectNode> hits = new ArrayList<>();
+    private final Map<String, byte[]> subtitleDocuments = new HashMap<>();
+
+    /**
+     * Generates the videos and writes them to the database.
+     *
+     * @param jdbcUrl           the URL of the embedded database
+     * @param indexName         the name of the index the videos belong to
+     * @param subtitleIndexName the name of the subtitle index, or null if the subtitles aren't read from Elasticsearch
+     * @param options           the options of the load test
+     * @param objectMapper      the mapper that writes the documents the way the indexer does
+     * @throws SQLException if the videos cannot be written
+     * @throws IOException  if the subtitle documents cannot be written
+     */
+    LoadTestData(String jdbcUrl, String indexName, String subtitleIndexName, LoadTestOptions options,
+                 ObjectMapper objectMapper) throws SQLException, IOException {
+        Random random = new Random(42);
+        SubtitleConverter subtitleConverter = new SubtitleConverter();
+        EnglishVariety[] varieties = EnglishVariety.values();
+
+        try (Connection connection = DriverManager.getConnection(jdbcUrl);
+             Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_TABLE);
+            statement.execute(CREATE_INDEX);
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_VIDEO)) {
+                for (int i = 0; i < options.videoCount(); i++) {
+                    String youtubeVideoId = "video" + i;
+                    EnglishVariety variety = varieties[i % varieties.length];
+                    List<SubtitleEntry> subtitles = SubtitleFixtures.subtitles(random, entryCount(random, options));
+
+                    insert.setString(1, indexName);
+                    insert.setString(2, youtubeVideoId);
+                    insert.setString(3, variety.name());
+                    insert.setString(4, subtitleConverter.convertToDatabaseColumn(subtitles));
+                    insert.setBytes(5, options.binarySubtitles() ? SubtitleCodec.encode(subtitles) : null);
+                    insert.addBatch();
+                    if (subtitleIndexName != null) {
+                        // the IDs are generated from 1 in the order of the inserts
+                        subtitleDocuments.put(youtubeVideoId, subtitleDocument(
+                                objectMapper, subtitleIndexName, i + 1, youtubeVideoId, SubtitleCodec.encode(subtitles)
+                        ));
+                    }
+                    if ((i + 1) % INSERT_BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+
+                    for (int j = 0; j < SENTENCES_PER_VIDEO; j++) {
+                        SubtitleFixtures.Sentence sentence = SubtitleFixtures.sentence(
+                                random, subtitles, options.matchRatio(), StubElasticsearch.PRE_TAG, StubElasticsearch.POST_TAG
+                        );
+                        hits.add(hit(objectMapper, indexName, hits.size(), youtubeVideoId, variety, sentence));
+                    }
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Returns the prepared hits, several per video.
+     */
+    List<ObjectNode> hits() {
+        return hits;
+    }
+
+    /**
+     * Returns the documents of the subtitle index as the multi get returns them, by the YouTube video ID.
+     */
+    Map<String, byte[]> subtitleDocuments() {
+        return subtitleDocuments;
+    }
+
+    /**
+     * Picks the number of entries of a video between the minimum and the maximum, closer to the minimum,
+     * since most videos are short and a few are hours long.
+     */
+    private static int entryCount(Random random, LoadTestOptions options) {
+        double logMin = Math.log(options.minEntries());
+        double logMax = Math.log(options.maxEntries());
+        return (int) Math.round(Math.exp(logMin + random.nextDouble() * (logMax - logMin)));
+    }
+
+    private static byte[] subtitleDocument(ObjectMapper objectMapper, String subtitleIndexName, long videoId,
+                                           String youtubeVideoId, byte[] subtitles) throws IOException {
+        ObjectNode document = objectMapper.createObjectNode()
+                .put("_index", subtitleIndexName)
+                .put("_id", youtubeVideoId)
+                .put("_version", 1)
+                .put("_seq_no", 0)
+                .put("_primary_term", 1)
+                .put("found", true);
+        document.putObject("_source")
+                .put("videoId", videoId)
+                .put("subtitles", subtitles);
+        return objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT).writeValueAsBytes(document);
+    }
+
+    private static ObjectNode hit(ObjectMapper objectMapper, String indexName, int id, String youtubeVideoId,
+                                  EnglishVariety variety, SubtitleFixtures.Sentence sentence) {
+        ObjectNode source = objectMapper.createObjectNode()
+                .put("youtubeVideoId", youtubeVideoId)
+                .put("variety", variety.name())
+                .put("sentencePosition", sentence.sentencePosition());
+        source.set("sentenceRangeMap", objectMapper.valueToTree(sentence.sentenceRangeMap()));
+
+        ObjectNode hit = objectMapper.createObjectNode()
+                .put("_index", indexName)
+                .put("_id", String.valueOf(id))
+                .put("_score", 1.0);
+        hit.set("_source", source);
+        hit.putObject("highlight").putArray(SENTENCE).add(sentence.highlight());
+        return hit;
+    }
+}
@@ -0,0 +1,114 @@
+package net.englab.contextsearcher.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The options of the load test. Every option can be set with {@code --name value}, for example
+ * {@code --concurrency 1,16,64 --es-latency 20ms --window 5}.
+ *
+ * @param concurrency       the numbers of concurrent clients to sweep through
+ * @param warmUp            how long the clients run at every level before the measurement starts
+ * @param duration          how long the measurement lasts at every level
+ * @param videoCount        the number of videos in the database
+ * @param minEntries        the minimum number of subtitle entries of a video
+ * @param maxEntries        the maximum number of subtitle entries of a video
+ * @param matchRatio        the share of the words of a found sentence that are highlighted
+ * @param esLatency         how long the stub Elasticsearch takes to answer a search
+ * @param totalHits         the total number of hits the stub reports for every phrase
+ * @param phraseCount       the number of distinct phrases the clients search for
+ * @param size              the size of a page
+ * @param window            the number of subtitle entries around a fragment, or null for all the subtitles
+ * @param searchCache       whether the search result cache is enabled. It's off by default,
+ *                          otherwise most requests would only measure the cache.
+ * @param binarySubtitles   whether the subtitles are stored in the binary format rather than only in JSON
+ * @param subtitleStorage   where the subtitles are read from, either database or elasticsearch.
+ *                          In the latter case, the stub serves the subtitle index as well.
+ * @param output            the file the results are written to
+ */
+record LoadTestOptions(
+        List<Integer> concurrency,
+        Duration warmUp,
+        Duration duration,
+        int videoCount,
+        int minEntries,
+        int maxEntries,
+        double matchRatio,
+        Duration esLatency,
+        long totalHits,
+        int phraseCount,
+        int size,
+        Integer window,
+        boolean searchCache,
+        boolean binarySubtitles,
+        String subtitleStorage,
+        Path output
+) {
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --name value, but got: " + args[i]);
+            }
+            values.put(args[i].substring(2), args[++i]);
+        }
+        LoadTestOptions options = new LoadTestOptions(
+                Arrays.stream(values.getOrDefault("concurrency", "1,4,16,64").split(","))
+                        .map(String::trim)
+                        .map(Integer::valueOf)
+                        .toList(),
+                duration(values.getOrDefault("warm-up", "10s")),
+                duration(values.getOrDefault("duration", "20s")),
+                Integer.parseInt(values.getOrDefault("videos", "2000")),
+                Integer.parseInt(values.getOrDefault("min-entries", "100")),
+                Integer.parseInt(values.getOrDefault("max-entries", "3000")),
+                Double.parseDouble(values.getOrDefault("match-ratio", "0.2")),
+                duration(values.getOrDefault("es-latency", "5ms")),
+                Long.parseLong(values.getOrDefault("total-hits", "5000")),
+                Integer.parseInt(values.getOrDefault("phrases", "500")),
+                Integer.parseInt(values.getOrDefault("size", "10")),
+                values.containsKey("window") ? Integer.valueOf(values.get("window")) : null,
+                Boolean.parseBoolean(values.getOrDefault("search-cache", "false")),
+                Boolean.parseBoolean(values.getOrDefault("binary-subtitles", "true")),
+                values.getOrDefault("subtitle-storage", "database"),
+                Path.of(values.getOrDefault("output", "target/loadtest-result.json"))
+        );
+        values.keySet().removeAll(List.of("concurrency", "warm-up", "duration", "videos", "min-entries", "max-entries",
+                "match-ratio", "es-latency", "total-hits", "phrases", "size", "window", "search-cache",
+                "binary-subtitles", "subtitle-storage", "output"));
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + values.keySet());
+        }
+        if (!List.of("database", "elasticsearch").contains(options.subtitleStorage())) {
+            throw new IllegalArgumentException("Unsupported subtitle storage: " + options.subtitleStorage());
+        }
+        return options;
+    }
+
+    /**
+     * Tells whether the subtitles are read from the subtitle index of the stub Elasticsearch.
+     */
+    boolean elasticSubtitleStorage() {
+        return subtitleStorage.equals("elasticsearch");
+    }
+
+    /**
+     * Parses a duration like 500ms, 10s or 2m.
+     */
+    private static Duration duration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        return switch (value.charAt(value.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            default -> throw new IllegalArgumentException("Unsupported duration: " + value);
+        };
+    }
+}
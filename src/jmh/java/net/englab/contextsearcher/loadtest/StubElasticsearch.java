@@ -0,0 +1,241 @@
+package net.englab.contextsearcher.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.englab.common.search.models.common.EnglishVariety;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import static net.englab.common.search.models.elastic.VideoIndexProperties.SENTENCE;
+
+/**
+ * A local HTTP server that answers the requests of the Elasticsearch client the way a cluster would,
+ * with synthetic hits pointing at the videos in the embedded database.
+ * <p>
+ * A search takes the configured latency, and the same query always gets the same hits.
+ * The response bodies are cached, so the stub itself adds as little work as possible to the measurements.
+ * Only the requests the offset search and the phrase stats send are supported, and if the subtitles are read
+ * from Elasticsearch, the multi gets of the subtitle index, which is reported as already up to date.
+ */
+class StubElasticsearch implements AutoCloseable {
+
+    /**
+     * The tags the prepared highlights use. They are replaced with the tags the search asks for.
+     */
+    static final String PRE_TAG = "<em>";
+    static final String POST_TAG = "</em>";
+
+    private static final int MAX_CACHED_RESPONSES = 100_000;
+
+    private final HttpServer server;
+    private final ObjectMapper objectMapper;
+    private final String indexName;
+    private final List<ObjectNode> hits;
+    private final Duration latency;
+    private final long totalHits;
+    private final String subtitleIndexName;
+    private final Map<String, byte[]> subtitleDocuments;
+    private final Map<String, byte[]> responses = new ConcurrentHashMap<>();
+
+    /**
+     * Starts the server on a random local port.
+     *
+     * @param objectMapper      the mapper that writes the responses
+     * @param indexName         the name of the index the video alias points to
+     * @param hits              the hits the results are made of
+     * @param latency           how long a search takes
+     * @param totalHits         the total number of hits reported for every query
+     * @param subtitleIndexName the name of the subtitle index, or null if the subtitles aren't read from Elasticsearch
+     * @param subtitleDocuments the documents of the subtitle index as the multi get returns them
+     * @throws IOException if the server cannot be started
+     */
+    StubElasticsearch(ObjectMapper objectMapper, String indexName, List<ObjectNode> hits, Duration latency,
+                      long totalHits, String subtitleIndexName, Map<String, byte[]> subtitleDocuments) throws IOException {
+        this.objectMapper = objectMapper;
+        this.indexName = indexName;
+        this.hits = hits;
+        this.latency = latency;
+        this.totalHits = totalHits;
+        this.subtitleIndexName = subtitleIndexName;
+        this.subtitleDocuments = subtitleDocuments;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Returns the URL to connect the Elasticsearch client to.
+     */
+    String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange; InputStream body = exchange.getRequestBody()) {
+            String path = exchange.getRequestURI().getPath();
+            byte[] request = body.readAllBytes();
+            if (subtitleIndexName != null && path.startsWith("/" + subtitleIndexName)) {
+                handleSubtitleIndex(exchange, path.substring(subtitleIndexName.length() + 1), request);
+            } else if (path.endsWith("/_search")) {
+                byte[] response = responses.size() < MAX_CACHED_RESPONSES
+                        ? responses.computeIfAbsent(new String(request), k -> search(request))
+                        : search(request);
+                Thread.sleep(latency);
+                send(exchange, 200, response);
+            } else if (path.startsWith("/_alias/")) {
+                String alias = path.substring("/_alias/".length());
+                ObjectNode response = objectMapper.createObjectNode();
+                response.putObject(indexName).putObject("aliases").putObject(alias);
+                send(exchange, 200, objectMapper.writeValueAsBytes(response));
+            } else if (path.equals("/")) {
+                ObjectNode response = objectMapper.createObjectNode().put("tagline", "You Know, for Search");
+                response.putObject("version").put("number", "8.13.4");
+                send(exchange, 200, objectMapper.writeValueAsBytes(response));
+            } else {
+                ObjectNode response = objectMapper.createObjectNode().put("status", 404);
+                response.putObject("error")
+                        .put("type", "unsupported_operation_exception")
+                        .put("reason", "The stub doesn't support " + exchange.getRequestMethod() + " " + path);
+                send(exchange, 404, objectMapper.writeValueAsBytes(response));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleSubtitleIndex(HttpExchange exchange, String path, byte[] request)
+            throws IOException, InterruptedException {
+        switch (path) {
+            // the index exists
+            case "" -> send(exchange, 200, null);
+            case "/_mget" -> {
+                byte[] response = multiGet(request);
+                Thread.sleep(latency);
+                send(exchange, 200, response);
+            }
+            // the last video copied to the index is the last one in the database, so nothing is copied
+            case "/_search" -> {
+                ObjectNode response = objectMapper.createObjectNode().put("took", 0).put("timed_out", false);
+                response.putObject("_shards").put("total", 1).put("successful", 1).put("skipped", 0).put("failed", 0);
+                ObjectNode hit = response.putObject("hits").putArray("hits").addObject()
+                        .put("_index", subtitleIndexName)
+                        .put("_id", "last");
+                hit.putObject("_source").put("videoId", subtitleDocuments.size());
+                send(exchange, 200, objectMapper.writeValueAsBytes(response));
+            }
+            default -> send(exchange, 404, objectMapper.writeValueAsBytes(objectMapper.createObjectNode().put("status", 404)));
+        }
+    }
+
+    /**
+     * Writes the prepared documents one after another, so the subtitles aren't serialized again on every request.
+     */
+    private byte[] multiGet(byte[] body) throws IOException {
+        JsonNode ids = objectMapper.readTree(body).path("ids");
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        response.write("{\"docs\":[".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < ids.size(); i++) {
+            if (i > 0) {
+                response.write(',');
+            }
+            String id = ids.get(i).asText();
+            byte[] document = subtitleDocuments.get(id);
+            if (document == null) {
+                ObjectNode missing = objectMapper.createObjectNode()
+                        .put("_index", subtitleIndexName)
+                        .put("_id", id)
+                        .put("found", false);
+                document = objectMapper.writeValueAsBytes(missing);
+            }
+            response.write(document);
+        }
+        response.write("]}".getBytes(StandardCharsets.UTF_8));
+        return response.toByteArray();
+    }
+
+    private byte[] search(byte[] body) {
+        try {
+            JsonNode request = objectMapper.readTree(body);
+            int from = request.path("from").asInt(0);
+            int size = request.path("size").asInt(10);
+            JsonNode highlight = request.path("highlight").path("fields").findValue(SENTENCE);
+            String preTag = highlight == null ? PRE_TAG : highlight.path("pre_tags").path(0).asText(PRE_TAG);
+            String postTag = highlight == null ? POST_TAG : highlight.path("post_tags").path(0).asText(POST_TAG);
+
+            ObjectNode response = objectMapper.createObjectNode()
+                    .put("took", latency.toMillis())
+                    .put("timed_out", false);
+            response.putObject("_shards").put("total", 1).put("successful", 1).put("skipped", 0).put("failed", 0);
+            ObjectNode hitsMetadata = response.putObject("hits");
+            hitsMetadata.putObject("total").put("value", totalHits).put("relation", "eq");
+            hitsMetadata.put("max_score", 1.0);
+            ArrayNode hitArray = hitsMetadata.putArray("hits");
+
+            // the same query always finds the same videos, so repeated searches load the same subtitles
+            Random random = new Random(request.path("query").toString().hashCode() * 31L + from);
+            long count = Math.max(0, Math.min(size, totalHits - from));
+            for (int i = 0; i < count; i++) {
+                ObjectNode hit = hits.get(random.nextInt(hits.size())).deepCopy();
+                String text = hit.path("highlight").path(SENTENCE).path(0).asText();
+                ((ArrayNode) hit.path("highlight").path(SENTENCE))
+                        .set(0, text.replace(PRE_TAG, preTag).replace(POST_TAG, postTag));
+                hitArray.add(hit);
+            }
+
+            JsonNode aggregations = request.has("aggregations") ? request.get("aggregations") : request.path("aggs");
+            if (!aggregations.isEmpty()) {
+                // the client asks for typed keys, and the only aggregation we run is a terms one on the variety
+                String name = aggregations.fieldNames().next();
+                ObjectNode terms = response.putObject("aggregations").putObject("sterms#" + name)
+                        .put("doc_count_error_upper_bound", 0)
+                        .put("sum_other_doc_count", 0);
+                ArrayNode buckets = terms.putArray("buckets");
+                EnglishVariety[] varieties = EnglishVariety.values();
+                for (int i = 0; i < varieties.length; i++) {
+                    long docCount = totalHits / varieties.length + (i < totalHits % varieties.length ? 1 : 0);
+                    buckets.addObject().put("key", varieties[i].name()).put("doc_count", docCount);
+                }
+            }
+            return objectMapper.writeValueAsBytes(response);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The stub cannot read the search request", e);
+        }
+    }
+
+    /**
+     * Sends the response. A null body means a response without a body, as a HEAD request gets.
+     */
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        // the client refuses to talk to a server that doesn't say it's Elasticsearch
+        exchange.getResponseHeaders().set("X-Elastic-Product", "Elasticsearch");
+        exchange.sendResponseHeaders(status, body == null ? -1 : body.length);
+        if (body != null) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
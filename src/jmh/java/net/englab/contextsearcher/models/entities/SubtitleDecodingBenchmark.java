@@ -0,0 +1,61 @@
+package net.englab.contextsearcher.models.entities;
+
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.benchmarks.SubtitleFixtures;
+import net.englab.contextsearcher.subtitles.SubtitleCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding the subtitles of one video as they come from the database:
+ * the legacy JSON column and the binary column, both decoded eagerly and through the lazy view.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SubtitleDecodingBenchmark {
+
+    /**
+     * The number of subtitle entries of the video.
+     */
+    @Param({"100", "1000", "10000"})
+    public int entryCount;
+
+    private final SubtitleConverter subtitleConverter = new SubtitleConverter();
+
+    private String json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() {
+        List<SubtitleEntry> subtitles = SubtitleFixtures.subtitles(new Random(42), entryCount);
+        json = subtitleConverter.convertToDatabaseColumn(subtitles);
+        binary = SubtitleCodec.encode(subtitles);
+    }
+
+    @Benchmark
+    public List<SubtitleEntry> json() {
+        return subtitleConverter.convertToEntityAttribute(json);
+    }
+
+    @Benchmark
+    public List<SubtitleEntry> binary() {
+        return SubtitleCodec.decode(binary);
+    }
+
+    /**
+     * Takes a window of 11 entries from the middle of the video, which is all a windowed search needs.
+     */
+    @Benchmark
+    public List<SubtitleEntry> binaryViewWindow() {
+        List<SubtitleEntry> view = SubtitleCodec.view(binary);
+        int middle = view.size() / 2;
+        return List.copyOf(view.subList(Math.max(0, middle - 5), Math.min(view.size(), middle + 6)));
+    }
+}
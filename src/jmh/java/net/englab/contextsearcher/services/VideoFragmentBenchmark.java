@@ -0,0 +1,120 @@
+package net.englab.contextsearcher.services;
+
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import net.englab.common.search.json.SearchCommonModule;
+import net.englab.common.search.models.elastic.VideoFragmentDocument;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.benchmarks.SubtitleFixtures;
+import net.englab.contextsearcher.models.search.VideoFragment;
+import net.englab.contextsearcher.models.search.VideoFragmentPage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static net.englab.common.search.models.elastic.VideoIndexProperties.SENTENCE;
+
+/**
+ * Measures building a page of video fragments from the Elasticsearch hits and the loaded subtitles,
+ * which includes the sentence range map lookups, highlighting and copying the subtitles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class VideoFragmentBenchmark {
+
+    /**
+     * The number of subtitle entries of every video.
+     */
+    @Param({"100", "1000", "10000"})
+    public int entryCount;
+
+    /**
+     * The number of hits on the page. Every hit is in a video of its own.
+     */
+    @Param({"1", "10", "50"})
+    public int hitCount;
+
+    /**
+     * The number of entries returned around the fragment, or "all" to return all the subtitles of the video.
+     */
+    @Param({"all", "5"})
+    public String window;
+
+    /**
+     * The share of the words of the sentence that are highlighted.
+     */
+    @Param({"0.2"})
+    public double matchRatio;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .addModule(new SearchCommonModule())
+            .build();
+
+    private List<Hit<VideoFragmentDocument>> hits;
+    private Map<String, List<SubtitleEntry>> subtitleMap;
+    private Integer windowSize;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        hits = new ArrayList<>(hitCount);
+        subtitleMap = new HashMap<>();
+        windowSize = "all".equals(window) ? null : Integer.valueOf(window);
+
+        for (int i = 0; i < hitCount; i++) {
+            String id = String.valueOf(i);
+            String youtubeVideoId = "video" + i;
+            List<SubtitleEntry> subtitles = SubtitleFixtures.subtitles(random, entryCount);
+            SubtitleFixtures.Sentence sentence = SubtitleFixtures.sentence(
+                    random, subtitles, matchRatio, VideoSearcher.MATCH_START, VideoSearcher.MATCH_END
+            );
+            subtitleMap.put(youtubeVideoId, subtitles);
+
+            // the document goes through the same deserialization as the documents from elastic
+            ObjectNode source = objectMapper.createObjectNode()
+                    .put("youtubeVideoId", youtubeVideoId)
+                    .put("sentence", sentence.text())
+                    .put("sentencePosition", sentence.sentencePosition());
+            source.set("sentenceRangeMap", objectMapper.valueToTree(sentence.sentenceRangeMap()));
+            VideoFragmentDocument document = objectMapper.treeToValue(source, VideoFragmentDocument.class);
+
+            hits.add(Hit.of(h -> h
+                    .index("videos")
+                    .id(id)
+                    .source(document)
+                    .highlight(SENTENCE, List.of(sentence.highlight()))
+            ));
+        }
+    }
+
+    @Benchmark
+    public List<VideoFragment> buildPage() {
+        List<VideoFragment> videos = new ArrayList<>(hits.size());
+        for (Hit<VideoFragmentDocument> hit : hits) {
+            videos.add(VideoSearcher.buildVideoFragment(hit, subtitleMap, windowSize));
+        }
+        return videos;
+    }
+
+    /**
+     * Builds the page and writes it the way the controller does, which materializes the highlighted text.
+     */
+    @Benchmark
+    public void buildAndSerializePage() throws IOException {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), new VideoFragmentPage(hits.size(), buildPage()));
+    }
+}
@@ -0,0 +1,65 @@
+package net.englab.contextsearcher.subtitles;
+
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.benchmarks.SubtitleFixtures;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures highlighting of one found sentence, from the Elasticsearch highlight to the highlighted entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class SubtitleHighlighterBenchmark {
+
+    private static final String PRE_TAG = "<em>";
+    private static final String POST_TAG = "</em>";
+
+    /**
+     * The share of the words of the sentence that are highlighted. A high ratio gives many segments.
+     */
+    @Param({"0.05", "0.5", "1.0"})
+    public double matchRatio;
+
+    private String highlight;
+    private int sentencePosition;
+    private List<SubtitleEntry> entries;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<SubtitleEntry> subtitles = SubtitleFixtures.subtitles(random, 100);
+        SubtitleFixtures.Sentence sentence = SubtitleFixtures.sentence(
+                random, subtitles, matchRatio, PRE_TAG, POST_TAG
+        );
+        highlight = sentence.highlight();
+        sentencePosition = sentence.sentencePosition();
+        entries = subtitles.subList(sentence.firstEntryIndex(), sentence.lastEntryIndex() + 1);
+    }
+
+    @Benchmark
+    public List<SubtitleEntry> offsets() {
+        int[] partEnds = SubtitleHighlighter.parseHighlight(highlight, PRE_TAG, POST_TAG);
+        return SubtitleHighlighter.highlight(partEnds, sentencePosition, entries);
+    }
+
+    /**
+     * The highlighted text is a lazy view, so we access it the way serialization does to make the comparison fair.
+     */
+    @Benchmark
+    public void offsetsMaterialized(Blackhole blackhole) {
+        for (SubtitleEntry entry : offsets()) {
+            for (String part : entry.text()) {
+                blackhole.consume(part);
+            }
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package net.englab.contextsearcher.configs;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.ElasticsearchTransport;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
@@ -13,13 +15,22 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class ElasticSearchConfiguration {
     @Bean
-    public ElasticsearchClient elasticsearchClient(RestClient restClient) {
+    public ElasticsearchTransport elasticsearchTransport(RestClient restClient) {
         ObjectMapper objectMapper = JsonMapper.builder()
                 .findAndAddModules()
                 .addModule(new SearchCommonModule())
                 .build();
 
-        var transport = new RestClientTransport(restClient, new JacksonJsonpMapper(objectMapper));
+        return new RestClientTransport(restClient, new JacksonJsonpMapper(objectMapper));
+    }
+
+    @Bean
+    public ElasticsearchClient elasticsearchClient(ElasticsearchTransport transport) {
         return new ElasticsearchClient(transport);
     }
+
+    @Bean
+    public ElasticsearchAsyncClient elasticsearchAsyncClient(ElasticsearchTransport transport) {
+        return new ElasticsearchAsyncClient(transport);
+    }
 }
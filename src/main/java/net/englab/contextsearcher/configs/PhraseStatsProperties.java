@@ -0,0 +1,25 @@
+package net.englab.contextsearcher.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties of the phrase statistics.
+ *
+ * @param exactCount        whether the total number of fragments is always counted exactly.
+ *                          If it isn't, Elasticsearch stops counting at the count threshold,
+ *                          which makes frequent phrases without facets much cheaper.
+ * @param countThreshold    the number of fragments up to which the count is exact when exact counting is off
+ * @param maxSize           the maximum number of statistics kept in the cache, or 0 to disable the cache
+ * @param ttl               how long the statistics are kept in the cache
+ */
+@ConfigurationProperties("context-searcher.phrase-stats")
+public record PhraseStatsProperties(
+        @DefaultValue("true") boolean exactCount,
+        @DefaultValue("10000") int countThreshold,
+        @DefaultValue("10000") long maxSize,
+        @DefaultValue("10m") Duration ttl
+) {
+}
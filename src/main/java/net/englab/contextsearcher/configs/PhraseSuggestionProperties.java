@@ -0,0 +1,26 @@
+package net.englab.contextsearcher.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties of the phrase suggestions.
+ *
+ * @param enabled           whether the searched phrases are recorded and the suggestions are built from them
+ * @param refreshInterval   how often the recorded searches are saved and the suggestions are rebuilt
+ * @param maxPhrases        the number of the most searched phrases the suggestions are built from
+ * @param maxPendingPhrases the maximum number of distinct phrases recorded between two refreshes.
+ *                          The phrases over it are dropped until the next refresh.
+ * @param maxPhraseLength   the maximum length of a recorded phrase
+ */
+@ConfigurationProperties("context-searcher.phrase-suggestions")
+public record PhraseSuggestionProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("1m") Duration refreshInterval,
+        @DefaultValue("100000") int maxPhrases,
+        @DefaultValue("10000") int maxPendingPhrases,
+        @DefaultValue("100") int maxPhraseLength
+) {
+}
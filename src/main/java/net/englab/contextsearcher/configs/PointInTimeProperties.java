@@ -0,0 +1,21 @@
+package net.englab.contextsearcher.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties of the Elasticsearch points in time behind the search cursors and streams.
+ *
+ * @param keepAlive how long elastic keeps a point in time alive between two consecutive pages.
+ *                  Every abandoned cursor holds the search contexts of the shards for that long.
+ * @param maxOpen   the maximum number of points in time open at the same time.
+ *                  New cursors are rejected until some of them are closed or expire.
+ */
+@ConfigurationProperties("context-searcher.point-in-time")
+public record PointInTimeProperties(
+        @DefaultValue("30s") Duration keepAlive,
+        @DefaultValue("500") int maxOpen
+) {
+}
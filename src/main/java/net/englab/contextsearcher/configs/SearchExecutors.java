@@ -0,0 +1,48 @@
+package net.englab.contextsearcher.configs;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Holds the executors the search pipeline runs its stages on.
+ * They aren't exposed as beans of their own, so they don't replace the application task executor.
+ */
+@Component
+public class SearchExecutors {
+
+    private final ExecutorService subtitleExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ExecutorService highlightExecutor;
+
+    public SearchExecutors(SearchPipelineProperties properties) {
+        int parallelism = properties.highlightParallelism() > 0
+                ? properties.highlightParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        this.highlightExecutor = Executors.newFixedThreadPool(
+                parallelism,
+                Thread.ofPlatform().name("highlight-", 0).daemon().factory()
+        );
+    }
+
+    /**
+     * Returns the executor for blocking subtitle loading. Every task runs on its own virtual thread.
+     */
+    public ExecutorService subtitleExecutor() {
+        return subtitleExecutor;
+    }
+
+    /**
+     * Returns the executor for CPU bound highlighting. It has a bounded number of threads.
+     */
+    public ExecutorService highlightExecutor() {
+        return highlightExecutor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subtitleExecutor.shutdown();
+        highlightExecutor.shutdown();
+    }
+}
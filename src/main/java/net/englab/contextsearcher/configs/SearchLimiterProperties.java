@@ -0,0 +1,41 @@
+package net.englab.contextsearcher.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties of the adaptive concurrency limits of the search stages.
+ *
+ * @param enabled       whether the concurrency of the stages is limited
+ * @param elastic       the limit of concurrent Elasticsearch requests
+ * @param database      the limit of concurrent subtitle queries
+ * @param cheapSize     the maximum page size of a cheap search. Cheap searches are admitted before the others.
+ * @param reservedShare the share of the limit only cheap searches can use
+ * @param retryAfter    the time rejected clients are asked to wait before retrying
+ */
+@ConfigurationProperties("context-searcher.search-limiter")
+public record SearchLimiterProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue StageLimit elastic,
+        @DefaultValue StageLimit database,
+        @DefaultValue("10") int cheapSize,
+        @DefaultValue("0.2") double reservedShare,
+        @DefaultValue("1s") Duration retryAfter
+) {
+
+    /**
+     * The limit of one stage. It moves between the minimum and the maximum depending on the latency of the stage.
+     *
+     * @param initialLimit  the limit before we have any latency measurements
+     * @param minLimit      the lowest the limit can go
+     * @param maxLimit      the highest the limit can go
+     */
+    public record StageLimit(
+            @DefaultValue("20") int initialLimit,
+            @DefaultValue("4") int minLimit,
+            @DefaultValue("200") int maxLimit
+    ) {
+    }
+}
@@ -0,0 +1,14 @@
+package net.englab.contextsearcher.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration properties of the search metrics.
+ *
+ * @param serverTiming whether search responses have a Server-Timing header with the time spent in each stage.
+ *                     It exposes how the search works inside, so it's meant for debugging.
+ */
+@ConfigurationProperties("context-searcher.search-metrics")
+public record SearchMetricsProperties(@DefaultValue("false") boolean serverTiming) {
+}
@@ -0,0 +1,28 @@
+package net.englab.contextsearcher.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties of the non-blocking search pipeline.
+ *
+ * @param elasticTimeout        the maximum time of the Elasticsearch search stage
+ * @param subtitleTimeout       the maximum time of loading the subtitles of one index
+ * @param highlightTimeout      the maximum time of building one video fragment, including the time in the queue
+ * @param highlightParallelism  the maximum number of video fragments built at the same time.
+ *                              If it's 0, the number of available processors is used.
+ * @param parallelHighlightSize the number of hits from which the blocking searches build the fragments of a page
+ *                              in parallel on the highlight executor. Smaller pages are built on the calling thread,
+ *                              since handing them over would cost more than it saves.
+ */
+@ConfigurationProperties("context-searcher.search-pipeline")
+public record SearchPipelineProperties(
+        @DefaultValue("3s") Duration elasticTimeout,
+        @DefaultValue("3s") Duration subtitleTimeout,
+        @DefaultValue("2s") Duration highlightTimeout,
+        @DefaultValue("0") int highlightParallelism,
+        @DefaultValue("8") int parallelHighlightSize
+) {
+}
@@ -0,0 +1,25 @@
+package net.englab.contextsearcher.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties of the search result cache.
+ *
+ * @param enabled       whether the pages are cached. If they aren't, every request runs its own search.
+ * @param maxWeight     the maximum total number of subtitle entries in the cached pages
+ * @param ttl           how long a page is kept in the cache after it has been built
+ * @param refreshAfter  how long after being built a page is rebuilt in the background while
+ *                      the stale page is still served. It should be less than the TTL.
+ *                      If it's not set, pages are never refreshed in the background.
+ */
+@ConfigurationProperties("context-searcher.search-result-cache")
+public record SearchResultCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("2000000") long maxWeight,
+        @DefaultValue("5m") Duration ttl,
+        Duration refreshAfter
+) {
+}
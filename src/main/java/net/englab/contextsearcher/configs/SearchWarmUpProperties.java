@@ -0,0 +1,30 @@
+package net.englab.contextsearcher.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration properties of the warm-up that runs before the application starts accepting traffic.
+ *
+ * @param enabled       whether the warm-up runs on startup
+ * @param phrases       the phrases to search for. They should be representative of real traffic,
+ *                      since the subtitles of the videos they find stay in the cache.
+ * @param iterations    how many times each phrase is searched for
+ * @param size          the page size of the warm-up searches
+ * @param parallelism   the number of searches run at once, which is also the number of connections opened in advance
+ * @param timeout       the longest the warm-up can delay readiness. The searches left are skipped after it.
+ */
+@ConfigurationProperties("context-searcher.warm-up")
+public record SearchWarmUpProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue({"hello", "how are you", "I don't know", "take it easy", "as a matter of fact", "by the way"})
+        List<String> phrases,
+        @DefaultValue("5") int iterations,
+        @DefaultValue("20") int size,
+        @DefaultValue("4") int parallelism,
+        @DefaultValue("60s") Duration timeout
+) {
+}
@@ -0,0 +1,13 @@
+package net.englab.contextsearcher.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Configuration properties of the in-memory subtitle cache.
+ *
+ * @param maxWeight the maximum number of heap bytes the cached subtitles can take up
+ */
+@ConfigurationProperties("context-searcher.subtitle-cache")
+public record SubtitleCacheProperties(@DefaultValue("50000000") long maxWeight) {
+}
@@ -0,0 +1,23 @@
+package net.englab.contextsearcher.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties of the background conversion of subtitles to the binary format.
+ *
+ * @param enabled   whether the conversion should be run
+ * @param batchSize the number of videos converted in one transaction
+ * @param pause     the pause between two batches, so the conversion doesn't overload the database
+ * @param interval  the delay between two runs, which convert the videos inserted since the previous one
+ */
+@ConfigurationProperties("context-searcher.subtitle-migration")
+public record SubtitleMigrationProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("100") int batchSize,
+        @DefaultValue("100ms") Duration pause,
+        @DefaultValue("10m") Duration interval
+) {
+}
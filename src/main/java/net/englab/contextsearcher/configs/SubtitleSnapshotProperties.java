@@ -0,0 +1,29 @@
+package net.englab.contextsearcher.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration properties of the memory-mapped subtitle snapshots.
+ *
+ * @param enabled           whether the subtitles are served from the snapshots. If they aren't,
+ *                          all the subtitles are read from the database.
+ * @param directory         the directory the snapshot files are kept in. It should be on a local disk
+ *                          and survive restarts, so the snapshots don't have to be built from scratch.
+ * @param batchSize         the number of videos read from the database at once while a snapshot is being built
+ * @param refreshInterval   how often the videos added to the index since the last build are appended to its snapshot
+ * @param rebuildInterval   how often a snapshot is built from scratch, so it picks up the videos updated in place
+ *                          and the ones committed after the videos with greater IDs
+ */
+@ConfigurationProperties("context-searcher.subtitle-snapshot")
+public record SubtitleSnapshotProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("snapshots") Path directory,
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("10m") Duration refreshInterval,
+        @DefaultValue("1d") Duration rebuildInterval
+) {
+}
@@ -0,0 +1,39 @@
+package net.englab.contextsearcher.configs;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties of the storage the subtitles are read from.
+ *
+ * @param mode              where the subtitles that are not in the snapshots are read from
+ * @param indexPrefix       the prefix of the subtitle index of every video index. The subtitles of the index
+ *                          {@code videos-1} are kept in {@code <prefix>videos-1}.
+ * @param batchSize         the number of videos copied to the subtitle index at once
+ * @param refreshInterval   how often the videos added to the video index are copied to its subtitle index
+ * @param rebuildInterval   how often all the videos are copied to the subtitle index again, so it picks up
+ *                          the videos updated in place and the ones committed after the videos with greater IDs
+ */
+@ConfigurationProperties("context-searcher.subtitle-storage")
+public record SubtitleStorageProperties(
+        @DefaultValue("database") Mode mode,
+        @DefaultValue("subtitles-") String indexPrefix,
+        @DefaultValue("200") int batchSize,
+        @DefaultValue("10m") Duration refreshInterval,
+        @DefaultValue("1d") Duration rebuildInterval
+) {
+
+    public enum Mode {
+        /**
+         * The subtitles are read from PostgreSQL.
+         */
+        DATABASE,
+        /**
+         * The subtitles are read from a subtitle index in Elasticsearch, which this service copies them to
+         * from PostgreSQL. The videos that haven't been copied yet are still read from PostgreSQL.
+         */
+        ELASTICSEARCH
+    }
+}
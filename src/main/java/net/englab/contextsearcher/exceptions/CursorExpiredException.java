@@ -0,0 +1,15 @@
+package net.englab.contextsearcher.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception is thrown when the point in time behind
+ * a search cursor has expired, so the search needs to be started over.
+ */
+@ResponseStatus(HttpStatus.GONE)
+public class CursorExpiredException extends RuntimeException {
+    public CursorExpiredException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,15 @@
+package net.englab.contextsearcher.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * This exception is thrown when a search cursor can't be decoded,
+ * e.g. it has been changed by the client.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class MalformedCursorException extends RuntimeException {
+    public MalformedCursorException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,28 @@
+package net.englab.contextsearcher.exceptions;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+
+/**
+ * This exception is thrown when a search stage is at its concurrency limit,
+ * so the request is rejected right away instead of waiting in a queue.
+ */
+public class SearchOverloadedException extends ResponseStatusException {
+
+    private final Duration retryAfter;
+
+    public SearchOverloadedException(String reason, Duration retryAfter) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, reason);
+        this.retryAfter = retryAfter;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter.toSeconds())));
+        return headers;
+    }
+}
@@ -0,0 +1,11 @@
+package net.englab.contextsearcher.exceptions;
+
+/**
+ * This exception is thrown when binary encoded subtitles
+ * cannot be decoded because they are malformed or have an unknown version.
+ */
+public class SubtitleFormatException extends RuntimeException {
+    public SubtitleFormatException(String message) {
+        super(message);
+    }
+}
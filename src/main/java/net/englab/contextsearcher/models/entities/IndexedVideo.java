@@ -7,6 +7,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import net.englab.common.search.models.common.EnglishVariety;
 import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.subtitles.SubtitleCodec;
 import org.hibernate.annotations.Immutable;
 
 import java.util.List;
@@ -24,6 +25,7 @@ import static jakarta.persistence.GenerationType.IDENTITY;
 @AllArgsConstructor
 @Entity
 public class IndexedVideo {
+    private static final SubtitleConverter SUBTITLE_CONVERTER = new SubtitleConverter();
 
     /**
      * The unique identifier of the video.
@@ -50,12 +52,41 @@ public class IndexedVideo {
     private EnglishVariety variety;
 
     /**
-     * A list representing the subtitles of the video.
+     * The subtitles of the video in the JSON format.
      * This field is marked as immutable to optimise performance.
-     * If the field was mutable, Hibernate would convert it again to make a new copy,
+     * If the field was mutable, Hibernate would make a new copy of it for dirty checking,
      * which would lead to poor performance because the list of subtitles can be very long.
      */
     @Immutable
-    @Convert(converter = SubtitleConverter.class)
-    private List<SubtitleEntry> subtitles;
+    @Column(name = "subtitles")
+    private String jsonSubtitles;
+
+    /**
+     * The subtitles of the video in the binary format (see {@link SubtitleCodec}).
+     * It's much cheaper to decode than JSON. It's null if the row hasn't been migrated yet.
+     */
+    @Immutable
+    @Column(name = "subtitles_binary")
+    private byte[] binarySubtitles;
+
+    /**
+     * Whether the JSON subtitles were left unconverted because they are finer than a millisecond.
+     * Both this flag and the binary subtitles are reset by a database trigger whenever the JSON subtitles change,
+     * so the binary subtitles never outlive the JSON ones they were converted from.
+     */
+    @Column(name = "subtitles_binary_skipped")
+    private boolean binarySubtitlesSkipped;
+
+    /**
+     * Returns the subtitles of the video, preferring the binary format if it's available.
+     * Binary subtitles are not decoded at once. Instead, each entry is decoded when it's accessed.
+     *
+     * @return a list representing the subtitles of the video
+     */
+    public List<SubtitleEntry> getSubtitles() {
+        if (binarySubtitles != null) {
+            return SubtitleCodec.view(binarySubtitles);
+        }
+        return SUBTITLE_CONVERTER.convertToEntityAttribute(jsonSubtitles);
+    }
 }
@@ -0,0 +1,43 @@
+package net.englab.contextsearcher.models.entities;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Represents the statistics of a search phrase. It's what the phrase suggestions are built from.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+public class SearchQueryStats {
+
+    /**
+     * The normalized search phrase.
+     */
+    @Id
+    private String phrase;
+
+    /**
+     * The number of times the phrase has been searched for.
+     */
+    private long searchCount;
+
+    /**
+     * The number of video fragments found for the phrase the last time it was searched for without filters,
+     * or null if it has only been searched for with filters.
+     */
+    private Long hitCount;
+
+    /**
+     * The last time the phrase was searched for.
+     */
+    private Instant updatedAt;
+}
@@ -0,0 +1,16 @@
+package net.englab.contextsearcher.models.search;
+
+import net.englab.common.search.models.common.EnglishVariety;
+
+import java.util.Map;
+
+/**
+ * Represents how often a phrase occurs in the indexed videos.
+ *
+ * @param count     the number of video fragments containing the phrase
+ * @param exact     whether the count is exact. If it isn't, the phrase occurs in at least that many fragments.
+ * @param varieties the number of video fragments per variety of English, or null if the facets weren't requested.
+ *                  These counts are always exact.
+ */
+public record PhraseStats(long count, boolean exact, Map<EnglishVariety, Long> varieties) {
+}
@@ -0,0 +1,10 @@
+package net.englab.contextsearcher.models.search;
+
+/**
+ * Represents a suggested completion of a search phrase.
+ *
+ * @param phrase    the suggested phrase
+ * @param hits      the number of video fragments the phrase was found in
+ */
+public record PhraseSuggestion(String phrase, long hits) {
+}
@@ -0,0 +1,89 @@
+package net.englab.contextsearcher.models.search;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Represents a position in the search results that the next page starts from.
+ * Clients only see it as an opaque token.
+ *
+ * @param pitId         the ID of the Elasticsearch point in time, or null if it hasn't been opened yet
+ * @param searchAfter   the sort values of the last hit of the previous page
+ */
+public record SearchCursor(String pitId, List<FieldValue> searchAfter) {
+
+    /**
+     * The cursor that starts a new search.
+     */
+    public static final SearchCursor START = new SearchCursor(null, List.of());
+
+    /**
+     * The token clients send to start a new search.
+     */
+    public static final String START_TOKEN = "*";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /**
+     * Encodes the cursor into an opaque URL-safe token.
+     *
+     * @return the token
+     */
+    public String encode() {
+        List<Object> values = searchAfter.stream()
+                .map(FieldValue::_get)
+                .toList();
+        try {
+            byte[] json = OBJECT_MAPPER.writeValueAsBytes(new Token(pitId, values));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode the search cursor", e);
+        }
+    }
+
+    /**
+     * Decodes the cursor from the token.
+     *
+     * @param token the token returned with the previous page or {@link #START_TOKEN}
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static SearchCursor decode(String token) {
+        if (START_TOKEN.equals(token)) {
+            return START;
+        }
+        try {
+            Token decoded = OBJECT_MAPPER.readValue(Base64.getUrlDecoder().decode(token), Token.class);
+            if (decoded.pit() == null || decoded.after() == null) {
+                throw new IllegalArgumentException("The search cursor is malformed");
+            }
+            List<FieldValue> searchAfter = decoded.after().stream()
+                    .map(SearchCursor::toFieldValue)
+                    .toList();
+            return new SearchCursor(decoded.pit(), searchAfter);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The search cursor is malformed", e);
+        }
+    }
+
+    private static FieldValue toFieldValue(Object value) {
+        return switch (value) {
+            case Integer i -> FieldValue.of(i.longValue());
+            case Long l -> FieldValue.of(l.longValue());
+            case Double d -> FieldValue.of(d.doubleValue());
+            case String s -> FieldValue.of(s);
+            case Boolean b -> FieldValue.of(b.booleanValue());
+            case null, default -> throw new IllegalArgumentException("The search cursor is malformed");
+        };
+    }
+
+    record Token(String pit, List<Object> after) {
+    }
+}
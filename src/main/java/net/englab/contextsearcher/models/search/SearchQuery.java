@@ -0,0 +1,20 @@
+package net.englab.contextsearcher.models.search;
+
+import net.englab.common.search.models.common.EnglishVariety;
+
+/**
+ * Represents a single search of a batch search.
+ *
+ * @param phrase    the phrase to search for
+ * @param variety   the specific variety of English, or null to search in all of them
+ * @param from      the offset from the start of the results, 0 by default
+ * @param size      the number of results to be returned, 10 by default
+ * @param window    the number of subtitle entries to return around each found fragment,
+ *                  or null to return all the subtitles of the video
+ */
+public record SearchQuery(String phrase, EnglishVariety variety, Integer from, Integer size, Integer window) {
+    public SearchQuery {
+        from = from == null ? 0 : from;
+        size = size == null ? 10 : size;
+    }
+}
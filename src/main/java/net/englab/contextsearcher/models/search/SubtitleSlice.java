@@ -0,0 +1,16 @@
+package net.englab.contextsearcher.models.search;
+
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+
+import java.util.List;
+
+/**
+ * Represents a continuous part of the subtitles of a video.
+ *
+ * @param youtubeVideoId    the YouTube video ID
+ * @param from              the index of the first subtitle entry in this slice
+ * @param total             the total number of subtitle entries of the video
+ * @param subtitles         the subtitle entries of this slice
+ */
+public record SubtitleSlice(String youtubeVideoId, int from, int total, List<SubtitleEntry> subtitles) {
+}
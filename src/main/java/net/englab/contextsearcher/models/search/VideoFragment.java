@@ -1,23 +1,35 @@
 package net.englab.contextsearcher.models.search;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import net.englab.common.search.models.common.EnglishVariety;
 import net.englab.common.search.models.subtitles.SubtitleEntry;
 
 import java.util.List;
 
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
 /**
  * Represents a specific fragment of a video.
  *
  * @param youtubeVideoId        the YouTube video ID
  * @param variety               the variety of English (accent)
  * @param subtitleEntryIndex    the index representing the position of
- *                              this fragment within the list of subtitle entries
+ *                              this fragment within the full list of subtitle entries
  * @param subtitles the list of subtitle entries associated with the video
+ * @param subtitlesOffset       the index of the first returned subtitle entry within the full list
+ *                              of subtitle entries. It's present only if the subtitles are windowed.
+ * @param subtitlesTotal        the total number of subtitle entries of the video.
+ *                              It's present only if the subtitles are windowed.
  */
 public record VideoFragment(
         String youtubeVideoId,
         EnglishVariety variety,
         Integer subtitleEntryIndex,
-        List<SubtitleEntry> subtitles
+        List<SubtitleEntry> subtitles,
+        @JsonInclude(NON_NULL) Integer subtitlesOffset,
+        @JsonInclude(NON_NULL) Integer subtitlesTotal
 ) {
+    public VideoFragment(String youtubeVideoId, EnglishVariety variety, Integer subtitleEntryIndex, List<SubtitleEntry> subtitles) {
+        this(youtubeVideoId, variety, subtitleEntryIndex, subtitles, null, null);
+    }
 }
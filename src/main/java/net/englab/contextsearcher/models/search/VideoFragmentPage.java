@@ -1,12 +1,21 @@
 package net.englab.contextsearcher.models.search;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
 /**
  * Represents a page of video fragments.
  *
  * @param count     the total number of video fragments found across all pages
  * @param videos    a list of video fragments that are present on the current page
+ * @param cursor    an opaque token to fetch the next page with. It's present only
+ *                  for cursor pagination and only if there might be more pages.
  */
-public record VideoFragmentPage(long count, List<VideoFragment> videos) {
+public record VideoFragmentPage(long count, List<VideoFragment> videos, @JsonInclude(NON_NULL) String cursor) {
+    public VideoFragmentPage(long count, List<VideoFragment> videos) {
+        this(count, videos, null);
+    }
 }
@@ -1,25 +1,59 @@
 package net.englab.contextsearcher.repositories;
 
 import net.englab.contextsearcher.models.entities.IndexedVideo;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
-import java.util.Set;
 
 /**
  * This interface provides methods for querying indexed video objects
  * from the database. It extends JpaRepository for standard CRUD operations
- * on video entities.
+ * on video entities. The subtitles needed by the search are read by {@link StoredSubtitlesRepository}.
  */
 public interface IndexedVideoRepository extends JpaRepository<IndexedVideo, Long> {
 
     /**
-     * Finds a list of indexed videos by their YouTube video IDs.
+     * Finds the next batch of videos of the given index.
      *
-     * @param indexName         the name of the Elasticsearch index
-     * @param youtubeVideoIds   a set of the YouTube video IDs
-     * @return  an Optional containing the found video.
-     *          If no video is found, it will be empty.
+     * @param indexName the name of the Elasticsearch index
+     * @param id        the ID after which the search starts
+     * @param limit     the maximum number of videos to return
+     * @return a list of the found videos ordered by their IDs
      */
-    List<IndexedVideo> findByIndexNameAndYoutubeVideoIdIn(String indexName, Set<String> youtubeVideoIds);
+    @Transactional(readOnly = true)
+    List<IndexedVideo> findByIndexNameAndIdGreaterThanOrderById(String indexName, Long id, Limit limit);
+
+    /**
+     * Finds the videos whose subtitles haven't been converted to the binary format yet,
+     * leaving out the ones that were skipped because they can't be converted.
+     *
+     * @param id    the ID after which the search starts
+     * @param limit the maximum number of videos to return
+     * @return a list of the found videos ordered by their IDs
+     */
+    List<IndexedVideo> findByIdGreaterThanAndBinarySubtitlesIsNullAndBinarySubtitlesSkippedFalseOrderById(Long id, Limit limit);
+
+    /**
+     * Sets the binary subtitles of the given video.
+     *
+     * @param id                the ID of the video
+     * @param binarySubtitles   the subtitles encoded in the binary format
+     */
+    @Modifying
+    @Query(value = "UPDATE indexed_video SET subtitles_binary = :binarySubtitles WHERE id = :id", nativeQuery = true)
+    void updateBinarySubtitles(Long id, byte[] binarySubtitles);
+
+    /**
+     * Marks the given video as one whose subtitles can't be converted to the binary format,
+     * so the migration doesn't read it again until its subtitles change.
+     *
+     * @param id the ID of the video
+     */
+    @Modifying
+    @Query(value = "UPDATE indexed_video SET subtitles_binary_skipped = TRUE WHERE id = :id", nativeQuery = true)
+    void markBinarySubtitlesSkipped(Long id);
 }
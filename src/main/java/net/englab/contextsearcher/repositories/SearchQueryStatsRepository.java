@@ -0,0 +1,46 @@
+package net.englab.contextsearcher.repositories;
+
+import net.englab.contextsearcher.models.entities.SearchQueryStats;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * This interface provides methods for querying and updating the statistics of search phrases.
+ */
+public interface SearchQueryStatsRepository extends JpaRepository<SearchQueryStats, String> {
+
+    /**
+     * Adds the searches of a phrase to its statistics.
+     *
+     * @param phrase        the normalized search phrase
+     * @param searchCount   the number of new searches
+     * @param hitCount      the latest number of video fragments found for the phrase,
+     *                      or null to keep the previous one
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO search_query_stats (phrase, search_count, hit_count, updated_at)
+            VALUES (:phrase, :searchCount, :hitCount, now())
+            ON CONFLICT (phrase) DO UPDATE SET
+                search_count = search_query_stats.search_count + EXCLUDED.search_count,
+                hit_count = COALESCE(EXCLUDED.hit_count, search_query_stats.hit_count),
+                updated_at = EXCLUDED.updated_at
+            """, nativeQuery = true)
+    void addSearches(String phrase, long searchCount, Long hitCount);
+
+    /**
+     * Finds the most searched phrases that have any hits.
+     *
+     * @param hitCount  the number of hits a phrase must have more than
+     * @param limit     the maximum number of phrases to return
+     * @return a list of the phrases ordered from the most searched one
+     */
+    @Transactional(readOnly = true)
+    List<SearchQueryStats> findByHitCountGreaterThanOrderBySearchCountDesc(long hitCount, Limit limit);
+}
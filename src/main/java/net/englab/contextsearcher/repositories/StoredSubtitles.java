@@ -0,0 +1,33 @@
+package net.englab.contextsearcher.repositories;
+
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.models.entities.IndexedVideo;
+import net.englab.contextsearcher.models.entities.SubtitleConverter;
+import net.englab.contextsearcher.subtitles.SubtitleCodec;
+
+import java.util.List;
+
+/**
+ * The subtitles of an indexed video as they are stored in the database, without the rest of the video.
+ * It's a row read by {@link StoredSubtitlesRepository}. Unlike {@link IndexedVideo}, it's not an entity.
+ *
+ * @param youtubeVideoId    the YouTube video ID
+ * @param binarySubtitles   the subtitles in the binary format, or null if the row hasn't been migrated yet
+ * @param jsonSubtitles     the subtitles in the JSON format. It's only read if there are no binary subtitles.
+ */
+public record StoredSubtitles(String youtubeVideoId, byte[] binarySubtitles, String jsonSubtitles) {
+    private static final SubtitleConverter SUBTITLE_CONVERTER = new SubtitleConverter();
+
+    /**
+     * Returns the subtitles, preferring the binary format if it's available.
+     * Binary subtitles are not decoded at once. Instead, each entry is decoded when it's accessed.
+     *
+     * @return a list representing the subtitles of the video
+     */
+    public List<SubtitleEntry> subtitles() {
+        if (binarySubtitles != null) {
+            return SubtitleCodec.view(binarySubtitles);
+        }
+        return SUBTITLE_CONVERTER.convertToEntityAttribute(jsonSubtitles);
+    }
+}
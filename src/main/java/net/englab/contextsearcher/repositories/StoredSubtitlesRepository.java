@@ -0,0 +1,63 @@
+package net.englab.contextsearcher.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the subtitles of indexed videos with plain JDBC. It's the hot path of every search that misses the caches,
+ * so it skips Hibernate altogether: there are no entities, no persistence context and no dirty checking,
+ * and only the columns needed for the subtitles are read.
+ */
+@Repository
+@RequiredArgsConstructor
+public class StoredSubtitlesRepository {
+
+    /**
+     * The IDs are bound as one array parameter, so the statement is the same for any number of them,
+     * and the driver can keep it prepared. The binary subtitles are preferred, so the JSON ones
+     * are only transferred for the rows that haven't been migrated yet.
+     */
+    private static final String FIND_SUBTITLES = """
+            SELECT youtube_video_id,
+                   subtitles_binary,
+                   CASE WHEN subtitles_binary IS NULL THEN subtitles END AS subtitles
+            FROM indexed_video
+            WHERE index_name = ? AND youtube_video_id = ANY (?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Finds the subtitles of the given videos.
+     *
+     * @param indexName         the name of the Elasticsearch index
+     * @param youtubeVideoIds   a set of the YouTube video IDs
+     * @return the stored subtitles of the found videos
+     */
+    public List<StoredSubtitles> findSubtitles(String indexName, Set<String> youtubeVideoIds) {
+        if (youtubeVideoIds.isEmpty()) {
+            return List.of();
+        }
+        List<StoredSubtitles> subtitles = new ArrayList<>(youtubeVideoIds.size());
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(FIND_SUBTITLES);
+            statement.setString(1, indexName);
+            statement.setArray(2, connection.createArrayOf("varchar", youtubeVideoIds.toArray()));
+            return statement;
+        }, resultSet -> {
+            // the rows are taken one by one straight from the result set, without an intermediate representation
+            subtitles.add(new StoredSubtitles(
+                    resultSet.getString(1),
+                    resultSet.getBytes(2),
+                    resultSet.getString(3)
+            ));
+        });
+        return subtitles;
+    }
+}
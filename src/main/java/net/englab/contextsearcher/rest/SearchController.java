@@ -1,15 +1,39 @@
 package net.englab.contextsearcher.rest;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.RequiredArgsConstructor;
 import net.englab.common.search.models.common.EnglishVariety;
+import net.englab.contextsearcher.configs.SearchMetricsProperties;
+import net.englab.contextsearcher.models.search.PhraseStats;
+import net.englab.contextsearcher.models.search.SearchQuery;
 import net.englab.contextsearcher.models.search.VideoFragmentPage;
+import net.englab.contextsearcher.services.PhraseStatsSearcher;
+import net.englab.contextsearcher.services.PhraseSuggester;
+import net.englab.contextsearcher.services.SearchMetrics;
+import net.englab.contextsearcher.services.SearchResultCache;
+import net.englab.contextsearcher.services.SearchTrace;
 import net.englab.contextsearcher.services.VideoSearcher;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A REST controller that provides the search functionality.
@@ -20,6 +44,12 @@ import org.springframework.web.server.ResponseStatusException;
 public class SearchController {
 
     private final VideoSearcher videoSearcher;
+    private final SearchResultCache searchResultCache;
+    private final ObjectMapper objectMapper;
+    private final SearchMetrics searchMetrics;
+    private final SearchMetricsProperties searchMetricsProperties;
+    private final PhraseSuggester phraseSuggester;
+    private final PhraseStatsSearcher phraseStatsSearcher;
 
     /**
      * Searches for video fragments in which the given phrase is mentioned.
@@ -28,17 +58,160 @@ public class SearchController {
      * @param variety   filter by variety of English
      * @param from      the offset which determines where the page begins
      * @param size      the size of the page
-     * @return a video search result
+     * @param window    the number of subtitle entries to return around each found fragment.
+     *                  If it's not specified, all the subtitles of the video are returned.
+     *                  The rest of the subtitles can be loaded from the video subtitles endpoint.
+     * @param cursor    the cursor returned with the previous page, or "*" to start cursor pagination.
+     *                  It can't be used together with the offset.
+     * @return a video search result. The request thread is released while the search is running.
      */
     @GetMapping
-    public VideoFragmentPage search(
+    public DeferredResult<ResponseEntity<VideoFragmentPage>> search(
             String phrase,
             @RequestParam(required = false) EnglishVariety variety,
             @RequestParam(defaultValue = "0") int from,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) Integer window,
+            @RequestParam(required = false) String cursor) {
         if (size > 50) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The size cannot be more than 50");
         }
-        return videoSearcher.search(phrase, variety, from, size);
+        if (window != null && window < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The window cannot be negative");
+        }
+        DeferredResult<ResponseEntity<VideoFragmentPage>> result = new DeferredResult<>();
+        SearchTrace trace = searchMetrics.newTrace();
+        if (cursor == null) {
+            CompletableFuture<VideoFragmentPage> page = trace.bind(
+                    () -> searchResultCache.searchAsync(phrase, variety, from, size, window)
+            );
+            // if the client goes away or the request times out, there is no point in finishing the search
+            result.onTimeout(() -> page.cancel(true));
+            result.onError(e -> page.cancel(true));
+            page.whenComplete((videos, e) -> {
+                if (e == null) {
+                    if (from == 0) {
+                        // the count of a filtered search isn't the count of the phrase
+                        phraseSuggester.record(phrase, variety == null ? videos.count() : null);
+                    }
+                    result.setResult(toResponse(videos, trace));
+                } else {
+                    result.setErrorResult(toErrorResult(e));
+                }
+            });
+            return result;
+        }
+        if (from != 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The cursor cannot be used with the offset");
+        }
+        if (size < 1) {
+            // an empty page has no last hit to continue from
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The size must be at least 1 to use the cursor");
+        }
+        VideoFragmentPage page = trace.bind(() -> videoSearcher.search(phrase, variety, cursor, size, window));
+        result.setResult(toResponse(page, trace));
+        return result;
+    }
+
+    /**
+     * Searches for video fragments in which the given phrase is mentioned and streams them
+     * as newline delimited JSON. Fragments are sent as soon as they are ready,
+     * so clients can render the first results before the rest of them are found.
+     *
+     * @param phrase    the search phrase
+     * @param variety   filter by variety of English
+     * @param from      the offset which determines where the results begin
+     * @param size      the total number of fragments to return
+     * @param window    the number of subtitle entries to return around each found fragment
+     * @return a stream of video fragments
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody stream(
+            String phrase,
+            @RequestParam(required = false) EnglishVariety variety,
+            @RequestParam(defaultValue = "0") int from,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) Integer window) {
+        if (size > 500) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The size cannot be more than 500");
+        }
+        if (window != null && window < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The window cannot be negative");
+        }
+        // the writer must not close the response stream after each fragment
+        ObjectWriter writer = objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return outputStream -> videoSearcher.stream(phrase, variety, from, size, window, fragment -> {
+            try {
+                writer.writeValue(outputStream, fragment);
+                outputStream.write('\n');
+                outputStream.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Counts the video fragments in which the given phrase is mentioned without returning them.
+     * It never loads subtitles, so it's the way to go for the callers that only need the numbers.
+     *
+     * @param phrase    the search phrase
+     * @param variety   filter by variety of English
+     * @param facets    whether to count the fragments of each variety of English as well
+     * @return the statistics of the phrase
+     */
+    @GetMapping("/stats")
+    public PhraseStats stats(
+            String phrase,
+            @RequestParam(required = false) EnglishVariety variety,
+            @RequestParam(defaultValue = "true") boolean facets) {
+        return phraseStatsSearcher.count(phrase, variety, facets);
+    }
+
+    /**
+     * Runs several searches at once. It's much cheaper than running them one by one
+     * since all of them are sent to Elasticsearch in one request, and the subtitles
+     * of all the found videos are loaded together.
+     *
+     * @param queries   the search queries
+     * @return the video search results in the order of the queries
+     */
+    @PostMapping("/batch")
+    public List<VideoFragmentPage> searchBatch(@RequestBody List<SearchQuery> queries) {
+        if (queries.size() > 100) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The batch cannot contain more than 100 queries");
+        }
+        for (SearchQuery query : queries) {
+            if (query == null || query.phrase() == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Every query of the batch must have a phrase");
+            }
+            if (query.size() > 50) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The size cannot be more than 50");
+            }
+            if (query.window() != null && query.window() < 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The window cannot be negative");
+            }
+        }
+        return videoSearcher.search(queries);
+    }
+
+    private ResponseEntity<VideoFragmentPage> toResponse(VideoFragmentPage page, SearchTrace trace) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (searchMetricsProperties.serverTiming()) {
+            response.header("Server-Timing", trace.toServerTiming());
+        }
+        return response.body(page);
+    }
+
+    /**
+     * Unwraps the exception a search future has failed with, so it's handled the same way
+     * as if it was thrown by a blocking search.
+     */
+    private static Throwable toErrorResult(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof TimeoutException) {
+            return new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "The search has timed out", cause);
+        }
+        return cause;
     }
 }
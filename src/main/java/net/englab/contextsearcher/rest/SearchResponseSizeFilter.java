@@ -0,0 +1,139 @@
+package net.englab.contextsearcher.rest;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A filter that records the size of the search response bodies.
+ * The bodies are counted as they are written, so streamed responses are never buffered.
+ */
+@Component
+public class SearchResponseSizeFilter extends OncePerRequestFilter {
+
+    private static final String WRITTEN_BYTES_ATTRIBUTE = SearchResponseSizeFilter.class.getName() + ".writtenBytes";
+
+    private final Map<String, DistributionSummary> summaries;
+
+    public SearchResponseSizeFilter(MeterRegistry meterRegistry) {
+        this.summaries = Map.of(
+                "/api/v1/search", summary(meterRegistry, "search"),
+                "/api/v1/search/stream", summary(meterRegistry, "stream"),
+                "/api/v1/search/batch", summary(meterRegistry, "batch")
+        );
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !summaries.containsKey(request.getRequestURI());
+    }
+
+    /**
+     * The searches complete asynchronously, so the body is written either by the async dispatch
+     * or by a separate thread through the stream obtained in the first dispatch.
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        AtomicLong writtenBytes = (AtomicLong) request.getAttribute(WRITTEN_BYTES_ATTRIBUTE);
+        if (writtenBytes == null) {
+            writtenBytes = new AtomicLong();
+            request.setAttribute(WRITTEN_BYTES_ATTRIBUTE, writtenBytes);
+        }
+        try {
+            filterChain.doFilter(request, new CountingResponse(response, writtenBytes));
+        } finally {
+            if (!request.isAsyncStarted()) {
+                summaries.get(request.getRequestURI()).record(writtenBytes.get());
+            }
+        }
+    }
+
+    private static DistributionSummary summary(MeterRegistry meterRegistry, String endpoint) {
+        return DistributionSummary.builder("search.response.size")
+                .description("The size of the search response bodies")
+                .baseUnit("bytes")
+                .tag("endpoint", endpoint)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static final class CountingResponse extends HttpServletResponseWrapper {
+
+        private final AtomicLong writtenBytes;
+        private ServletOutputStream outputStream;
+
+        CountingResponse(HttpServletResponse response, AtomicLong writtenBytes) {
+            super(response);
+            this.writtenBytes = writtenBytes;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new CountingOutputStream(super.getOutputStream(), writtenBytes);
+            }
+            return outputStream;
+        }
+    }
+
+    private static final class CountingOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+        private final AtomicLong writtenBytes;
+
+        CountingOutputStream(ServletOutputStream delegate, AtomicLong writtenBytes) {
+            this.delegate = delegate;
+            this.writtenBytes = writtenBytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            writtenBytes.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            writtenBytes.addAndGet(len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
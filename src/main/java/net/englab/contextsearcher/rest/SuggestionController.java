@@ -0,0 +1,42 @@
+package net.englab.contextsearcher.rest;
+
+import lombok.RequiredArgsConstructor;
+import net.englab.contextsearcher.models.search.PhraseSuggestion;
+import net.englab.contextsearcher.services.PhraseSuggester;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+
+/**
+ * A REST controller that suggests phrases while users are typing them.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v1/suggestions")
+public class SuggestionController {
+
+    private final PhraseSuggester phraseSuggester;
+
+    /**
+     * Suggests completions of the given prefix. The suggestions are served from memory,
+     * so it's cheap enough to be called on every keystroke.
+     *
+     * @param prefix    the beginning of a phrase
+     * @param size      the maximum number of suggestions
+     * @return the most searched phrases that start with the prefix, along with their hit counts
+     */
+    @GetMapping
+    public List<PhraseSuggestion> suggest(
+            @RequestParam(defaultValue = "") String prefix,
+            @RequestParam(defaultValue = "10") int size) {
+        if (size < 1 || size > 50) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The size must be between 1 and 50");
+        }
+        return phraseSuggester.suggest(prefix, size);
+    }
+}
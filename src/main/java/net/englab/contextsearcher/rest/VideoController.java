@@ -0,0 +1,47 @@
+package net.englab.contextsearcher.rest;
+
+import lombok.RequiredArgsConstructor;
+import net.englab.contextsearcher.models.search.SubtitleSlice;
+import net.englab.contextsearcher.services.SubtitleService;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A REST controller that provides access to the indexed videos.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v1/videos")
+public class VideoController {
+
+    private final SubtitleService subtitleService;
+
+    /**
+     * Returns a part of the subtitles of the given video.
+     * It lets clients load more context around a windowed search result.
+     *
+     * @param youtubeVideoId    the YouTube video ID
+     * @param from              the index of the first subtitle entry (inclusive)
+     * @param to                the index of the last subtitle entry (exclusive)
+     * @return a slice of the subtitles
+     */
+    @GetMapping("/{youtubeVideoId}/subtitles")
+    public SubtitleSlice findSubtitles(
+            @PathVariable String youtubeVideoId,
+            @RequestParam(defaultValue = "0") int from,
+            @RequestParam(required = false) Integer to) {
+        if (from < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The from parameter cannot be negative");
+        }
+        if (to != null && to < from) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The to parameter cannot be less than from");
+        }
+        return subtitleService.findSubtitles(youtubeVideoId, from, to)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "The video is not found"));
+    }
+}
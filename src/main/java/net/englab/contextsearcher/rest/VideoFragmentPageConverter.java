@@ -0,0 +1,119 @@
+package net.englab.contextsearcher.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.models.search.VideoFragment;
+import net.englab.contextsearcher.models.search.VideoFragmentPage;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Writes video fragment pages in the format the client asked for.
+ * The page is built completely before it's written, so this doesn't save any memory
+ * or latency compared with the default Jackson converter, it only makes the body smaller.
+ * <p>
+ * The format is negotiated with the Accept header:
+ * <ul>
+ *     <li>{@code application/json} and {@code application/cbor} have the same structure as the page itself;</li>
+ *     <li>{@link #COMPACT_JSON} and {@link #COMPACT_CBOR} write every subtitle entry as an array
+ *     {@code [startTime, endTime, text...]} instead of an object, which makes pages with
+ *     thousands of entries a lot smaller.</li>
+ * </ul>
+ */
+@Component
+public class VideoFragmentPageConverter extends AbstractHttpMessageConverter<VideoFragmentPage> {
+
+    public static final MediaType COMPACT_JSON = new MediaType("application", "vnd.englab.compact+json");
+    public static final MediaType COMPACT_CBOR = new MediaType("application", "vnd.englab.compact+cbor");
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+
+    public VideoFragmentPageConverter(ObjectMapper objectMapper) {
+        super(MediaType.APPLICATION_JSON, COMPACT_JSON, MediaType.APPLICATION_CBOR, COMPACT_CBOR);
+        this.jsonMapper = objectMapper;
+        // the copy keeps the modules and settings of the application mapper
+        this.cborMapper = objectMapper.copyWith(new CBORFactory());
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return VideoFragmentPage.class == clazz;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected VideoFragmentPage readInternal(Class<? extends VideoFragmentPage> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Video fragment pages can only be written", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(VideoFragmentPage page, HttpOutputMessage outputMessage) throws IOException {
+        MediaType contentType = outputMessage.getHeaders().getContentType();
+        boolean cbor = contentType != null && ("cbor".equals(contentType.getSubtypeSuffix())
+                || MediaType.APPLICATION_CBOR.equalsTypeAndSubtype(contentType));
+        boolean compact = COMPACT_JSON.equalsTypeAndSubtype(contentType) || COMPACT_CBOR.equalsTypeAndSubtype(contentType);
+
+        ObjectMapper mapper = cbor ? cborMapper : jsonMapper;
+        // the response stream is closed by the container, the generator only flushes its buffer into it
+        try (JsonGenerator generator = mapper.createGenerator(outputMessage.getBody())
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            writePage(generator, page, compact);
+        }
+    }
+
+    private static void writePage(JsonGenerator generator, VideoFragmentPage page, boolean compact) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("count", page.count());
+        generator.writeArrayFieldStart("videos");
+        for (VideoFragment fragment : page.videos()) {
+            if (compact) {
+                writeCompactFragment(generator, fragment);
+            } else {
+                generator.writeObject(fragment);
+            }
+        }
+        generator.writeEndArray();
+        if (page.cursor() != null) {
+            generator.writeStringField("cursor", page.cursor());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeCompactFragment(JsonGenerator generator, VideoFragment fragment) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("youtubeVideoId", fragment.youtubeVideoId());
+        generator.writeObjectField("variety", fragment.variety());
+        generator.writeObjectField("subtitleEntryIndex", fragment.subtitleEntryIndex());
+        generator.writeArrayFieldStart("subtitles");
+        for (SubtitleEntry entry : fragment.subtitles()) {
+            generator.writeStartArray();
+            generator.writeNumber(entry.startTime());
+            generator.writeNumber(entry.endTime());
+            for (String text : entry.text()) {
+                generator.writeString(text);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndArray();
+        if (fragment.subtitlesOffset() != null) {
+            generator.writeNumberField("subtitlesOffset", fragment.subtitlesOffset());
+        }
+        if (fragment.subtitlesTotal() != null) {
+            generator.writeNumberField("subtitlesTotal", fragment.subtitlesTotal());
+        }
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,231 @@
+package net.englab.contextsearcher.rest;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+
+/**
+ * Compresses the API responses with zstd for the clients that prefer it to gzip.
+ * Gzip itself is left to the servlet container, which skips the responses that already have a Content-Encoding.
+ * The body is compressed as it is written, so streamed responses are flushed fragment by fragment as before.
+ * <p>
+ * It wraps the size filter, so the size metrics keep measuring the uncompressed bodies.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class ZstdCompressionFilter extends OncePerRequestFilter {
+
+    private static final String ZSTD = "zstd";
+    private static final String RESPONSE_ATTRIBUTE = ZstdCompressionFilter.class.getName() + ".response";
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/")
+                || "HEAD".equals(request.getMethod())
+                || !prefersZstd(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    /**
+     * The body of an async request is written after the first dispatch, so the same
+     * compressing response is used by every dispatch and finished by the last one.
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        ZstdResponse zstdResponse = (ZstdResponse) request.getAttribute(RESPONSE_ATTRIBUTE);
+        if (zstdResponse == null) {
+            zstdResponse = new ZstdResponse(response);
+            request.setAttribute(RESPONSE_ATTRIBUTE, zstdResponse);
+        }
+        filterChain.doFilter(request, zstdResponse);
+        if (!request.isAsyncStarted()) {
+            zstdResponse.finish();
+        }
+    }
+
+    /**
+     * Tells whether the client accepts zstd and doesn't prefer any other encoding to it.
+     *
+     * @param acceptEncoding the value of the Accept-Encoding header
+     */
+    static boolean prefersZstd(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double zstdQuality = 0;
+        double otherQuality = 0;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.split(";");
+            String coding = tokens[0].trim();
+            double quality = 1;
+            for (int i = 1; i < tokens.length; i++) {
+                String parameter = tokens[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (ZSTD.equalsIgnoreCase(coding)) {
+                zstdQuality = quality;
+            } else if (!"identity".equalsIgnoreCase(coding)) {
+                otherQuality = Math.max(otherQuality, quality);
+            }
+        }
+        return zstdQuality > 0 && zstdQuality >= otherQuality;
+    }
+
+    /**
+     * A response that compresses its body. The Content-Encoding header is only set
+     * once the body is written, so the responses without a body stay as they are.
+     */
+    private static final class ZstdResponse extends HttpServletResponseWrapper {
+
+        private ZstdServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        ZstdResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public synchronized ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                HttpServletResponse response = (HttpServletResponse) getResponse();
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, ZSTD);
+                response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                outputStream = new ZstdServletOutputStream(response.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        @Override
+        public synchronized PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), Charset.forName(getCharacterEncoding())));
+            }
+            return writer;
+        }
+
+        /**
+         * The length of the compressed body isn't known in advance.
+         */
+        @Override
+        public void setContentLength(int len) {
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            } else if (outputStream != null) {
+                outputStream.flush();
+            }
+            super.flushBuffer();
+        }
+
+        /**
+         * Writes the end of the zstd frame.
+         */
+        synchronized void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (outputStream != null) {
+                outputStream.finish();
+            }
+        }
+    }
+
+    private static final class ZstdServletOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+        private final ZstdOutputStream zstdOutputStream;
+        private boolean finished;
+
+        ZstdServletOutputStream(ServletOutputStream delegate) throws IOException {
+            this.delegate = delegate;
+            this.zstdOutputStream = new ZstdOutputStream(delegate);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            zstdOutputStream.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            zstdOutputStream.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!finished) {
+                zstdOutputStream.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+
+        synchronized void finish() throws IOException {
+            if (!finished) {
+                finished = true;
+                // it closes the response stream as well, which completes the response
+                zstdOutputStream.close();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package net.englab.contextsearcher.services;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrency limit that adapts to the latency, similar to the gradient limit of Netflix concurrency-limits.
+ * It compares the latency of the latest requests with the long-term average latency.
+ * While they are about the same, the limit grows. Once the latency starts to climb, which means
+ * requests are queuing up somewhere downstream, the limit shrinks in proportion.
+ */
+final class AdaptiveLimiter {
+
+    /**
+     * The number of samples the long-term latency is averaged over.
+     */
+    private static final int LONG_WINDOW = 600;
+
+    /**
+     * How much the latency may grow before the limit starts to shrink.
+     */
+    private static final double TOLERANCE = 1.5;
+
+    /**
+     * How fast the limit moves towards the new estimate.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    /**
+     * How much the limit shrinks when a request times out.
+     */
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile double limit;
+    private double longRtt;
+
+    AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.clamp(initialLimit, minLimit, maxLimit);
+    }
+
+    /**
+     * Takes a slot if there is one within the limit.
+     *
+     * @param reservedShare the share of the limit that can't be taken, so it stays available to others
+     * @return the number of requests in flight before this one, or -1 if there is no slot
+     */
+    int tryAcquire(double reservedShare) {
+        int available = Math.max(1, (int) (limit * (1 - reservedShare)));
+        while (true) {
+            int current = inflight.get();
+            if (current >= available) {
+                return -1;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Gives the slot back and adjusts the limit to the latency of the request.
+     *
+     * @param rttNanos          the latency of the request
+     * @param inflightAtStart   the number of requests in flight when the request started
+     */
+    void onSuccess(long rttNanos, int inflightAtStart) {
+        inflight.decrementAndGet();
+        if (rttNanos <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            longRtt = longRtt == 0 ? rttNanos : longRtt + (rttNanos - longRtt) / LONG_WINDOW;
+            // when the load goes down after a spike, the average would stay high for a long time
+            if (longRtt / rttNanos > 2) {
+                longRtt *= 0.95;
+            }
+            // the latency says nothing about the limit if we are far from reaching it
+            if (inflightAtStart + 1 < limit / 2) {
+                return;
+            }
+            double gradient = Math.clamp(TOLERANCE * longRtt / rttNanos, 0.5, 1.0);
+            double newLimit = limit * gradient + Math.sqrt(limit);
+            limit = Math.clamp(limit * (1 - SMOOTHING) + newLimit * SMOOTHING, minLimit, maxLimit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives the slot back after the request has timed out, which is a sure sign of overload.
+     */
+    void onDropped() {
+        inflight.decrementAndGet();
+        lock.lock();
+        try {
+            limit = Math.max(minLimit, limit * BACKOFF);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives the slot back without adjusting the limit, e.g. when the request has failed for an unrelated reason.
+     */
+    void onIgnore() {
+        inflight.decrementAndGet();
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    int inflight() {
+        return inflight.get();
+    }
+}
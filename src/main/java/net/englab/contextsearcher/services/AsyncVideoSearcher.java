@@ -0,0 +1,192 @@
+package net.englab.contextsearcher.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.TotalHits;
+import lombok.RequiredArgsConstructor;
+import net.englab.common.search.exceptions.ElasticOperationException;
+import net.englab.common.search.models.common.EnglishVariety;
+import net.englab.common.search.models.elastic.VideoFragmentDocument;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.configs.SearchExecutors;
+import net.englab.contextsearcher.configs.SearchPipelineProperties;
+import net.englab.contextsearcher.exceptions.SearchOverloadedException;
+import net.englab.contextsearcher.models.search.VideoFragment;
+import net.englab.contextsearcher.models.search.VideoFragmentPage;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The offset search of video fragments. It shares the request and the fragment builder with {@link VideoSearcher}.
+ * The search runs as a pipeline of stages: the Elasticsearch request, loading the subtitles of every index
+ * on virtual threads, and building every video fragment on the bounded highlight executor
+ * as soon as the subtitles of its index are loaded. Each stage has its own timeout.
+ * If any stage fails, or the returned future is cancelled, the rest of the pipeline is cancelled as well.
+ */
+@Service
+@RequiredArgsConstructor
+public class AsyncVideoSearcher {
+
+    private final ElasticsearchAsyncClient elasticsearchAsyncClient;
+    private final SubtitleCache subtitleCache;
+    private final SearchExecutors searchExecutors;
+    private final SearchPipelineProperties properties;
+    private final SearchMetrics searchMetrics;
+    private final SearchLimiters searchLimiters;
+
+    /**
+     * Finds video documents in the video index containing the given phrase.
+     *
+     * @param phrase    the phrase to search for
+     * @param variety   the specific variety of English
+     * @param from      the offset from the start of the results
+     * @param size      the number of results to be returned
+     * @param window    the number of subtitle entries to return before and after the found fragment,
+     *                  or null to return all the subtitles of the video
+     * @return a future of a page with video fragments. Cancelling it cancels the search.
+     */
+    public CompletableFuture<VideoFragmentPage> search(String phrase, EnglishVariety variety, int from, int size, Integer window) {
+        Pipeline pipeline = new Pipeline(searchMetrics.currentTrace());
+
+        SearchLimiters.Permit permit;
+        try {
+            permit = searchLimiters.acquire(SearchStage.ELASTIC, searchLimiters.isCheap(size));
+        } catch (SearchOverloadedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        SearchMetrics.RunningStage elasticStage = searchMetrics.start(SearchStage.ELASTIC, pipeline.trace);
+        CompletableFuture<SearchResponse<VideoFragmentDocument>> searchFuture = pipeline.track(
+                elasticsearchAsyncClient.search(VideoSearcher.buildSearchRequest(phrase, variety, from, size), VideoFragmentDocument.class)
+        );
+        searchFuture.whenComplete((response, e) -> {
+            elasticStage.stop(e);
+            permit.release(e);
+        });
+
+        CompletableFuture<VideoFragmentPage> page = searchFuture
+                .orTimeout(properties.elasticTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    if (unwrap(e) instanceof IOException cause) {
+                        throw new ElasticOperationException("An exception occurred during video search", cause);
+                    }
+                    throw e instanceof CompletionException completionException ? completionException : new CompletionException(e);
+                })
+                .thenCompose(response -> buildPage(response, window, pipeline));
+
+        page.whenComplete((result, e) -> {
+            if (e != null) {
+                pipeline.cancel();
+            }
+        });
+        return page;
+    }
+
+    private CompletableFuture<VideoFragmentPage> buildPage(SearchResponse<VideoFragmentDocument> response,
+                                                           Integer window, Pipeline pipeline) {
+        List<Hit<VideoFragmentDocument>> hits = response.hits().hits();
+        long count = Optional.ofNullable(response.hits().total())
+                .map(TotalHits::value)
+                .orElse(0L);
+
+        // the subtitles of every index are loaded at once, since the hits may come from two indices during a switch
+        Map<String, Set<String>> youtubeVideoIdsByIndex = new HashMap<>();
+        for (Hit<VideoFragmentDocument> hit : hits) {
+            if (hit.source() != null) {
+                youtubeVideoIdsByIndex.computeIfAbsent(hit.index(), k -> new HashSet<>())
+                        .add(hit.source().getYoutubeVideoId());
+            }
+        }
+        Map<String, CompletableFuture<Map<String, List<SubtitleEntry>>>> subtitleFutures = new HashMap<>();
+        youtubeVideoIdsByIndex.forEach((indexName, youtubeVideoIds) -> subtitleFutures.put(
+                indexName,
+                pipeline.supply(
+                        () -> subtitleCache.findSubtitles(indexName, youtubeVideoIds),
+                        searchExecutors.subtitleExecutor()
+                ).orTimeout(properties.subtitleTimeout().toMillis(), TimeUnit.MILLISECONDS)
+        ));
+
+        // each fragment is built as soon as the subtitles of its index are ready
+        List<CompletableFuture<VideoFragment>> fragmentFutures = new ArrayList<>(hits.size());
+        for (Hit<VideoFragmentDocument> hit : hits) {
+            CompletableFuture<Map<String, List<SubtitleEntry>>> subtitleFuture =
+                    subtitleFutures.getOrDefault(hit.index(), CompletableFuture.completedFuture(Map.of()));
+            fragmentFutures.add(subtitleFuture
+                    .thenCompose(subtitleMap -> pipeline.supply(
+                            () -> searchMetrics.observe(SearchStage.HIGHLIGHT,
+                                    () -> VideoSearcher.buildVideoFragment(hit, subtitleMap, window)),
+                            searchExecutors.highlightExecutor()
+                    ).orTimeout(properties.highlightTimeout().toMillis(), TimeUnit.MILLISECONDS)));
+        }
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(fragmentFutures.toArray(CompletableFuture[]::new));
+        // allOf waits for every future, so we fail fast as soon as one of them fails
+        fragmentFutures.forEach(future -> future.whenComplete((fragment, e) -> {
+            if (e != null) {
+                all.completeExceptionally(e);
+            }
+        }));
+
+        return all.thenApply(v -> {
+            List<VideoFragment> videos = fragmentFutures.stream().map(CompletableFuture::join).toList();
+            searchMetrics.recordPage(videos);
+            return new VideoFragmentPage(count, videos);
+        });
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * Keeps track of the futures of one search, so all of them can be cancelled at once.
+     * Tasks that haven't started yet are skipped once the pipeline is cancelled.
+     * The tasks run with the trace of the search bound to their threads.
+     */
+    private static final class Pipeline {
+
+        private final SearchTrace trace;
+        private final Queue<CompletableFuture<?>> futures = new ConcurrentLinkedQueue<>();
+        private volatile boolean cancelled;
+
+        Pipeline(SearchTrace trace) {
+            this.trace = trace;
+        }
+
+        <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+            futures.add(future);
+            if (cancelled) {
+                future.cancel(true);
+            }
+            return future;
+        }
+
+        <T> CompletableFuture<T> supply(Supplier<T> task, Executor executor) {
+            return track(CompletableFuture.supplyAsync(() -> {
+                if (cancelled) {
+                    throw new CompletionException(new CancellationException("The search has been cancelled"));
+                }
+                return trace.bind(task);
+            }, executor));
+        }
+
+        void cancel() {
+            cancelled = true;
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+}
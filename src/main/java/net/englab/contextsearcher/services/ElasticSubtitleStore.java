@@ -0,0 +1,317 @@
+package net.englab.contextsearcher.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.ErrorCause;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.mapping.DynamicMapping;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.MgetRequest;
+import co.elastic.clients.elasticsearch.core.MgetResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.get.GetResult;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.indices.CreateIndexRequest;
+import co.elastic.clients.elasticsearch.indices.DeleteIndexRequest;
+import co.elastic.clients.elasticsearch.indices.ExistsRequest;
+import lombok.extern.slf4j.Slf4j;
+import net.englab.common.search.exceptions.ElasticOperationException;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.configs.SubtitleStorageProperties;
+import net.englab.contextsearcher.models.entities.IndexedVideo;
+import net.englab.contextsearcher.repositories.IndexedVideoRepository;
+import net.englab.contextsearcher.subtitles.SubtitleCodec;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves subtitles from a compact subtitle index in Elasticsearch, so a search can be served by Elasticsearch alone.
+ * Every video index has its own subtitle index, with one document per video: its ID is the YouTube video ID,
+ * and it holds the subtitles in the binary format (see {@link SubtitleCodec}). The subtitles of a page
+ * are fetched with one multi get, which is real-time, so it doesn't wait for the index to be refreshed.
+ * <p>
+ * The videos are copied from the database in the background, on startup, periodically and whenever
+ * the video index is switched. Until a video is copied, {@link IndexedVideoStorage} reads it from the database.
+ * Only the videos with new IDs are copied periodically, so all the videos are copied again once in a while
+ * to pick up the ones updated in place and the ones committed after the videos with greater IDs.
+ */
+@Slf4j
+@Service
+public class ElasticSubtitleStore {
+
+    private static final String VIDEO_ID = "videoId";
+    private static final String SUBTITLES = "subtitles";
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final IndexedVideoRepository indexedVideoRepository;
+    private final VideoIndexResolver videoIndexResolver;
+    private final SubtitleStorageProperties properties;
+    private final Clock clock;
+
+    /**
+     * The ID of the last video copied to the subtitle index of each video index.
+     */
+    private final Map<String, Long> lastVideoIds = new ConcurrentHashMap<>();
+    /**
+     * When all the videos of each video index were last copied. The subtitle indices that already existed
+     * count from the moment they were first updated.
+     */
+    private final Map<String, Instant> rebuilds = new ConcurrentHashMap<>();
+    /**
+     * The updates of one index are serialized, but a new index doesn't wait for a copy of the previous one.
+     */
+    private final Map<String, ReentrantLock> updateLocks = new ConcurrentHashMap<>();
+
+    public ElasticSubtitleStore(ElasticsearchClient elasticsearchClient,
+                                IndexedVideoRepository indexedVideoRepository,
+                                VideoIndexResolver videoIndexResolver,
+                                SubtitleStorageProperties properties) {
+        this(elasticsearchClient, indexedVideoRepository, videoIndexResolver, properties, Clock.systemUTC());
+    }
+
+    ElasticSubtitleStore(ElasticsearchClient elasticsearchClient,
+                         IndexedVideoRepository indexedVideoRepository,
+                         VideoIndexResolver videoIndexResolver,
+                         SubtitleStorageProperties properties,
+                         Clock clock) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.indexedVideoRepository = indexedVideoRepository;
+        this.videoIndexResolver = videoIndexResolver;
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    /**
+     * Tells whether the subtitles are read from Elasticsearch.
+     */
+    public boolean isEnabled() {
+        return properties.mode() == SubtitleStorageProperties.Mode.ELASTICSEARCH;
+    }
+
+    /**
+     * Finds subtitles by their YouTube video IDs in the subtitle index of the given video index.
+     *
+     * @param indexName         the name of the video index
+     * @param youtubeVideoIds   a set of the YouTube video IDs
+     * @return  a map where the key is a YouTube video ID and the value is a list of corresponding subtitles.
+     *          The videos that are not in the subtitle index are left out.
+     */
+    public Map<String, List<SubtitleEntry>> findSubtitles(String indexName, Set<String> youtubeVideoIds) {
+        MgetRequest request = MgetRequest.of(m -> m
+                .index(subtitleIndexName(indexName))
+                .ids(new ArrayList<>(youtubeVideoIds))
+        );
+        MgetResponse<SubtitleDocument> response;
+        try {
+            response = elasticsearchClient.mget(request, SubtitleDocument.class);
+        } catch (IOException e) {
+            throw new ElasticOperationException("An exception occurred while getting subtitles", e);
+        }
+
+        Map<String, List<SubtitleEntry>> subtitleMap = new HashMap<>();
+        for (MultiGetResponseItem<SubtitleDocument> item : response.docs()) {
+            // a failed document, for example because the subtitle index doesn't exist yet, is read from the database
+            if (item.isResult()) {
+                GetResult<SubtitleDocument> result = item.result();
+                if (result.found() && result.source() != null) {
+                    subtitleMap.put(result.id(), SubtitleCodec.view(result.source().subtitles()));
+                }
+            }
+        }
+        return subtitleMap;
+    }
+
+    /**
+     * Copies the videos of the current index on startup, and then keeps copying the videos added to the index.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${context-searcher.subtitle-storage.refresh-interval:10m}")
+    public void maintain() {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            update(videoIndexResolver.resolveIndexName());
+        } catch (RuntimeException e) {
+            log.error("Failed to update the subtitle index", e);
+        }
+    }
+
+    /**
+     * Copies the videos of the new index right away, since all the subtitles of the new index
+     * come from the database until they are copied, and deletes the subtitle index of the previous one.
+     */
+    @Async
+    @EventListener
+    public void onVideoIndexSwitched(VideoIndexSwitchedEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        try {
+            update(event.indexName());
+            deleteSubtitleIndex(event.previousIndexName());
+        } catch (RuntimeException e) {
+            log.error("Failed to build the subtitle index of the index '{}'", event.indexName(), e);
+        }
+    }
+
+    /**
+     * Copies the videos added to the given video index since the last update to its subtitle index.
+     * All the videos are copied again if it's been longer than the rebuild interval since the last time.
+     * The documents are replaced in place, so the subtitle index keeps serving while they are copied.
+     *
+     * @param indexName the name of the video index
+     */
+    void update(String indexName) {
+        ReentrantLock updateLock = updateLocks.computeIfAbsent(indexName, name -> new ReentrantLock());
+        updateLock.lock();
+        try {
+            String subtitleIndexName = subtitleIndexName(indexName);
+            Instant now = clock.instant();
+            Long lastVideoId = lastVideoIds.get(indexName);
+            if (lastVideoId == null) {
+                lastVideoId = createOrFindLastVideoId(subtitleIndexName);
+            }
+            rebuilds.putIfAbsent(indexName, now);
+            long afterId = lastVideoId;
+            if (rebuilds.get(indexName).plus(properties.rebuildInterval()).isBefore(now)) {
+                log.info("Copying all the videos to the subtitle index '{}' again", subtitleIndexName);
+                afterId = 0;
+                rebuilds.put(indexName, now);
+            }
+
+            long start = System.nanoTime();
+            long added = 0;
+            List<IndexedVideo> videos;
+            while (!(videos = indexedVideoRepository.findByIndexNameAndIdGreaterThanOrderById(
+                    indexName, afterId, Limit.of(properties.batchSize()))).isEmpty()) {
+                index(subtitleIndexName, videos);
+                added += videos.size();
+                afterId = videos.getLast().getId();
+                lastVideoId = Math.max(lastVideoId, afterId);
+                lastVideoIds.put(indexName, lastVideoId);
+            }
+            lastVideoIds.put(indexName, lastVideoId);
+            if (added > 0) {
+                log.info("Copied {} videos to the subtitle index '{}' in {} ms",
+                        added, subtitleIndexName, (System.nanoTime() - start) / 1_000_000);
+            }
+        } catch (IOException e) {
+            throw new ElasticOperationException("An exception occurred while updating the subtitle index", e);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    String subtitleIndexName(String indexName) {
+        return properties.indexPrefix() + indexName;
+    }
+
+    /**
+     * Creates the subtitle index if it doesn't exist, otherwise finds the last video copied to it,
+     * so after a restart only the new videos are copied.
+     */
+    private long createOrFindLastVideoId(String subtitleIndexName) throws IOException {
+        if (!elasticsearchClient.indices().exists(ExistsRequest.of(e -> e.index(subtitleIndexName))).value()) {
+            elasticsearchClient.indices().create(CreateIndexRequest.of(c -> c
+                    .index(subtitleIndexName)
+                    .settings(s -> s.codec("best_compression"))
+                    // nothing is searched in the index, so the subtitles are neither indexed nor kept as doc values
+                    .mappings(m -> m
+                            .dynamic(DynamicMapping.Strict)
+                            .properties(VIDEO_ID, p -> p.long_(l -> l))
+                            .properties(SUBTITLES, p -> p.binary(b -> b))
+                    )
+            ));
+            log.info("Created the subtitle index '{}'", subtitleIndexName);
+            return 0;
+        }
+        SearchRequest request = SearchRequest.of(s -> s
+                .index(subtitleIndexName)
+                .size(1)
+                .sort(o -> o.field(f -> f.field(VIDEO_ID).order(SortOrder.Desc)))
+                .source(c -> c.filter(f -> f.includes(VIDEO_ID)))
+        );
+        List<Hit<SubtitleDocument>> hits = elasticsearchClient.search(request, SubtitleDocument.class).hits().hits();
+        return hits.isEmpty() || hits.getFirst().source() == null ? 0 : hits.getFirst().source().videoId();
+    }
+
+    private void index(String subtitleIndexName, List<IndexedVideo> videos) throws IOException {
+        BulkRequest.Builder request = new BulkRequest.Builder();
+        int operations = 0;
+        for (IndexedVideo video : videos) {
+            byte[] subtitles = video.getBinarySubtitles();
+            if (subtitles == null) {
+                List<SubtitleEntry> jsonSubtitles = video.getSubtitles();
+                if (!SubtitleCodec.isExact(jsonSubtitles)) {
+                    // it can't be encoded without rounding the times, so it's read from the database
+                    continue;
+                }
+                subtitles = SubtitleCodec.encode(jsonSubtitles);
+            }
+            SubtitleDocument document = new SubtitleDocument(video.getId(), subtitles);
+            request.operations(o -> o.index(i -> i
+                    .index(subtitleIndexName)
+                    .id(video.getYoutubeVideoId())
+                    .document(document)
+            ));
+            operations++;
+        }
+        if (operations == 0) {
+            return;
+        }
+        BulkResponse response = elasticsearchClient.bulk(request.build());
+        if (response.errors()) {
+            String reason = response.items().stream()
+                    .map(BulkResponseItem::error)
+                    .filter(Objects::nonNull)
+                    .map(ErrorCause::reason)
+                    .findFirst()
+                    .orElse("unknown");
+            throw new IllegalStateException("Failed to copy the subtitles to '" + subtitleIndexName + "': " + reason);
+        }
+    }
+
+    private void deleteSubtitleIndex(String indexName) {
+        if (indexName == null) {
+            return;
+        }
+        lastVideoIds.remove(indexName);
+        rebuilds.remove(indexName);
+        updateLocks.remove(indexName);
+        String subtitleIndexName = subtitleIndexName(indexName);
+        try {
+            elasticsearchClient.indices().delete(DeleteIndexRequest.of(d -> d.index(subtitleIndexName).ignoreUnavailable(true)));
+            log.info("Deleted the subtitle index '{}' of a previous index", subtitleIndexName);
+        } catch (IOException | ElasticsearchException e) {
+            log.warn("Failed to delete the subtitle index '{}'", subtitleIndexName, e);
+        }
+    }
+
+    /**
+     * A document of the subtitle index. The subtitles are written as base64, which is how Elasticsearch
+     * takes binary values.
+     *
+     * @param videoId   the ID of the video in the database, which tells how far the copying has gone
+     * @param subtitles the subtitles in the binary format
+     */
+    record SubtitleDocument(long videoId, byte[] subtitles) {
+    }
+}
@@ -1,25 +1,39 @@
 package net.englab.contextsearcher.services;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import net.englab.common.search.models.subtitles.SubtitleEntry;
 import net.englab.contextsearcher.models.entities.IndexedVideo;
 import net.englab.contextsearcher.repositories.IndexedVideoRepository;
+import net.englab.contextsearcher.repositories.StoredSubtitles;
+import net.englab.contextsearcher.repositories.StoredSubtitlesRepository;
+import net.englab.contextsearcher.subtitles.SubtitleCodec;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
- * A storage service for indexed videos.
+ * A storage service for indexed videos. The subtitles are served from the memory-mapped snapshots
+ * if they are enabled (see {@link SubtitleSnapshotStore}), then from the Elasticsearch subtitle index
+ * if it's the configured storage (see {@link ElasticSubtitleStore}), and the rest of them are read from the database.
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class IndexedVideoStorage {
 
     private final IndexedVideoRepository indexedVideoRepository;
+    private final StoredSubtitlesRepository storedSubtitlesRepository;
+    private final SubtitleSnapshotStore subtitleSnapshotStore;
+    private final ElasticSubtitleStore elasticSubtitleStore;
+    private final SearchMetrics searchMetrics;
+    private final SearchLimiters searchLimiters;
 
     /**
      * Finds subtitles by their YouTube video IDs.
@@ -29,9 +43,68 @@ public class IndexedVideoStorage {
      * @return  a map where the key is a YouTube video ID
      *          and the value is a list of corresponding subtitles
      */
-    @Transactional(readOnly = true)
     public Map<String, List<SubtitleEntry>> findSubtitles(String indexName, Set<String> youtubeVideoIds) {
-        return indexedVideoRepository.findByIndexNameAndYoutubeVideoIdIn(indexName, youtubeVideoIds).stream()
-                .collect(Collectors.toMap(IndexedVideo::getYoutubeVideoId, IndexedVideo::getSubtitles));
+        Map<String, List<SubtitleEntry>> subtitleMap = new HashMap<>(subtitleSnapshotStore.findSubtitles(indexName, youtubeVideoIds));
+        if (subtitleMap.size() == youtubeVideoIds.size()) {
+            return subtitleMap;
+        }
+        Set<String> missingVideoIds = new HashSet<>(youtubeVideoIds);
+        missingVideoIds.removeAll(subtitleMap.keySet());
+
+        if (elasticSubtitleStore.isEnabled()) {
+            // the multi get doesn't take an Elasticsearch permit: it's a lookup by ID, and counting it
+            // would let the subtitle reads crowd out the searches the limiter is there for.
+            // If it fails, the subtitles are still in the database.
+            try {
+                subtitleMap.putAll(searchMetrics.observe(
+                        SearchStage.SUBTITLE_INDEX,
+                        () -> elasticSubtitleStore.findSubtitles(indexName, missingVideoIds)
+                ));
+            } catch (RuntimeException e) {
+                log.warn("Failed to read subtitles from the subtitle index, reading them from the database", e);
+            }
+            if (subtitleMap.size() == youtubeVideoIds.size()) {
+                return subtitleMap;
+            }
+            missingVideoIds.removeAll(subtitleMap.keySet());
+        }
+
+        // the limit covers only the database, the snapshot lookups are too fast to say anything about its load.
+        // The cost of the query grows with the number of videos, which is at most the size of the page.
+        boolean cheap = searchLimiters.isCheap(missingVideoIds.size());
+        List<StoredSubtitles> storedSubtitles = searchLimiters.limit(SearchStage.DATABASE, cheap, () -> searchMetrics.observe(
+                SearchStage.DATABASE,
+                () -> storedSubtitlesRepository.findSubtitles(indexName, missingVideoIds)
+        ));
+        // binary subtitles are decoded lazily, so for them it's mostly the cost of reading the header
+        searchMetrics.observe(SearchStage.DECODING, () -> storedSubtitles.forEach(
+                video -> subtitleMap.put(video.youtubeVideoId(), video.subtitles())
+        ));
+        return subtitleMap;
+    }
+
+    /**
+     * Converts the JSON subtitles of the next batch of videos to the binary format.
+     * The subtitles with times finer than a millisecond can't be converted without rounding them, so they stay JSON
+     * and are marked as skipped.
+     *
+     * @param afterId   the ID of the last video of the previous batch
+     * @param batchSize the maximum number of videos in the batch
+     * @return the ID of the last converted video, or -1 if there's nothing left to convert
+     */
+    @Transactional
+    public long convertSubtitles(long afterId, int batchSize) {
+        List<IndexedVideo> videos = indexedVideoRepository
+                .findByIdGreaterThanAndBinarySubtitlesIsNullAndBinarySubtitlesSkippedFalseOrderById(afterId, Limit.of(batchSize));
+        for (IndexedVideo video : videos) {
+            List<SubtitleEntry> subtitles = video.getSubtitles();
+            if (SubtitleCodec.isExact(subtitles)) {
+                indexedVideoRepository.updateBinarySubtitles(video.getId(), SubtitleCodec.encode(subtitles));
+            } else {
+                log.debug("Kept the JSON subtitles of the video with ID {}, they are finer than a millisecond", video.getId());
+                indexedVideoRepository.markBinarySubtitlesSkipped(video.getId());
+            }
+        }
+        return videos.isEmpty() ? -1 : videos.getLast().getId();
     }
 }
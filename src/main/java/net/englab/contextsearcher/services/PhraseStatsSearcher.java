@@ -0,0 +1,165 @@
+package net.englab.contextsearcher.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.TotalHits;
+import co.elastic.clients.elasticsearch.core.search.TotalHitsRelation;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import lombok.extern.slf4j.Slf4j;
+import net.englab.common.search.exceptions.ElasticOperationException;
+import net.englab.common.search.models.common.EnglishVariety;
+import net.englab.contextsearcher.configs.PhraseStatsProperties;
+import net.englab.contextsearcher.models.search.PhraseStats;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static net.englab.common.search.models.elastic.VideoIndexProperties.ALIAS;
+import static net.englab.common.search.models.elastic.VideoIndexProperties.ENGLISH_VARIETY;
+
+/**
+ * Counts the video fragments containing a phrase without building them. Elasticsearch returns
+ * no hits and no highlights, and the subtitles are never loaded, so it's much cheaper than a search
+ * for the callers that only need the numbers.
+ * <p>
+ * The statistics are cached on their own, separately from the search result pages.
+ */
+@Slf4j
+@Service
+public class PhraseStatsSearcher {
+
+    private static final String VARIETIES = "varieties";
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final VideoIndexResolver videoIndexResolver;
+    private final SearchMetrics searchMetrics;
+    private final SearchLimiters searchLimiters;
+    private final PhraseStatsProperties properties;
+    private final LoadingCache<StatsKey, PhraseStats> cache;
+
+    public PhraseStatsSearcher(ElasticsearchClient elasticsearchClient,
+                               VideoIndexResolver videoIndexResolver,
+                               SearchMetrics searchMetrics,
+                               SearchLimiters searchLimiters,
+                               PhraseStatsProperties properties) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.videoIndexResolver = videoIndexResolver;
+        this.searchMetrics = searchMetrics;
+        this.searchLimiters = searchLimiters;
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.maxSize())
+                .expireAfterWrite(properties.ttl())
+                .build(key -> load(key.phrase(), key.variety(), key.facets()));
+    }
+
+    /**
+     * Counts the video fragments in which the given phrase is mentioned.
+     *
+     * @param phrase    the phrase to count
+     * @param variety   the specific variety of English
+     * @param facets    whether to count the fragments of each variety of English as well
+     * @return the statistics of the phrase
+     */
+    public PhraseStats count(String phrase, EnglishVariety variety, boolean facets) {
+        if (properties.maxSize() == 0) {
+            return load(phrase, variety, facets);
+        }
+        String indexName = videoIndexResolver.resolveIndexName();
+        return cache.get(new StatsKey(SearchResultCache.normalize(phrase), phrase, variety, facets, indexName));
+    }
+
+    /**
+     * Drops the statistics of the previous index once the alias moves to a new one.
+     */
+    @EventListener
+    public void onVideoIndexSwitched(VideoIndexSwitchedEvent event) {
+        cache.asMap().keySet().removeIf(key -> !key.indexName().equals(event.indexName()));
+    }
+
+    private PhraseStats load(String phrase, EnglishVariety variety, boolean facets) {
+        SearchRequest request = buildStatsRequest(phrase, variety, facets, properties);
+        // without hits and highlights, it's as cheap as the smallest searches
+        SearchResponse<Void> response = searchLimiters.limit(SearchStage.ELASTIC, true,
+                () -> searchMetrics.observe(SearchStage.ELASTIC, () -> {
+                    try {
+                        return elasticsearchClient.search(request, Void.class);
+                    } catch (IOException e) {
+                        throw new ElasticOperationException("An exception occurred while counting video fragments", e);
+                    }
+                }));
+        return toStats(response, facets);
+    }
+
+    /**
+     * Builds a request that only counts the fragments and, if the facets are requested, aggregates them by variety.
+     * The aggregation visits every match anyway, so the approximate count only pays off without the facets.
+     */
+    static SearchRequest buildStatsRequest(String phrase, EnglishVariety variety, boolean facets, PhraseStatsProperties properties) {
+        return SearchRequest.of(b -> {
+            b.index(ALIAS)
+                    .size(0)
+                    .query(VideoSearcher.buildSearchQuery(phrase, variety)._toQuery())
+                    .trackTotalHits(t -> properties.exactCount() ? t.enabled(true) : t.count(properties.countThreshold()));
+            if (facets) {
+                b.aggregations(VARIETIES, a -> a.terms(t -> t
+                        .field(ENGLISH_VARIETY)
+                        .size(EnglishVariety.values().length)
+                ));
+            }
+            return b;
+        });
+    }
+
+    static PhraseStats toStats(SearchResponse<Void> response, boolean facets) {
+        TotalHits total = response.hits().total();
+        long count = total == null ? 0 : total.value();
+        boolean exact = total == null || total.relation() == TotalHitsRelation.Eq;
+
+        Map<EnglishVariety, Long> varieties = null;
+        if (facets) {
+            varieties = new EnumMap<>(EnglishVariety.class);
+            Aggregate aggregate = response.aggregations().get(VARIETIES);
+            if (aggregate != null) {
+                for (StringTermsBucket bucket : aggregate.sterms().buckets().array()) {
+                    String name = bucket.key().stringValue();
+                    try {
+                        varieties.put(EnglishVariety.valueOf(name), bucket.docCount());
+                    } catch (IllegalArgumentException e) {
+                        log.warn("Unknown variety of English in the video index: {}", name);
+                    }
+                }
+            }
+        }
+        return new PhraseStats(count, exact, varieties);
+    }
+
+    /**
+     * The key of cached statistics. The phrase is the one the statistics were first requested with, and it's counted
+     * when they are loaded. It's left out of the equality, so equivalent phrases share the statistics.
+     */
+    private record StatsKey(String normalizedPhrase, String phrase, EnglishVariety variety, boolean facets, String indexName) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StatsKey other
+                    && normalizedPhrase.equals(other.normalizedPhrase)
+                    && variety == other.variety
+                    && facets == other.facets
+                    && indexName.equals(other.indexName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(normalizedPhrase, variety, facets, indexName);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package net.englab.contextsearcher.services;
+
+import lombok.extern.slf4j.Slf4j;
+import net.englab.contextsearcher.configs.PhraseSuggestionProperties;
+import net.englab.contextsearcher.models.entities.SearchQueryStats;
+import net.englab.contextsearcher.models.search.PhraseSuggestion;
+import net.englab.contextsearcher.repositories.SearchQueryStatsRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suggests completions of the phrases users are typing. The suggestions are the phrases users have searched for
+ * that have any hits, the most searched ones first.
+ * <p>
+ * Searches are counted in memory and saved to the database in the background, where the counts of all
+ * the instances add up. The suggestions are served from an in-memory index that is rebuilt from the most
+ * searched phrases after every save, so suggesting never goes to the database or Elasticsearch.
+ */
+@Slf4j
+@Service
+public class PhraseSuggester {
+
+    private final SearchQueryStatsRepository searchQueryStatsRepository;
+    private final PhraseSuggestionProperties properties;
+
+    /**
+     * The searches recorded since the last save.
+     */
+    private final Map<String, PendingSearches> pending = new ConcurrentHashMap<>();
+
+    private volatile SuggestionIndex index = SuggestionIndex.EMPTY;
+
+    public PhraseSuggester(SearchQueryStatsRepository searchQueryStatsRepository, PhraseSuggestionProperties properties) {
+        this.searchQueryStatsRepository = searchQueryStatsRepository;
+        this.properties = properties;
+    }
+
+    /**
+     * Finds the most searched phrases starting with the given prefix.
+     *
+     * @param prefix    the beginning of a phrase
+     * @param size      the maximum number of suggestions
+     * @return a list of suggestions ordered from the most searched phrase
+     */
+    public List<PhraseSuggestion> suggest(String prefix, int size) {
+        return index.suggest(normalizePrefix(prefix), size);
+    }
+
+    /**
+     * Records a search of the given phrase.
+     *
+     * @param phrase    the phrase that has been searched for
+     * @param hitCount  the number of video fragments found, or null if the search was filtered,
+     *                  so the number doesn't say how many hits the phrase has in general
+     */
+    public void record(String phrase, Long hitCount) {
+        if (!properties.enabled()) {
+            return;
+        }
+        String normalized = SearchResultCache.normalize(phrase);
+        if (normalized.isEmpty() || normalized.length() > properties.maxPhraseLength()) {
+            return;
+        }
+        PendingSearches searches = pending.get(normalized);
+        if (searches == null) {
+            // it's a rough limit, a few more phrases can get in when they are recorded at the same time
+            if (pending.size() >= properties.maxPendingPhrases()) {
+                return;
+            }
+            searches = pending.computeIfAbsent(normalized, k -> new PendingSearches());
+        }
+        searches.count.incrementAndGet();
+        if (hitCount != null) {
+            searches.hitCount = hitCount;
+        }
+    }
+
+    /**
+     * Builds the suggestions on startup, and then keeps saving the recorded searches and rebuilding the suggestions.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${context-searcher.phrase-suggestions.refresh-interval:1m}")
+    public void maintain() {
+        if (!properties.enabled()) {
+            return;
+        }
+        try {
+            save();
+            rebuild();
+        } catch (RuntimeException e) {
+            log.error("Failed to refresh the phrase suggestions", e);
+        }
+    }
+
+    /**
+     * Saves the searches recorded since the last save. A search recorded at the very moment its phrase is being saved
+     * can get lost, which is fine for the suggestions.
+     */
+    void save() {
+        for (String phrase : List.copyOf(pending.keySet())) {
+            PendingSearches searches = pending.remove(phrase);
+            if (searches != null) {
+                searchQueryStatsRepository.addSearches(phrase, searches.count.get(), searches.hitCount);
+            }
+        }
+    }
+
+    void rebuild() {
+        List<SuggestionIndex.Phrase> phrases = searchQueryStatsRepository
+                .findByHitCountGreaterThanOrderBySearchCountDesc(0, Limit.of(properties.maxPhrases()))
+                .stream()
+                .map(PhraseSuggester::toPhrase)
+                .toList();
+        index = new SuggestionIndex(phrases);
+    }
+
+    /**
+     * Normalizes the prefix the same way the searched phrases are normalized.
+     * If the prefix ends with whitespace, a space is kept, so "take " only matches the phrases
+     * that have "take" as a whole word.
+     */
+    static String normalizePrefix(String prefix) {
+        String normalized = SearchResultCache.normalize(prefix);
+        if (normalized.isEmpty()) {
+            return normalized;
+        }
+        boolean whitespace = Character.isWhitespace(prefix.codePointBefore(prefix.length()));
+        return whitespace ? normalized + ' ' : normalized;
+    }
+
+    private static SuggestionIndex.Phrase toPhrase(SearchQueryStats stats) {
+        return new SuggestionIndex.Phrase(stats.getPhrase(), stats.getSearchCount(), stats.getHitCount());
+    }
+
+    private static final class PendingSearches {
+        private final AtomicLong count = new AtomicLong();
+        private volatile Long hitCount;
+    }
+}
@@ -0,0 +1,102 @@
+package net.englab.contextsearcher.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch.core.ClosePointInTimeRequest;
+import co.elastic.clients.elasticsearch.core.OpenPointInTimeRequest;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import net.englab.common.search.exceptions.ElasticOperationException;
+import net.englab.contextsearcher.configs.PointInTimeProperties;
+import net.englab.contextsearcher.exceptions.SearchOverloadedException;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+
+import static net.englab.common.search.models.elastic.VideoIndexProperties.ALIAS;
+
+/**
+ * Opens and closes the Elasticsearch points in time of the video index and keeps track of the open ones.
+ * Each of them holds the search contexts of all the shards until it's closed or expires, so their number is bounded.
+ * The expiry is tracked the same way elastic does it: the keep-alive starts over with every page.
+ */
+@Slf4j
+@Service
+public class PointInTimeRegistry {
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final PointInTimeProperties properties;
+    private final Time keepAlive;
+    private final Cache<String, Boolean> openPointsInTime;
+
+    public PointInTimeRegistry(ElasticsearchClient elasticsearchClient, PointInTimeProperties properties) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.properties = properties;
+        this.keepAlive = Time.of(t -> t.time(properties.keepAlive().toMillis() + "ms"));
+        this.openPointsInTime = Caffeine.newBuilder()
+                .expireAfterWrite(properties.keepAlive())
+                .build();
+    }
+
+    /**
+     * Opens a new point in time.
+     *
+     * @return the ID of the point in time
+     * @throws SearchOverloadedException if there are too many open points in time
+     */
+    public String open() {
+        // the bound is approximate, a few concurrent requests may pass it at once
+        openPointsInTime.cleanUp();
+        if (openPointsInTime.estimatedSize() >= properties.maxOpen()) {
+            throw new SearchOverloadedException("There are too many open search cursors", properties.keepAlive());
+        }
+        try {
+            String pitId = elasticsearchClient.openPointInTime(OpenPointInTimeRequest.of(p -> p
+                    .index(ALIAS)
+                    .keepAlive(keepAlive)
+            )).id();
+            openPointsInTime.put(pitId, true);
+            return pitId;
+        } catch (IOException e) {
+            throw new ElasticOperationException("An exception occurred while opening a point in time", e);
+        }
+    }
+
+    /**
+     * Records that a page has been searched with the point in time, so its keep-alive has started over.
+     * Elastic may return another ID with the page, which replaces the previous one.
+     *
+     * @param pitId     the ID the page has been searched with
+     * @param nextPitId the ID returned with the page
+     */
+    public void renew(String pitId, String nextPitId) {
+        if (!pitId.equals(nextPitId)) {
+            openPointsInTime.invalidate(pitId);
+        }
+        openPointsInTime.put(nextPitId, true);
+    }
+
+    /**
+     * Closes the point in time, so elastic can release its resources right away
+     * instead of waiting for the keep-alive to expire.
+     *
+     * @param pitId the ID of the point in time
+     */
+    public void close(String pitId) {
+        openPointsInTime.invalidate(pitId);
+        try {
+            elasticsearchClient.closePointInTime(ClosePointInTimeRequest.of(p -> p.id(pitId)));
+        } catch (IOException | ElasticsearchException e) {
+            log.warn("Failed to close the point in time. It will expire on its own.", e);
+        }
+    }
+
+    /**
+     * Returns the keep-alive every search with a point in time should extend it by.
+     */
+    public Time keepAlive() {
+        return keepAlive;
+    }
+}
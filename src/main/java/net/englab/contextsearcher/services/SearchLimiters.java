@@ -0,0 +1,181 @@
+package net.englab.contextsearcher.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.englab.contextsearcher.configs.SearchLimiterProperties;
+import net.englab.contextsearcher.exceptions.SearchOverloadedException;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive concurrency limits of the search stages that call Elasticsearch and the database.
+ * Without them, virtual threads let any number of requests pile up on the connection pools,
+ * and the latency grows for everyone until the requests time out. With them, the requests over the limit
+ * are rejected right away, and a part of every limit is reserved for cheap searches.
+ */
+@Component
+public class SearchLimiters {
+
+    private final SearchLimiterProperties properties;
+    private final Map<SearchStage, AdaptiveLimiter> limiters = new EnumMap<>(SearchStage.class);
+    private final Map<SearchStage, Counter> cheapRejections = new EnumMap<>(SearchStage.class);
+    private final Map<SearchStage, Counter> expensiveRejections = new EnumMap<>(SearchStage.class);
+
+    public SearchLimiters(SearchLimiterProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        register(SearchStage.ELASTIC, properties.elastic(), meterRegistry);
+        register(SearchStage.DATABASE, properties.database(), meterRegistry);
+    }
+
+    /**
+     * Creates limiters that admit everything, for the code that runs without the application context.
+     *
+     * @return the disabled limiters
+     */
+    public static SearchLimiters disabled() {
+        SearchLimiterProperties.StageLimit stageLimit = new SearchLimiterProperties.StageLimit(20, 4, 200);
+        return new SearchLimiters(
+                new SearchLimiterProperties(false, stageLimit, stageLimit, 10, 0.2, Duration.ofSeconds(1)),
+                new SimpleMeterRegistry()
+        );
+    }
+
+    /**
+     * Tells whether a search of the given size is cheap enough to be admitted before the others.
+     *
+     * @param size the number of results to be returned, or the number of videos to be loaded
+     */
+    public boolean isCheap(int size) {
+        return size <= properties.cheapSize();
+    }
+
+    /**
+     * Takes a slot of the given stage.
+     *
+     * @param stage the stage of the search, either {@link SearchStage#ELASTIC} or {@link SearchStage#DATABASE}
+     * @param cheap whether the search is cheap, so it can use the reserved part of the limit
+     * @return a permit that must be released once the stage is completed
+     * @throws SearchOverloadedException if the stage is at its limit
+     */
+    public Permit acquire(SearchStage stage, boolean cheap) {
+        AdaptiveLimiter limiter = limiters.get(stage);
+        if (!properties.enabled() || limiter == null) {
+            return Permit.NONE;
+        }
+        int inflightAtStart = limiter.tryAcquire(cheap ? 0 : properties.reservedShare());
+        if (inflightAtStart < 0) {
+            (cheap ? cheapRejections : expensiveRejections).get(stage).increment();
+            throw new SearchOverloadedException(
+                    "Too many concurrent searches, please retry later", properties.retryAfter()
+            );
+        }
+        return new Permit(limiter, inflightAtStart, System.nanoTime());
+    }
+
+    /**
+     * Runs a stage that completes on the current thread within the limit of the stage.
+     *
+     * @param stage the stage of the search
+     * @param cheap whether the search is cheap
+     * @param task  the stage itself
+     * @return the result of the stage
+     * @throws SearchOverloadedException if the stage is at its limit
+     */
+    public <T> T limit(SearchStage stage, boolean cheap, Supplier<T> task) {
+        Permit permit = acquire(stage, cheap);
+        try {
+            T result = task.get();
+            permit.release(null);
+            return result;
+        } catch (RuntimeException e) {
+            permit.release(e);
+            throw e;
+        }
+    }
+
+    private void register(SearchStage stage, SearchLimiterProperties.StageLimit stageLimit, MeterRegistry meterRegistry) {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(stageLimit.initialLimit(), stageLimit.minLimit(), stageLimit.maxLimit());
+        limiters.put(stage, limiter);
+
+        Gauge.builder("search.limiter.limit", limiter, AdaptiveLimiter::limit)
+                .description("The current concurrency limit of the search stage")
+                .tag("stage", stage.tagValue())
+                .register(meterRegistry);
+        Gauge.builder("search.limiter.inflight", limiter, AdaptiveLimiter::inflight)
+                .description("The number of requests of the search stage in flight")
+                .tag("stage", stage.tagValue())
+                .register(meterRegistry);
+        cheapRejections.put(stage, rejections(meterRegistry, stage, "cheap"));
+        expensiveRejections.put(stage, rejections(meterRegistry, stage, "expensive"));
+    }
+
+    private static Counter rejections(MeterRegistry meterRegistry, SearchStage stage, String priority) {
+        return Counter.builder("search.limiter.rejections")
+                .description("The number of requests rejected because the search stage was at its limit")
+                .tag("stage", stage.tagValue())
+                .tag("priority", priority)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A slot of a stage. It's released exactly once, even if {@link #release} is called several times.
+     */
+    public static final class Permit {
+
+        private static final Permit NONE = new Permit(null, 0, 0);
+
+        private final AdaptiveLimiter limiter;
+        private final int inflightAtStart;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(AdaptiveLimiter limiter, int inflightAtStart, long startNanos) {
+            this.limiter = limiter;
+            this.inflightAtStart = inflightAtStart;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Releases the slot. The latency of a successful stage adjusts the limit,
+         * a timeout shrinks it, and other errors are ignored.
+         *
+         * @param error the error the stage has failed with, or null if it has succeeded
+         */
+        public void release(Throwable error) {
+            if (limiter == null || !released.compareAndSet(false, true)) {
+                return;
+            }
+            if (error == null) {
+                limiter.onSuccess(System.nanoTime() - startNanos, inflightAtStart);
+            } else if (isTimeout(error)) {
+                limiter.onDropped();
+            } else {
+                limiter.onIgnore();
+            }
+        }
+
+        private static boolean isTimeout(Throwable error) {
+            for (Throwable e = error; e != null; e = e.getCause()) {
+                if (e instanceof TimeoutException
+                        || e instanceof SocketTimeoutException
+                        || e instanceof SQLTransientConnectionException) {
+                    return true;
+                }
+                if (e.getCause() == e) {
+                    break;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package net.englab.contextsearcher.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import net.englab.contextsearcher.models.search.VideoFragment;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Measures the stages of video searches and the size of the found pages.
+ * Every stage is an observation, which gives a timer with a histogram as well as a span when tracing is enabled.
+ */
+@Component
+public class SearchMetrics {
+
+    private static final String STAGE_OBSERVATION = "search.stage";
+
+    private final ObservationRegistry observationRegistry;
+    private final DistributionSummary hits;
+    private final DistributionSummary videos;
+    private final DistributionSummary subtitleEntries;
+
+    public SearchMetrics(ObservationRegistry observationRegistry, MeterRegistry meterRegistry) {
+        this.observationRegistry = observationRegistry;
+        this.hits = DistributionSummary.builder("search.page.hits")
+                .description("The number of video fragments on a search page")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.videos = DistributionSummary.builder("search.page.videos")
+                .description("The number of distinct videos on a search page")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.subtitleEntries = DistributionSummary.builder("search.page.subtitle.entries")
+                .description("The total number of subtitle entries returned with a search page")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts a new trace of a search request. It belongs to the observation of the current request if there is one.
+     */
+    public SearchTrace newTrace() {
+        return new SearchTrace(observationRegistry.getCurrentObservation());
+    }
+
+    /**
+     * Returns the trace bound to the current thread, or a new one if there is none.
+     */
+    public SearchTrace currentTrace() {
+        SearchTrace trace = SearchTrace.current();
+        return trace != null ? trace : newTrace();
+    }
+
+    /**
+     * Starts measuring a stage that completes asynchronously.
+     *
+     * @param stage the stage of the search
+     * @param trace the trace of the search request
+     * @return a running stage that must be stopped once it's completed
+     */
+    public RunningStage start(SearchStage stage, SearchTrace trace) {
+        Observation observation = Observation.createNotStarted(STAGE_OBSERVATION, observationRegistry)
+                .contextualName("search " + stage.tagValue())
+                .lowCardinalityKeyValue("stage", stage.tagValue())
+                .parentObservation(trace.parentObservation())
+                .start();
+        return new RunningStage(stage, trace, observation, System.nanoTime());
+    }
+
+    /**
+     * Measures a stage that runs on the current thread.
+     *
+     * @param stage the stage of the search
+     * @param task  the stage itself
+     * @return the result of the stage
+     */
+    public <T> T observe(SearchStage stage, Supplier<T> task) {
+        RunningStage runningStage = start(stage, currentTrace());
+        try {
+            T result = task.get();
+            runningStage.stop(null);
+            return result;
+        } catch (RuntimeException e) {
+            runningStage.stop(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Records the size of a page of found video fragments.
+     *
+     * @param fragments the video fragments of the page
+     */
+    public void recordPage(List<VideoFragment> fragments) {
+        Set<String> youtubeVideoIds = new HashSet<>();
+        long entryCount = 0;
+        for (VideoFragment fragment : fragments) {
+            youtubeVideoIds.add(fragment.youtubeVideoId());
+            entryCount += fragment.subtitles().size();
+        }
+        hits.record(fragments.size());
+        videos.record(youtubeVideoIds.size());
+        subtitleEntries.record(entryCount);
+    }
+
+    /**
+     * A stage that has been started but not stopped yet.
+     */
+    public static final class RunningStage {
+
+        private final SearchStage stage;
+        private final SearchTrace trace;
+        private final Observation observation;
+        private final long startNanos;
+
+        private RunningStage(SearchStage stage, SearchTrace trace, Observation observation, long startNanos) {
+            this.stage = stage;
+            this.trace = trace;
+            this.observation = observation;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Stops the stage.
+         *
+         * @param error the error the stage has failed with, or null if it has succeeded
+         */
+        public void stop(Throwable error) {
+            trace.record(stage, System.nanoTime() - startNanos);
+            if (error != null) {
+                observation.error(error);
+            }
+            observation.stop();
+        }
+    }
+}
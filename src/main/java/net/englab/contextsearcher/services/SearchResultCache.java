@@ -0,0 +1,171 @@
+package net.englab.contextsearcher.services;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import net.englab.common.search.models.common.EnglishVariety;
+import net.englab.contextsearcher.configs.SearchResultCacheProperties;
+import net.englab.contextsearcher.models.search.VideoFragment;
+import net.englab.contextsearcher.models.search.VideoFragmentPage;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A cache of search result pages that sits in front of {@link AsyncVideoSearcher}.
+ * A small number of phrases makes up most of the traffic, so we don't want to repeat the whole search
+ * for them over and over. Concurrent identical requests are coalesced, so only one of them does the search.
+ */
+@Service
+public class SearchResultCache {
+
+    private final AsyncVideoSearcher asyncVideoSearcher;
+    private final VideoIndexResolver videoIndexResolver;
+    private final boolean enabled;
+    private final AsyncLoadingCache<PageKey, VideoFragmentPage> cache;
+
+    public SearchResultCache(AsyncVideoSearcher asyncVideoSearcher,
+                             VideoIndexResolver videoIndexResolver,
+                             SearchResultCacheProperties properties,
+                             MeterRegistry meterRegistry) {
+        this.asyncVideoSearcher = asyncVideoSearcher;
+        this.videoIndexResolver = videoIndexResolver;
+        this.enabled = properties.enabled();
+
+        var builder = Caffeine.newBuilder()
+                .maximumWeight(properties.maxWeight())
+                .weigher((PageKey key, VideoFragmentPage page) -> weigh(page))
+                .expireAfterWrite(properties.ttl())
+                .recordStats();
+        if (properties.refreshAfter() != null) {
+            builder.refreshAfterWrite(properties.refreshAfter());
+        }
+        this.cache = builder.buildAsync((key, executor) -> load(key));
+        // the hits, misses and evictions are exported as the cache.* meters tagged with cache=search-results
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "search-results");
+    }
+
+    /**
+     * Finds video fragments in which the given phrase is mentioned, using the cached page if there is one.
+     *
+     * @param phrase    the phrase to search for
+     * @param variety   the specific variety of English
+     * @param from      the offset from the start of the results
+     * @param size      the number of results to be returned
+     * @param window    the number of subtitle entries to return before and after the found fragment,
+     *                  or null to return all the subtitles of the video
+     * @return a page with video fragments
+     */
+    public VideoFragmentPage search(String phrase, EnglishVariety variety, int from, int size, Integer window) {
+        try {
+            return searchAsync(phrase, variety, from, size, window).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Finds video fragments in which the given phrase is mentioned without blocking the calling thread.
+     * Every caller gets its own copy of the shared future, so cancelling it doesn't affect the other callers
+     * waiting for the same page. If the cache is disabled, cancelling the future cancels the search itself.
+     *
+     * @param phrase    the phrase to search for
+     * @param variety   the specific variety of English
+     * @param from      the offset from the start of the results
+     * @param size      the number of results to be returned
+     * @param window    the number of subtitle entries to return before and after the found fragment,
+     *                  or null to return all the subtitles of the video
+     * @return a future of a page with video fragments
+     */
+    public CompletableFuture<VideoFragmentPage> searchAsync(String phrase, EnglishVariety variety, int from, int size, Integer window) {
+        if (!enabled) {
+            return asyncVideoSearcher.search(phrase, variety, from, size, window);
+        }
+        // the copy is taken inside, so cancelling the returned future never reaches the shared one
+        return videoIndexResolver.resolveIndexNameAsync().thenCompose(indexName -> {
+            PageKey key = new PageKey(normalize(phrase), phrase, variety, from, size, window, indexName);
+            return cache.get(key).copy();
+        });
+    }
+
+    /**
+     * Drops the pages of the previous index once the alias moves to a new one.
+     */
+    @EventListener
+    public void onVideoIndexSwitched(VideoIndexSwitchedEvent event) {
+        cache.synchronous().asMap().keySet().removeIf(key -> !key.indexName().equals(event.indexName()));
+    }
+
+    private CompletableFuture<VideoFragmentPage> load(PageKey key) {
+        // the normalized phrase only decides which requests share the page, elastic analyzes the phrase itself
+        return asyncVideoSearcher.search(key.phrase(), key.variety(), key.from(), key.size(), key.window());
+    }
+
+    /**
+     * Normalizes only what the analyzer of elastic never tells apart: the phrase is lowercased,
+     * and runs of whitespace are collapsed into a single space and trimmed. Punctuation is kept as it is,
+     * since the tokenizer doesn't always split on it, e.g. "3.14" and "3 14" are different phrases.
+     */
+    static String normalize(String phrase) {
+        if (phrase == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(phrase.length());
+        boolean whitespace = false;
+        for (int i = 0; i < phrase.length(); ) {
+            int codePoint = phrase.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (Character.isWhitespace(codePoint)) {
+                whitespace = true;
+            } else {
+                if (whitespace && !normalized.isEmpty()) {
+                    normalized.append(' ');
+                }
+                normalized.appendCodePoint(codePoint);
+                whitespace = false;
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static int weigh(VideoFragmentPage page) {
+        int weight = 1;
+        for (VideoFragment video : page.videos()) {
+            weight += video.subtitles().size();
+        }
+        return weight;
+    }
+
+    /**
+     * The key of a cached page. The phrase is the one the page was first requested with, and it's searched for
+     * when the page is loaded or refreshed. It's left out of the equality, so equivalent phrases share the page.
+     */
+    private record PageKey(String normalizedPhrase, String phrase, EnglishVariety variety,
+                           int from, int size, Integer window, String indexName) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PageKey other
+                    && normalizedPhrase.equals(other.normalizedPhrase)
+                    && variety == other.variety
+                    && from == other.from
+                    && size == other.size
+                    && Objects.equals(window, other.window)
+                    && indexName.equals(other.indexName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(normalizedPhrase, variety, from, size, window, indexName);
+        }
+    }
+}
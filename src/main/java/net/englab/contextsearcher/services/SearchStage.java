@@ -0,0 +1,40 @@
+package net.englab.contextsearcher.services;
+
+/**
+ * The stages of a video search we measure separately.
+ */
+public enum SearchStage {
+    /**
+     * The search request to Elasticsearch.
+     */
+    ELASTIC("elastic"),
+    /**
+     * The query of the subtitles that are not in the subtitle cache yet.
+     */
+    DATABASE("database"),
+    /**
+     * The lookup of the subtitles in the Elasticsearch subtitle index, if the subtitles are stored there.
+     */
+    SUBTITLE_INDEX("subtitle-index"),
+    /**
+     * Decoding the subtitles loaded from the database.
+     */
+    DECODING("decoding"),
+    /**
+     * Building one video fragment: the range map lookups, highlighting and copying the subtitles.
+     */
+    HIGHLIGHT("highlight");
+
+    private final String tagValue;
+
+    SearchStage(String tagValue) {
+        this.tagValue = tagValue;
+    }
+
+    /**
+     * Returns the name of the stage used in the metric tags and the Server-Timing header.
+     */
+    public String tagValue() {
+        return tagValue;
+    }
+}
@@ -0,0 +1,82 @@
+package net.englab.contextsearcher.services;
+
+import io.micrometer.observation.Observation;
+
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Collects the time one search request spends in each stage, so it can be reported back to the client.
+ * The stages may run on different threads, so the trace is bound to the thread a stage runs on
+ * rather than passed through every method. It also keeps the observation of the request,
+ * so the spans of the stages belong to the request span even if they run on another thread.
+ */
+public final class SearchTrace {
+
+    private static final ThreadLocal<SearchTrace> CURRENT = new ThreadLocal<>();
+
+    private final Observation parentObservation;
+    private final AtomicLongArray stageNanos = new AtomicLongArray(SearchStage.values().length);
+    private final AtomicLongArray stageCounts = new AtomicLongArray(SearchStage.values().length);
+
+    SearchTrace(Observation parentObservation) {
+        this.parentObservation = parentObservation;
+    }
+
+    /**
+     * Returns the trace bound to the current thread, or null if there is none.
+     */
+    static SearchTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs the task with this trace bound to the current thread.
+     *
+     * @param task the task to run
+     * @return the result of the task
+     */
+    public <T> T bind(Supplier<T> task) {
+        SearchTrace previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    Observation parentObservation() {
+        return parentObservation;
+    }
+
+    void record(SearchStage stage, long nanos) {
+        stageNanos.addAndGet(stage.ordinal(), nanos);
+        stageCounts.incrementAndGet(stage.ordinal());
+    }
+
+    /**
+     * Formats the time spent in each stage as the value of a Server-Timing header, e.g.
+     * {@code elastic;dur=12.4, database;dur=3.1, highlight;dur=0.8;desc="x10"}.
+     * The fragments may be highlighted in parallel, so the highlighting time is the sum over all of them.
+     * Stages that haven't run, for example because the page was cached, are left out.
+     */
+    public String toServerTiming() {
+        StringJoiner header = new StringJoiner(", ");
+        for (SearchStage stage : SearchStage.values()) {
+            long count = stageCounts.get(stage.ordinal());
+            if (count == 0) {
+                continue;
+            }
+            String timing = String.format(Locale.ROOT, "%s;dur=%.1f", stage.tagValue(), stageNanos.get(stage.ordinal()) / 1e6);
+            header.add(count > 1 ? timing + ";desc=\"x" + count + "\"" : timing);
+        }
+        return header.toString();
+    }
+}
@@ -0,0 +1,149 @@
+package net.englab.contextsearcher.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.englab.contextsearcher.configs.SearchWarmUpProperties;
+import net.englab.contextsearcher.models.search.VideoFragmentPage;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a few searches on startup, so the first real requests don't pay for the cold JIT,
+ * the Hibernate and Jackson metadata built on first use, empty connection pools and an empty subtitle cache.
+ * The searches skip the result cache, since it would answer all but the first search for a phrase,
+ * and the pages are written with every configured message converter, the same way the search endpoint does it.
+ * Application runners are called before the readiness state changes to accepting traffic,
+ * so a new instance gets traffic only once the warm-up is over.
+ * <p>
+ * The warm-up never fails the startup. If the searches fail, the instance just starts cold.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SearchWarmUp implements ApplicationRunner {
+
+    private final AsyncVideoSearcher asyncVideoSearcher;
+    private final HttpMessageConverters messageConverters;
+    private final SearchWarmUpProperties properties;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.enabled() || properties.phrases().isEmpty()) {
+            return;
+        }
+        log.info("Started warming up with {} phrases", properties.phrases().size());
+
+        long start = System.nanoTime();
+        long deadline = start + properties.timeout().toNanos();
+        AtomicInteger searches = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int worker = 0; worker < properties.parallelism(); worker++) {
+                int offset = worker;
+                executor.execute(() -> warmUp(offset, deadline, searches, failures));
+            }
+        }
+
+        log.info("Finished warming up in {} ms: {} searches, {} of them failed",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), searches.get(), failures.get());
+    }
+
+    /**
+     * Searches for every phrase the configured number of times. Every worker starts from a different phrase,
+     * so the workers don't search for the same phrase at the same time.
+     */
+    private void warmUp(int offset, long deadline, AtomicInteger searches, AtomicInteger failures) {
+        List<String> phrases = properties.phrases();
+        for (int i = 0; i < properties.iterations(); i++) {
+            for (int j = 0; j < phrases.size(); j++) {
+                if (System.nanoTime() - deadline > 0) {
+                    return;
+                }
+                String phrase = phrases.get((j + offset) % phrases.size());
+                searches.incrementAndGet();
+                CompletableFuture<VideoFragmentPage> search = asyncVideoSearcher.search(phrase, null, 0, properties.size(), null);
+                try {
+                    // the wait is bounded too, so a hanging search doesn't hold the startup past the deadline
+                    VideoFragmentPage page = search.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    // the serializers of the page are built on first use as well
+                    write(page);
+                } catch (InterruptedException e) {
+                    search.cancel(true);
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (TimeoutException e) {
+                    search.cancel(true);
+                    failures.incrementAndGet();
+                    return;
+                } catch (ExecutionException | RuntimeException | IOException e) {
+                    if (failures.getAndIncrement() == 0) {
+                        log.warn("A warm-up search for '{}' has failed", phrase, e instanceof ExecutionException ? e.getCause() : e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the page in every media type it can be returned in, with the converter
+     * the content negotiation would pick for that type.
+     */
+    @SuppressWarnings("unchecked")
+    private void write(VideoFragmentPage page) throws IOException {
+        List<HttpMessageConverter<?>> converters = messageConverters.getConverters();
+        Set<MediaType> mediaTypes = new LinkedHashSet<>();
+        for (HttpMessageConverter<?> converter : converters) {
+            if (converter.canWrite(VideoFragmentPage.class, null)) {
+                mediaTypes.addAll(converter.getSupportedMediaTypes(VideoFragmentPage.class));
+            }
+        }
+        for (MediaType mediaType : mediaTypes) {
+            if (!mediaType.isConcrete()) {
+                continue;
+            }
+            for (HttpMessageConverter<?> converter : converters) {
+                if (converter.canWrite(VideoFragmentPage.class, mediaType)) {
+                    ((HttpMessageConverter<VideoFragmentPage>) converter).write(page, mediaType, new DiscardingOutputMessage());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * A response nobody reads, the warm-up only needs the converters to run.
+     */
+    private static class DiscardingOutputMessage implements HttpOutputMessage {
+
+        private final HttpHeaders headers = new HttpHeaders();
+
+        @Override
+        public OutputStream getBody() {
+            return OutputStream.nullOutputStream();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package net.englab.contextsearcher.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.configs.SubtitleCacheProperties;
+import net.englab.contextsearcher.subtitles.LazySubtitleList;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * An in-memory cache of parsed subtitles that sits in front of {@link IndexedVideoStorage}.
+ * Subtitles are evicted based on their weight, which is the number of heap bytes they take up,
+ * so a few long videos cannot push out lots of short ones.
+ */
+@Slf4j
+@Service
+public class SubtitleCache {
+
+    /**
+     * The weight of subtitles that are kept outside the heap. Only the view itself, and the offsets
+     * it builds if the subtitles don't have an offset table, take up the heap.
+     */
+    private static final int OFF_HEAP_WEIGHT = 64;
+
+    /**
+     * The approximate heap size of a parsed subtitle entry with its text list, and of a string without its characters.
+     */
+    private static final int ENTRY_BYTES = 64;
+    private static final int STRING_BYTES = 40;
+
+    private final IndexedVideoStorage indexedVideoStorage;
+    private final Cache<SubtitleKey, List<SubtitleEntry>> cache;
+
+    public SubtitleCache(IndexedVideoStorage indexedVideoStorage, SubtitleCacheProperties properties, MeterRegistry meterRegistry) {
+        this.indexedVideoStorage = indexedVideoStorage;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.maxWeight())
+                .weigher((SubtitleKey key, List<SubtitleEntry> subtitles) -> weigh(subtitles))
+                .recordStats()
+                .build();
+        // the hits, misses and evictions are exported as the cache.* meters tagged with cache=subtitles
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "subtitles");
+    }
+
+    /**
+     * Finds subtitles by their YouTube video IDs. Only the videos that
+     * are not in the cache yet are requested from the storage, in one bulk query.
+     *
+     * @param indexName         the name of the Elasticsearch index
+     * @param youtubeVideoIds   a set of the YouTube video IDs
+     * @return  a map where the key is a YouTube video ID
+     *          and the value is a list of corresponding subtitles
+     */
+    public Map<String, List<SubtitleEntry>> findSubtitles(String indexName, Set<String> youtubeVideoIds) {
+        List<SubtitleKey> keys = youtubeVideoIds.stream()
+                .map(youtubeVideoId -> new SubtitleKey(indexName, youtubeVideoId))
+                .toList();
+
+        Map<String, List<SubtitleEntry>> subtitleMap = new HashMap<>();
+        cache.getAll(keys, this::load)
+                .forEach((key, subtitles) -> subtitleMap.put(key.youtubeVideoId(), subtitles));
+        return subtitleMap;
+    }
+
+    /**
+     * Drops the subtitles of the previous index generation once the alias moves to a new index.
+     * After a full reindexing, the old entries are never requested again, so there's no point in keeping them.
+     * The hits of both indices can come in while the alias is being moved, so the switch is taken
+     * from the resolver rather than from the index names of the hits.
+     */
+    @EventListener
+    public void onVideoIndexSwitched(VideoIndexSwitchedEvent event) {
+        log.info("The video index has been switched from '{}' to '{}'. Evicting the cached subtitles.",
+                event.previousIndexName(), event.indexName());
+        cache.asMap().keySet().removeIf(key -> !key.indexName().equals(event.indexName()));
+    }
+
+    private Map<SubtitleKey, List<SubtitleEntry>> load(Set<? extends SubtitleKey> keys) {
+        Map<SubtitleKey, List<SubtitleEntry>> loaded = new HashMap<>();
+        keys.stream()
+                .collect(Collectors.groupingBy(
+                        SubtitleKey::indexName,
+                        Collectors.mapping(SubtitleKey::youtubeVideoId, Collectors.toSet())
+                ))
+                .forEach((indexName, youtubeVideoIds) -> indexedVideoStorage.findSubtitles(indexName, youtubeVideoIds)
+                        .forEach((youtubeVideoId, subtitles) -> loaded.put(new SubtitleKey(indexName, youtubeVideoId), subtitles)));
+        return loaded;
+    }
+
+    /**
+     * Estimates the heap bytes taken up by the given subtitles. The characters of the parsed ones
+     * are counted as two bytes each, as they are stored when they aren't plain Latin-1.
+     */
+    static int weigh(List<SubtitleEntry> subtitles) {
+        if (subtitles instanceof LazySubtitleList lazySubtitles) {
+            int encodedWeight = lazySubtitles.isOffHeap() ? OFF_HEAP_WEIGHT : lazySubtitles.byteSize();
+            return encodedWeight + lazySubtitles.offsetsByteSize();
+        }
+        long weight = 0;
+        for (SubtitleEntry entry : subtitles) {
+            weight += ENTRY_BYTES;
+            for (String text : entry.text()) {
+                weight += STRING_BYTES + 2L * text.length();
+            }
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private record SubtitleKey(String indexName, String youtubeVideoId) {
+    }
+}
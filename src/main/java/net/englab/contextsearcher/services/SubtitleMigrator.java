@@ -0,0 +1,43 @@
+package net.englab.contextsearcher.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.englab.contextsearcher.configs.SubtitleMigrationProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * A service that rewrites the JSON subtitles of the indexed videos into the binary format in the background.
+ * The rows that haven't been rewritten yet are still readable, so the search works during the migration.
+ * The videos keep being inserted with JSON subtitles, so the migration is repeated periodically.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SubtitleMigrator {
+
+    private final IndexedVideoStorage indexedVideoStorage;
+    private final SubtitleMigrationProperties properties;
+
+    /**
+     * Converts all the videos that still have JSON subtitles if the migration is enabled.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${context-searcher.subtitle-migration.interval:10m}")
+    public void migrate() throws InterruptedException {
+        if (!properties.enabled()) {
+            return;
+        }
+        // the rows converted by the previous runs are skipped by the query, so starting over is cheap
+        long lastId = 0;
+        long batches = 0;
+        while ((lastId = indexedVideoStorage.convertSubtitles(lastId, properties.batchSize())) != -1) {
+            if (++batches % 100 == 0) {
+                log.info("Converted subtitles up to the video with ID {}", lastId);
+            }
+            Thread.sleep(properties.pause());
+        }
+        if (batches > 0) {
+            log.info("Finished converting {} batches of subtitles to the binary format", batches);
+        }
+    }
+}
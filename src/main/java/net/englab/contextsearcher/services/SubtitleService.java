@@ -0,0 +1,45 @@
+package net.englab.contextsearcher.services;
+
+import lombok.RequiredArgsConstructor;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.models.search.SubtitleSlice;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A service that provides subtitles of the videos from the current video index.
+ */
+@Service
+@RequiredArgsConstructor
+public class SubtitleService {
+
+    private final VideoIndexResolver videoIndexResolver;
+    private final SubtitleCache subtitleCache;
+
+    /**
+     * Finds a slice of the subtitles of the given video.
+     * The bounds are clamped to the actual number of subtitle entries.
+     *
+     * @param youtubeVideoId    the YouTube video ID
+     * @param from              the index of the first subtitle entry (inclusive)
+     * @param to                the index of the last subtitle entry (exclusive),
+     *                          or null to return all the entries till the end
+     * @return an Optional containing the slice, or an empty Optional if the video is not found
+     */
+    public Optional<SubtitleSlice> findSubtitles(String youtubeVideoId, int from, Integer to) {
+        String indexName = videoIndexResolver.resolveIndexName();
+        List<SubtitleEntry> subtitles = subtitleCache.findSubtitles(indexName, Set.of(youtubeVideoId)).get(youtubeVideoId);
+        if (subtitles == null) {
+            return Optional.empty();
+        }
+
+        int total = subtitles.size();
+        int start = Math.min(from, total);
+        int end = to == null ? total : Math.clamp(to, start, total);
+
+        return Optional.of(new SubtitleSlice(youtubeVideoId, start, total, subtitles.subList(start, end)));
+    }
+}
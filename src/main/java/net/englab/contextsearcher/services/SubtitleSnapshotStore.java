@@ -0,0 +1,268 @@
+package net.englab.contextsearcher.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.configs.SubtitleSnapshotProperties;
+import net.englab.contextsearcher.exceptions.SubtitleFormatException;
+import net.englab.contextsearcher.models.entities.IndexedVideo;
+import net.englab.contextsearcher.repositories.IndexedVideoRepository;
+import net.englab.contextsearcher.subtitles.LazySubtitleList;
+import net.englab.contextsearcher.subtitles.SubtitleCodec;
+import net.englab.contextsearcher.subtitles.SubtitleSnapshot;
+import net.englab.contextsearcher.subtitles.SubtitleSnapshotWriter;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Serves subtitles from memory-mapped snapshots of the video indices (see {@link SubtitleSnapshot}),
+ * so most subtitle lookups don't go to the database and don't take up the heap.
+ * <p>
+ * The snapshot of the current index is built in the background on startup and whenever the index is switched.
+ * The file survives restarts, so after a restart only the videos added since the last build are read from
+ * the database and appended to it. Until a snapshot is ready, and for the videos it doesn't have yet,
+ * {@link IndexedVideoStorage} falls back to the database.
+ * <p>
+ * Appending by ID misses the videos updated in place and the ones whose transactions are committed after
+ * the videos with greater IDs, so every snapshot is also built from scratch once in a while.
+ */
+@Slf4j
+@Service
+public class SubtitleSnapshotStore {
+
+    private static final String FILE_EXTENSION = ".snapshot";
+
+    private final IndexedVideoRepository indexedVideoRepository;
+    private final VideoIndexResolver videoIndexResolver;
+    private final SubtitleSnapshotProperties properties;
+    private final Clock clock;
+    private final Counter hits;
+    private final Counter misses;
+
+    private final Map<String, SubtitleSnapshot> snapshots = new ConcurrentHashMap<>();
+    /**
+     * When the snapshots were last built from scratch. The snapshots read from the existing files
+     * count from the moment they were opened.
+     */
+    private final Map<String, Instant> rebuilds = new ConcurrentHashMap<>();
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    public SubtitleSnapshotStore(IndexedVideoRepository indexedVideoRepository,
+                                 VideoIndexResolver videoIndexResolver,
+                                 SubtitleSnapshotProperties properties,
+                                 MeterRegistry meterRegistry) {
+        this(indexedVideoRepository, videoIndexResolver, properties, meterRegistry, Clock.systemUTC());
+    }
+
+    SubtitleSnapshotStore(IndexedVideoRepository indexedVideoRepository,
+                          VideoIndexResolver videoIndexResolver,
+                          SubtitleSnapshotProperties properties,
+                          MeterRegistry meterRegistry,
+                          Clock clock) {
+        this.indexedVideoRepository = indexedVideoRepository;
+        this.videoIndexResolver = videoIndexResolver;
+        this.properties = properties;
+        this.clock = clock;
+        this.hits = lookups(meterRegistry, "hit");
+        this.misses = lookups(meterRegistry, "miss");
+    }
+
+    /**
+     * Finds subtitles by their YouTube video IDs in the snapshot of the given index.
+     *
+     * @param indexName         the name of the Elasticsearch index
+     * @param youtubeVideoIds   a set of the YouTube video IDs
+     * @return  a map where the key is a YouTube video ID and the value is a list of corresponding subtitles.
+     *          The videos that are not in the snapshot are left out.
+     */
+    public Map<String, List<SubtitleEntry>> findSubtitles(String indexName, Set<String> youtubeVideoIds) {
+        SubtitleSnapshot snapshot = properties.enabled() ? snapshots.get(indexName) : null;
+        if (snapshot == null) {
+            return Map.of();
+        }
+        Map<String, List<SubtitleEntry>> subtitleMap = new HashMap<>();
+        for (String youtubeVideoId : youtubeVideoIds) {
+            LazySubtitleList subtitles = snapshot.find(youtubeVideoId);
+            if (subtitles != null) {
+                subtitleMap.put(youtubeVideoId, subtitles);
+            }
+        }
+        hits.increment(subtitleMap.size());
+        misses.increment(youtubeVideoIds.size() - subtitleMap.size());
+        return subtitleMap;
+    }
+
+    /**
+     * Builds the snapshot of the current index on startup, and then keeps appending the videos added to the index.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${context-searcher.subtitle-snapshot.refresh-interval:10m}")
+    public void maintain() {
+        if (!properties.enabled()) {
+            return;
+        }
+        try {
+            update(videoIndexResolver.resolveIndexName());
+        } catch (RuntimeException e) {
+            log.error("Failed to update the subtitle snapshot", e);
+        }
+    }
+
+    /**
+     * Builds the snapshot of the new index right away, since all the subtitles of the new index
+     * come from the database until it's ready.
+     */
+    @Async
+    @EventListener
+    public void onVideoIndexSwitched(VideoIndexSwitchedEvent event) {
+        if (!properties.enabled()) {
+            return;
+        }
+        try {
+            update(event.indexName());
+        } catch (RuntimeException e) {
+            log.error("Failed to build the subtitle snapshot of the index '{}'", event.indexName(), e);
+        }
+    }
+
+    /**
+     * Brings the snapshot of the given index up to date and drops the snapshots of the other indices.
+     * The snapshot is built from scratch if it's been longer than the rebuild interval since the last time.
+     *
+     * @param indexName the name of the Elasticsearch index
+     */
+    void update(String indexName) {
+        updateLock.lock();
+        try {
+            Path path = properties.directory().resolve(indexName + FILE_EXTENSION);
+            Instant now = clock.instant();
+            SubtitleSnapshot current = snapshots.get(indexName);
+            if (current == null) {
+                current = openExisting(path);
+                rebuilds.putIfAbsent(indexName, now);
+            }
+            if (current != null && rebuilds.get(indexName).plus(properties.rebuildInterval()).isBefore(now)) {
+                log.info("Rebuilding the subtitle snapshot of the index '{}' from scratch", indexName);
+                // the readers of the current snapshot keep their mapping after the file is replaced
+                current = null;
+                rebuilds.put(indexName, now);
+            }
+            SubtitleSnapshot updated = appendNewVideos(indexName, path, current);
+            if (updated != null) {
+                snapshots.put(indexName, updated);
+            } else {
+                snapshots.remove(indexName);
+            }
+            dropOtherIndices(indexName);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the subtitle snapshot of the index " + indexName, e);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the videos added to the index after the given snapshot was built and writes a new snapshot with them.
+     *
+     * @return the new snapshot, the given one if there are no new videos, or null if the index has no videos at all
+     */
+    private SubtitleSnapshot appendNewVideos(String indexName, Path path, SubtitleSnapshot current) throws IOException {
+        long lastId = current == null ? 0 : current.lastVideoId();
+        List<IndexedVideo> videos = nextBatch(indexName, lastId);
+        if (videos.isEmpty()) {
+            return current;
+        }
+
+        long start = System.nanoTime();
+        Files.createDirectories(path.getParent());
+        try (SubtitleSnapshotWriter writer = new SubtitleSnapshotWriter(path, current)) {
+            int added = 0;
+            while (!videos.isEmpty()) {
+                for (IndexedVideo video : videos) {
+                    if (video.getBinarySubtitles() != null) {
+                        writer.add(video.getYoutubeVideoId(), video.getBinarySubtitles());
+                        continue;
+                    }
+                    List<SubtitleEntry> subtitles = video.getSubtitles();
+                    if (SubtitleCodec.isExact(subtitles)) {
+                        writer.add(video.getYoutubeVideoId(), SubtitleCodec.encode(subtitles));
+                    }
+                    // the rest can't be encoded without rounding them, so they are read from the database
+                }
+                added += videos.size();
+                lastId = videos.getLast().getId();
+                videos = nextBatch(indexName, lastId);
+            }
+            writer.finish(lastId);
+
+            SubtitleSnapshot snapshot = SubtitleSnapshot.open(path);
+            log.info("Added {} videos to the subtitle snapshot of the index '{}' in {} ms. It has {} videos, {} MB.",
+                    added, indexName, (System.nanoTime() - start) / 1_000_000,
+                    snapshot.videoCount(), snapshot.byteSize() >> 20);
+            return snapshot;
+        }
+    }
+
+    private List<IndexedVideo> nextBatch(String indexName, long afterId) {
+        return indexedVideoRepository.findByIndexNameAndIdGreaterThanOrderById(
+                indexName, afterId, Limit.of(properties.batchSize())
+        );
+    }
+
+    private SubtitleSnapshot openExisting(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            return SubtitleSnapshot.open(path);
+        } catch (IOException | SubtitleFormatException e) {
+            log.warn("The subtitle snapshot '{}' cannot be read, so it will be built from scratch", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Forgets the snapshots of the previous indices and deletes their files.
+     * The subtitles that are still in use stay readable until they are garbage collected.
+     */
+    private void dropOtherIndices(String indexName) throws IOException {
+        snapshots.keySet().removeIf(name -> !name.equals(indexName));
+        rebuilds.keySet().removeIf(name -> !name.equals(indexName));
+        if (!Files.isDirectory(properties.directory())) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(properties.directory())) {
+            for (Path file : files.toList()) {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(FILE_EXTENSION) && !fileName.equals(indexName + FILE_EXTENSION)) {
+                    log.info("Deleting the subtitle snapshot '{}' of a previous index", file);
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static Counter lookups(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("search.subtitle.snapshot.lookups")
+                .description("The number of subtitle lookups in the memory-mapped snapshots")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,166 @@
+package net.englab.contextsearcher.services;
+
+import net.englab.contextsearcher.models.search.PhraseSuggestion;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * An immutable index of phrases that finds the most searched phrases starting with a prefix.
+ * <p>
+ * The phrases are sorted, so the phrases with the same prefix form a range that is found with two binary searches,
+ * the same way a trie would find the subtree of the prefix. The most searched phrases of the range are then taken
+ * from a sparse table of range maximums, so a query takes O(log n + k log k) time however many phrases
+ * start with the prefix.
+ */
+final class SuggestionIndex {
+
+    static final SuggestionIndex EMPTY = new SuggestionIndex(List.of());
+
+    private final String[] phrases;
+    private final long[] searchCounts;
+    private final long[] hitCounts;
+
+    /**
+     * {@code maxima[j][i]} is the index of the most searched phrase among the {@code 2^j} phrases starting at i.
+     */
+    private final int[][] maxima;
+
+    /**
+     * Builds the index.
+     *
+     * @param stats the statistics of the phrases. The phrases must be distinct.
+     */
+    SuggestionIndex(List<Phrase> stats) {
+        List<Phrase> sorted = stats.stream().sorted(Comparator.comparing(Phrase::phrase)).toList();
+        int size = sorted.size();
+        this.phrases = new String[size];
+        this.searchCounts = new long[size];
+        this.hitCounts = new long[size];
+        for (int i = 0; i < size; i++) {
+            Phrase phrase = sorted.get(i);
+            phrases[i] = phrase.phrase();
+            searchCounts[i] = phrase.searchCount();
+            hitCounts[i] = phrase.hitCount();
+        }
+
+        int levels = 32 - Integer.numberOfLeadingZeros(size);
+        this.maxima = new int[levels][];
+        if (levels > 0) {
+            maxima[0] = new int[size];
+            for (int i = 0; i < size; i++) {
+                maxima[0][i] = i;
+            }
+        }
+        for (int j = 1; j < levels; j++) {
+            int half = 1 << (j - 1);
+            maxima[j] = new int[size - (1 << j) + 1];
+            for (int i = 0; i < maxima[j].length; i++) {
+                maxima[j][i] = better(maxima[j - 1][i], maxima[j - 1][i + half]);
+            }
+        }
+    }
+
+    /**
+     * Finds the most searched phrases starting with the given prefix.
+     *
+     * @param prefix    the normalized prefix
+     * @param limit     the maximum number of phrases to return
+     * @return a list of the phrases ordered from the most searched one
+     */
+    List<PhraseSuggestion> suggest(String prefix, int limit) {
+        int from = lowerBound(prefix);
+        int to = prefixEnd(prefix, from);
+        if (from >= to || limit <= 0) {
+            return List.of();
+        }
+
+        // the best phrase of a range splits it into two ranges, and the best of those are the next candidates
+        PriorityQueue<Range> ranges = new PriorityQueue<>((a, b) -> a.best() == better(a.best(), b.best()) ? -1 : 1);
+        ranges.add(range(from, to));
+        List<PhraseSuggestion> suggestions = new ArrayList<>(Math.min(limit, to - from));
+        while (suggestions.size() < limit && !ranges.isEmpty()) {
+            Range range = ranges.poll();
+            int best = range.best();
+            suggestions.add(new PhraseSuggestion(phrases[best], hitCounts[best]));
+            if (range.from() < best) {
+                ranges.add(range(range.from(), best));
+            }
+            if (best + 1 < range.to()) {
+                ranges.add(range(best + 1, range.to()));
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Returns the number of phrases in the index.
+     */
+    int size() {
+        return phrases.length;
+    }
+
+    private Range range(int from, int to) {
+        int level = 31 - Integer.numberOfLeadingZeros(to - from);
+        return new Range(from, to, better(maxima[level][from], maxima[level][to - (1 << level)]));
+    }
+
+    /**
+     * Returns the index of the more searched phrase, or of the first one in alphabetical order if it's a tie.
+     */
+    private int better(int a, int b) {
+        if (searchCounts[a] != searchCounts[b]) {
+            return searchCounts[a] > searchCounts[b] ? a : b;
+        }
+        return Math.min(a, b);
+    }
+
+    /**
+     * Returns the index of the first phrase that is not less than the prefix.
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = phrases.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (phrases[middle].compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first phrase after the given one that doesn't start with the prefix.
+     */
+    private int prefixEnd(String prefix, int from) {
+        int low = from;
+        int high = phrases.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (phrases[middle].startsWith(prefix)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The statistics of a phrase.
+     *
+     * @param phrase        the normalized phrase
+     * @param searchCount   the number of times the phrase has been searched for
+     * @param hitCount      the number of video fragments the phrase was found in
+     */
+    record Phrase(String phrase, long searchCount, long hitCount) {
+    }
+
+    private record Range(int from, int to, int best) {
+    }
+}
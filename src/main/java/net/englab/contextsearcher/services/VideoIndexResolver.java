@@ -0,0 +1,174 @@
+package net.englab.contextsearcher.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.GetAliasRequest;
+import lombok.extern.slf4j.Slf4j;
+import net.englab.common.search.exceptions.ElasticOperationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static net.englab.common.search.models.elastic.VideoIndexProperties.ALIAS;
+
+/**
+ * A service that resolves the name of the index the video alias currently points to.
+ * The resolved name is kept for a short period of time, so we don't ask Elasticsearch on every request.
+ * When the alias moves to a new index, a {@link VideoIndexSwitchedEvent} is published.
+ */
+@Slf4j
+@Service
+public class VideoIndexResolver {
+
+    private static final Duration REFRESH_INTERVAL = Duration.ofSeconds(10);
+
+    /**
+     * Runs the first resolution off the request thread. It's a blocking call, so it gets a virtual thread.
+     */
+    private static final Executor RESOLVER_EXECUTOR = task -> Thread.ofVirtual().name("video-index-resolver").start(task);
+
+    /**
+     * Orders the index names by the number they end with, so "videos-10" comes after "videos-9".
+     * The names that don't end with a number come first and are ordered as strings.
+     */
+    static final Comparator<String> INDEX_ORDER = Comparator
+            .comparingLong(VideoIndexResolver::indexNumber)
+            .thenComparing(Comparator.naturalOrder());
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Clock clock;
+
+    private final AtomicReference<ResolvedIndex> resolvedIndex = new AtomicReference<>();
+    /**
+     * Only one caller at a time asks Elasticsearch, so a slow stale answer can't overwrite a newer one
+     * and make the alias look like it's switching back and forth.
+     */
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    @Autowired
+    public VideoIndexResolver(ElasticsearchClient elasticsearchClient, ApplicationEventPublisher eventPublisher) {
+        this(elasticsearchClient, eventPublisher, Clock.systemUTC());
+    }
+
+    VideoIndexResolver(ElasticsearchClient elasticsearchClient, ApplicationEventPublisher eventPublisher, Clock clock) {
+        this.elasticsearchClient = elasticsearchClient;
+        this.eventPublisher = eventPublisher;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the name of the index behind the video alias.
+     *
+     * @return the name of the current video index
+     * @throws ElasticOperationException if the alias cannot be resolved
+     */
+    public String resolveIndexName() {
+        ResolvedIndex current = resolvedIndex.get();
+        if (current != null && !isExpired(current)) {
+            return current.indexName();
+        }
+        if (current == null) {
+            // there's no name to return yet, so every caller waits for the first resolution
+            refreshLock.lock();
+        } else if (!refreshLock.tryLock()) {
+            // another caller is refreshing it, until then the last name is still the best guess
+            return current.indexName();
+        }
+        try {
+            ResolvedIndex previous = resolvedIndex.get();
+            if (previous != null && !isExpired(previous)) {
+                return previous.indexName();
+            }
+            ResolvedIndex next = new ResolvedIndex(fetchIndexName(), clock.instant().plus(REFRESH_INTERVAL));
+            // the switch is published only by the caller that actually replaced the previous name
+            if (resolvedIndex.compareAndSet(previous, next)
+                    && previous != null && !previous.indexName().equals(next.indexName())) {
+                log.info("The video alias has been switched from '{}' to '{}'", previous.indexName(), next.indexName());
+                eventPublisher.publishEvent(new VideoIndexSwitchedEvent(previous.indexName(), next.indexName()));
+            }
+            return next.indexName();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the name of the index behind the video alias without blocking the calling thread.
+     * Once the alias has been resolved, the last resolved name is returned right away even if it's due
+     * to be refreshed, since {@link #refresh()} keeps it up to date in the background.
+     * Only the very first resolution is done asynchronously.
+     *
+     * @return a future of the name of the current video index
+     */
+    public CompletableFuture<String> resolveIndexNameAsync() {
+        ResolvedIndex current = resolvedIndex.get();
+        if (current != null) {
+            return CompletableFuture.completedFuture(current.indexName());
+        }
+        return CompletableFuture.supplyAsync(this::resolveIndexName, RESOLVER_EXECUTOR);
+    }
+
+    /**
+     * Checks the alias in the background, so the switch is noticed, and the caches are evicted,
+     * even if no search resolves the index for a while, e.g. when the result cache is disabled.
+     * The delay is the same as the refresh interval.
+     */
+    @Scheduled(fixedDelay = 10, timeUnit = TimeUnit.SECONDS)
+    public void refresh() {
+        try {
+            resolveIndexName();
+        } catch (RuntimeException e) {
+            log.warn("Failed to resolve the video alias", e);
+        }
+    }
+
+    private boolean isExpired(ResolvedIndex resolved) {
+        return resolved.expiresAt().isBefore(clock.instant());
+    }
+
+    private String fetchIndexName() {
+        try {
+            // during a full reindexing, the alias might briefly point to two indices,
+            // in which case we take the latest one
+            return elasticsearchClient.indices().getAlias(GetAliasRequest.of(a -> a.name(ALIAS))).result().keySet().stream()
+                    .max(INDEX_ORDER)
+                    .orElseThrow(() -> new IllegalStateException("The video alias doesn't point to any index"));
+        } catch (IOException e) {
+            throw new ElasticOperationException("An exception occurred while resolving the video alias", e);
+        }
+    }
+
+    /**
+     * Returns the number the index name ends with, or -1 if it doesn't end with a number.
+     */
+    private static long indexNumber(String indexName) {
+        int start = indexName.length();
+        while (start > 0 && indexName.charAt(start - 1) >= '0' && indexName.charAt(start - 1) <= '9') {
+            start--;
+        }
+        if (start == indexName.length()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(indexName, start, indexName.length(), 10);
+        } catch (NumberFormatException e) {
+            // too long to be a number, so it must be later than any number
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private record ResolvedIndex(String indexName, Instant expiresAt) {
+    }
+}
@@ -0,0 +1,11 @@
+package net.englab.contextsearcher.services;
+
+/**
+ * An application event that is published when the video alias
+ * starts pointing to a new index, e.g. after a full reindexing.
+ *
+ * @param previousIndexName the name of the index the alias pointed to before
+ * @param indexName         the name of the index the alias points to now
+ */
+public record VideoIndexSwitchedEvent(String previousIndexName, String indexName) {
+}
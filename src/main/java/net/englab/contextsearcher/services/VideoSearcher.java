@@ -1,10 +1,18 @@
 package net.englab.contextsearcher.services;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
 import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch.core.MsearchResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.elasticsearch.core.search.Highlight;
 import co.elastic.clients.elasticsearch.core.search.Hit;
 import co.elastic.clients.elasticsearch.core.search.HitsMetadata;
+import co.elastic.clients.elasticsearch.core.search.SourceConfig;
 import co.elastic.clients.elasticsearch.core.search.TotalHits;
 import com.google.common.collect.RangeMap;
 import lombok.RequiredArgsConstructor;
@@ -13,13 +21,27 @@ import net.englab.common.search.exceptions.ElasticOperationException;
 import net.englab.common.search.models.common.EnglishVariety;
 import net.englab.common.search.models.elastic.VideoFragmentDocument;
 import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.configs.SearchExecutors;
+import net.englab.contextsearcher.configs.SearchPipelineProperties;
+import net.englab.contextsearcher.exceptions.CursorExpiredException;
+import net.englab.contextsearcher.exceptions.MalformedCursorException;
+import net.englab.contextsearcher.exceptions.SearchOverloadedException;
+import net.englab.contextsearcher.models.search.SearchCursor;
+import net.englab.contextsearcher.models.search.SearchQuery;
 import net.englab.contextsearcher.models.search.VideoFragment;
 import net.englab.contextsearcher.models.search.VideoFragmentPage;
 import net.englab.contextsearcher.subtitles.SubtitleHighlighter;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static net.englab.common.search.models.elastic.VideoIndexProperties.*;
@@ -32,22 +54,191 @@ import static net.englab.common.search.models.elastic.VideoIndexProperties.*;
 @RequiredArgsConstructor
 public class VideoSearcher {
 
+    /**
+     * Private use characters that never appear in subtitles. Elasticsearch puts them around the matched words,
+     * so we can find the match offsets in one pass without worrying about the text looking like a tag.
+     */
+    static final String MATCH_START = "\uE000";
+    static final String MATCH_END = "\uE001";
+
+    /**
+     * The fields of the video document read by {@link #buildVideoFragment}.
+     * The common library names only the fields we search by, so the rest of them are named here.
+     */
+    static final String YOUTUBE_VIDEO_ID = "youtubeVideoId";
+    static final String SENTENCE_POSITION = "sentencePosition";
+    static final String SENTENCE_RANGE_MAP = "sentenceRangeMap";
+
+    /**
+     * The only fields of the document we need to build a video fragment.
+     * The sentence itself comes back in the highlight, so there's no need to fetch it twice.
+     */
+    private static final SourceConfig SOURCE = SourceConfig.of(s -> s
+            .filter(f -> f.includes(YOUTUBE_VIDEO_ID, ENGLISH_VARIETY, SENTENCE_POSITION, SENTENCE_RANGE_MAP))
+    );
+
+    private static final Highlight HIGHLIGHT = Highlight.of(h -> h
+            .fields(SENTENCE, f -> f
+                    .numberOfFragments(0)
+                    .preTags(MATCH_START)
+                    .postTags(MATCH_END)
+            )
+    );
+
+    /**
+     * The number of hits we request from elastic at once when streaming the results.
+     */
+    private static final int STREAM_BATCH_SIZE = 10;
+
     private final ElasticsearchClient elasticsearchClient;
-    private final IndexedVideoStorage indexedVideoStorage;
+    private final SubtitleCache subtitleCache;
+    private final SearchMetrics searchMetrics;
+    private final SearchLimiters searchLimiters;
+    private final PointInTimeRegistry pointInTimeRegistry;
+    private final SearchExecutors searchExecutors;
+    private final SearchPipelineProperties searchPipelineProperties;
 
     /**
-     * Finds video documents in the video index containing the given phrase.
+     * Finds video documents containing the given phrase page by page using a point in time.
+     * Unlike offset pagination, the cost of a page doesn't grow with its depth,
+     * and the pages stay consistent even if the index is refreshed in between.
      *
      * @param phrase    the phrase to search for
      * @param variety   the specific variety of English
-     * @param from      the offset from the start of the results
+     * @param cursor    the cursor returned with the previous page, or {@link SearchCursor#START_TOKEN} for the first page
      * @param size      the number of results to be returned
-     * @return a page with video fragments
+     * @param window    the number of subtitle entries to return before and after the found fragment,
+     *                  or null to return all the subtitles of the video
+     * @return a page with video fragments and a cursor to the next page if there is one
+     * @throws MalformedCursorException if the cursor can't be decoded
+     * @throws CursorExpiredException if the point in time of the cursor has expired
+     * @throws SearchOverloadedException if a new cursor is requested while there are too many open ones
      */
-    public VideoFragmentPage search(String phrase, EnglishVariety variety, int from, int size) {
-        var searchResponse = searchDocuments(phrase, variety, from, size);
+    public VideoFragmentPage search(String phrase, EnglishVariety variety, String cursor, int size, Integer window) {
+        SearchCursor searchCursor = decodeCursor(cursor);
+        String pitId = searchCursor.pitId() != null ? searchCursor.pitId() : pointInTimeRegistry.open();
+
+        SearchResponse<VideoFragmentDocument> searchResponse;
+        try {
+            searchResponse = searchPage(phrase, variety, pitId, searchCursor.searchAfter(), 0, size);
+        } catch (RuntimeException e) {
+            // nobody gets a cursor for the first page, so nobody would ever close its point in time
+            if (searchCursor.pitId() == null) {
+                pointInTimeRegistry.close(pitId);
+            }
+            throw e;
+        }
         var hits = searchResponse.hits().hits();
+        pointInTimeRegistry.renew(pitId, searchResponse.pitId());
+
+        List<VideoFragment> videos = buildVideoFragments(hits, window);
+
+        String nextCursor = null;
+        if (hits.isEmpty() || hits.size() < size) {
+            pointInTimeRegistry.close(searchResponse.pitId());
+        } else {
+            nextCursor = new SearchCursor(searchResponse.pitId(), hits.getLast().sort()).encode();
+        }
+
+        return new VideoFragmentPage(totalHits(searchResponse.hits()), videos, nextCursor);
+    }
+
+    /**
+     * Finds video documents containing the given phrase and passes the video fragments to the consumer
+     * batch by batch, as soon as each batch is ready. The whole result is never kept in memory.
+     *
+     * @param phrase    the phrase to search for
+     * @param variety   the specific variety of English
+     * @param from      the offset from the start of the results
+     * @param size      the total number of results to be returned
+     * @param window    the number of subtitle entries to return before and after the found fragment,
+     *                  or null to return all the subtitles of the video
+     * @param consumer  the consumer of the video fragments
+     */
+    public void stream(String phrase, EnglishVariety variety, int from, int size, Integer window, Consumer<VideoFragment> consumer) {
+        String pitId = pointInTimeRegistry.open();
+        try {
+            List<FieldValue> searchAfter = List.of();
+            int remaining = size;
+            while (remaining > 0) {
+                int batchSize = Math.min(remaining, STREAM_BATCH_SIZE);
+                var searchResponse = searchPage(phrase, variety, pitId, searchAfter, searchAfter.isEmpty() ? from : 0, batchSize);
+                var hits = searchResponse.hits().hits();
+                pointInTimeRegistry.renew(pitId, searchResponse.pitId());
+                pitId = searchResponse.pitId();
+
+                buildVideoFragments(hits, window).forEach(consumer);
+
+                if (hits.size() < batchSize) {
+                    break;
+                }
+                remaining -= hits.size();
+                searchAfter = hits.getLast().sort();
+            }
+        } finally {
+            pointInTimeRegistry.close(pitId);
+        }
+    }
+
+    /**
+     * Runs several searches at once in a single multi search request.
+     * The subtitles of all the found videos are loaded with one query per index,
+     * and the pages are built in parallel.
+     *
+     * @param queries the search queries
+     * @return the pages with video fragments in the order of the queries
+     */
+    public List<VideoFragmentPage> search(List<SearchQuery> queries) {
+        if (queries.isEmpty()) {
+            return List.of();
+        }
 
+        List<HitsMetadata<VideoFragmentDocument>> results = multiSearchDocuments(queries);
+
+        // collect the videos of all the searches, so we can load their subtitles at once
+        Map<String, Set<String>> youtubeVideoIdsByIndex = new HashMap<>();
+        for (HitsMetadata<VideoFragmentDocument> result : results) {
+            for (Hit<VideoFragmentDocument> hit : result.hits()) {
+                if (hit.source() != null) {
+                    youtubeVideoIdsByIndex.computeIfAbsent(hit.index(), k -> new HashSet<>())
+                            .add(hit.source().getYoutubeVideoId());
+                }
+            }
+        }
+        Map<String, Map<String, List<SubtitleEntry>>> subtitleMaps = new HashMap<>();
+        youtubeVideoIdsByIndex.forEach((indexName, youtubeVideoIds) ->
+                subtitleMaps.put(indexName, subtitleCache.findSubtitles(indexName, youtubeVideoIds)));
+
+        // highlighting is CPU bound, and virtual threads run on as many carrier threads as there are cores
+        SearchTrace trace = searchMetrics.currentTrace();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<VideoFragmentPage>> pages = new ArrayList<>(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                HitsMetadata<VideoFragmentDocument> hits = results.get(i);
+                Integer window = queries.get(i).window();
+                pages.add(executor.submit(() -> trace.bind(() -> new VideoFragmentPage(
+                        totalHits(hits),
+                        highlightVideoFragments(hits.hits(), hit -> subtitleMaps.get(hit.index()), window)
+                ))));
+            }
+
+            List<VideoFragmentPage> videoFragmentPages = new ArrayList<>(pages.size());
+            for (Future<VideoFragmentPage> page : pages) {
+                videoFragmentPages.add(page.get());
+            }
+            return videoFragmentPages;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The batch search has been interrupted", e);
+        }
+    }
+
+    private List<VideoFragment> buildVideoFragments(List<Hit<VideoFragmentDocument>> hits, Integer window) {
         Set<String> youtubeVideoIds = hits.stream()
                 .map(Hit::source)
                 .filter(Objects::nonNull)
@@ -59,38 +250,166 @@ public class VideoSearcher {
                 .map(Hit::index)
                 .orElse("");
 
-        Map<String, List<SubtitleEntry>> subtitleMap = indexedVideoStorage.findSubtitles(indexName, youtubeVideoIds);
+        Map<String, List<SubtitleEntry>> subtitleMap = subtitleCache.findSubtitles(indexName, youtubeVideoIds);
 
-        List<VideoFragment> videos = hits.stream()
-                .map(hit -> buildVideoFragment(hit, subtitleMap))
-                .toList();
+        return highlightVideoFragments(hits, hit -> subtitleMap, window);
+    }
 
-        long totalElements = Optional.of(searchResponse.hits())
+    private List<VideoFragment> highlightVideoFragments(List<Hit<VideoFragmentDocument>> hits,
+                                                        Function<Hit<VideoFragmentDocument>, Map<String, List<SubtitleEntry>>> subtitleMaps,
+                                                        Integer window) {
+        List<VideoFragment> videos;
+        if (hits.size() < searchPipelineProperties.parallelHighlightSize()) {
+            videos = hits.stream()
+                    .map(hit -> searchMetrics.observe(SearchStage.HIGHLIGHT, () -> buildVideoFragment(hit, subtitleMaps.apply(hit), window)))
+                    .toList();
+        } else {
+            videos = highlightInParallel(hits, subtitleMaps, window);
+        }
+        searchMetrics.recordPage(videos);
+        return videos;
+    }
+
+    /**
+     * Builds the fragments of a large page on the bounded highlight executor, so a long page doesn't keep
+     * a single thread busy while the other cores are idle. The fragments keep the order of the hits,
+     * and if several of them fail, the exception of the first one in that order is thrown, as it would be
+     * if they were built one by one.
+     */
+    private List<VideoFragment> highlightInParallel(List<Hit<VideoFragmentDocument>> hits,
+                                                    Function<Hit<VideoFragmentDocument>, Map<String, List<SubtitleEntry>>> subtitleMaps,
+                                                    Integer window) {
+        SearchTrace trace = searchMetrics.currentTrace();
+        List<Future<VideoFragment>> futures = new ArrayList<>(hits.size());
+        try {
+            for (Hit<VideoFragmentDocument> hit : hits) {
+                futures.add(searchExecutors.highlightExecutor().submit(() -> trace.bind(() -> searchMetrics.observe(
+                        SearchStage.HIGHLIGHT, () -> buildVideoFragment(hit, subtitleMaps.apply(hit), window)
+                ))));
+            }
+            List<VideoFragment> videos = new ArrayList<>(futures.size());
+            for (Future<VideoFragment> future : futures) {
+                videos.add(future.get());
+            }
+            return videos;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Building the video fragments has been interrupted", e);
+        } finally {
+            // the rest of the page is of no use once one of the fragments has failed
+            futures.forEach(future -> future.cancel(false));
+        }
+    }
+
+    private static long totalHits(HitsMetadata<VideoFragmentDocument> hits) {
+        return Optional.of(hits)
                 .map(HitsMetadata::total)
                 .map(TotalHits::value)
                 .orElse(0L);
+    }
+
+    private SearchResponse<VideoFragmentDocument> searchPage(String phrase, EnglishVariety variety, String pitId,
+                                                             List<FieldValue> searchAfter, int from, int size) {
+        try {
+            return searchDocuments(buildSearchRequest(b -> {
+                b.pit(p -> p.id(pitId).keepAlive(pointInTimeRegistry.keepAlive()))
+                        .from(from)
+                        // with a point in time, elastic adds the shard doc as a tiebreaker to the sort values
+                        .sort(o -> o.score(c -> c.order(SortOrder.Desc)));
+                if (!searchAfter.isEmpty()) {
+                    b.searchAfter(searchAfter);
+                }
+                return b;
+            }, phrase, variety, size));
+        } catch (ElasticsearchException e) {
+            if (e.status() == HttpStatus.NOT_FOUND.value()) {
+                throw new CursorExpiredException("The search cursor has expired", e);
+            }
+            throw e;
+        }
+    }
+
+    private SearchResponse<VideoFragmentDocument> searchDocuments(SearchRequest request) {
+        boolean cheap = request.size() != null && searchLimiters.isCheap(request.size());
+        return searchLimiters.limit(SearchStage.ELASTIC, cheap, () -> searchMetrics.observe(SearchStage.ELASTIC, () -> {
+            try {
+                return elasticsearchClient.search(request, VideoFragmentDocument.class);
+            } catch (IOException e) {
+                throw new ElasticOperationException("An exception occurred during video search", e);
+            }
+        }));
+    }
 
-        return new VideoFragmentPage(totalElements, videos);
+    /**
+     * Builds a request that finds a page of video documents with offset pagination.
+     */
+    static SearchRequest buildSearchRequest(String phrase, EnglishVariety variety, int from, int size) {
+        return buildSearchRequest(b -> b
+                .index(ALIAS)
+                .from(from), phrase, variety, size);
     }
 
-    private SearchResponse<VideoFragmentDocument> searchDocuments(String phrase, EnglishVariety variety, int from, int size) {
+    private static SearchRequest buildSearchRequest(
+            Function<SearchRequest.Builder, SearchRequest.Builder> pagination,
+            String phrase, EnglishVariety variety, int size) {
+        return SearchRequest.of(b -> pagination.apply(b)
+                .size(size)
+                .query(buildSearchQuery(phrase, variety)._toQuery())
+                .source(SOURCE)
+                .highlight(HIGHLIGHT));
+    }
+
+    private List<HitsMetadata<VideoFragmentDocument>> multiSearchDocuments(List<SearchQuery> queries) {
+        // a batch is never cheap, however small its queries are
+        MsearchResponse<VideoFragmentDocument> response = searchLimiters.limit(SearchStage.ELASTIC, false, () -> searchMetrics.observe(SearchStage.ELASTIC, () -> {
+            try {
+                return elasticsearchClient.msearch(m -> {
+                    for (SearchQuery query : queries) {
+                        m.searches(s -> s
+                                .header(h -> h.index(ALIAS))
+                                .body(b -> b
+                                        .from(query.from())
+                                        .size(query.size())
+                                        .query(buildSearchQuery(query.phrase(), query.variety())._toQuery())
+                                        .source(SOURCE)
+                                        .highlight(HIGHLIGHT)
+                                )
+                        );
+                    }
+                    return m;
+                }, VideoFragmentDocument.class);
+            } catch (IOException e) {
+                throw new ElasticOperationException("An exception occurred during video multi search", e);
+            }
+        }));
+
+        List<HitsMetadata<VideoFragmentDocument>> results = new ArrayList<>(queries.size());
+        for (MultiSearchResponseItem<VideoFragmentDocument> item : response.responses()) {
+            if (item.isFailure()) {
+                throw new ElasticsearchException("msearch", item.failure());
+            }
+            results.add(item.result().hits());
+        }
+        return results;
+    }
+
+    private static SearchCursor decodeCursor(String cursor) {
         try {
-            return elasticsearchClient.search(b -> b
-                    .index(ALIAS)
-                    .from(from)
-                    .size(size)
-                    .query(buildSearchQuery(phrase, variety)._toQuery())
-                    .highlight(h -> h
-                            .fields(SENTENCE, f -> f
-                                    .numberOfFragments(0)
-                            )
-                    ), VideoFragmentDocument.class);
-        } catch (IOException e) {
-            throw new ElasticOperationException("An exception occurred during video search", e);
+            return SearchCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new MalformedCursorException("The cursor is malformed", e);
         }
     }
 
-    private static BoolQuery buildSearchQuery(String phrase, EnglishVariety variety) {
+    static BoolQuery buildSearchQuery(String phrase, EnglishVariety variety) {
         BoolQuery.Builder builder = new BoolQuery.Builder()
                 .must(m -> m.matchPhrase(p -> p.field(SENTENCE).query(phrase)));
         if (variety != null) {
@@ -102,16 +421,22 @@ public class VideoSearcher {
     /**
      * Builds a VideoFragment based on the Elasticsearch response.
      */
-    private VideoFragment buildVideoFragment(Hit<VideoFragmentDocument> hit, Map<String, List<SubtitleEntry>> subtitleMap) {
+    static VideoFragment buildVideoFragment(Hit<VideoFragmentDocument> hit, Map<String, List<SubtitleEntry>> subtitleMap, Integer window) {
         VideoFragmentDocument doc = hit.source();
         if (doc == null) {
             throw new IllegalStateException("Video fragment cannot be null");
         }
 
+        // elastic wraps the matched words in our match tags
+        String highlight = hit.highlight().get(SENTENCE).get(0);
+        int[] partEnds = SubtitleHighlighter.parseHighlight(highlight, MATCH_START, MATCH_END);
+        int sentenceLength = partEnds[partEnds.length - 1];
+
+        // the range map is the authority on which entries the sentence spans
         RangeMap<Integer, Integer> sentenceRangeMap = doc.getSentenceRangeMap();
 
         Integer firstEntryIndex = sentenceRangeMap.get(0);
-        Integer lastEntryIndex = sentenceRangeMap.get(doc.getSentence().length() - 1);
+        Integer lastEntryIndex = sentenceRangeMap.get(sentenceLength - 1);
 
         if (firstEntryIndex == null || lastEntryIndex == null) {
             throw new IllegalStateException(
@@ -125,26 +450,31 @@ public class VideoSearcher {
         // this small trick will boost performance since we don't need to go through all the subtitles
         List<SubtitleEntry> entriesToHighlight = subtitles.subList(firstEntryIndex, lastEntryIndex + 1);
 
-        // elastic wraps highlighted text in <em> and </em> tags
-        String highlight = hit.highlight().get(SENTENCE).get(0);
-        String[] textParts = highlight.split("<em>|</em>");
-
         int sentencePosition = doc.getSentencePosition();
 
-        List<SubtitleEntry> highlightedEntries = SubtitleHighlighter.highlight(textParts, sentencePosition, entriesToHighlight);
+        // the offsets are computed over the sentence only, so the entries of a lazy list outside of it aren't decoded
+        List<SubtitleEntry> highlightedEntries = SubtitleHighlighter.highlight(partEnds, sentencePosition, entriesToHighlight);
 
-        List<SubtitleEntry> preparedSubtitles = new ArrayList<>();
-        preparedSubtitles.addAll(subtitles.subList(0, firstEntryIndex));
+        // without a window, we return all the subtitles as the old clients expect
+        int windowStart = window == null ? 0 : Math.max(0, firstEntryIndex - window);
+        int windowEnd = window == null ? subtitles.size() : Math.min(subtitles.size(), lastEntryIndex + 1 + window);
+
+        List<SubtitleEntry> preparedSubtitles = new ArrayList<>(windowEnd - windowStart);
+        preparedSubtitles.addAll(subtitles.subList(windowStart, firstEntryIndex));
         preparedSubtitles.addAll(highlightedEntries);
-        preparedSubtitles.addAll(subtitles.subList(lastEntryIndex + 1, subtitles.size()));
+        preparedSubtitles.addAll(subtitles.subList(lastEntryIndex + 1, windowEnd));
 
-        int firstHighlightPosition = textParts[0].length();
+        int firstHighlightPosition = partEnds[0];
         Integer subtitleEntryIndex = sentenceRangeMap.get(firstHighlightPosition);
 
         if (subtitleEntryIndex == null) {
             throw new IllegalStateException("Failed to find the subtitle entry index. Sentence range map is not correct.");
         }
 
-        return new VideoFragment(doc.getYoutubeVideoId(), doc.getVariety(), subtitleEntryIndex, preparedSubtitles);
+        if (window == null) {
+            return new VideoFragment(doc.getYoutubeVideoId(), doc.getVariety(), subtitleEntryIndex, preparedSubtitles);
+        }
+        return new VideoFragment(doc.getYoutubeVideoId(), doc.getVariety(), subtitleEntryIndex, preparedSubtitles,
+                windowStart, subtitles.size());
     }
 }
@@ -0,0 +1,39 @@
+package net.englab.contextsearcher.subtitles;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A read-only list of consecutive segments of a subtitle text.
+ * It shares the original text and creates substrings only when the segments are accessed,
+ * which normally happens during serialization.
+ */
+final class HighlightedText extends AbstractList<String> implements RandomAccess {
+
+    private final String text;
+
+    /**
+     * The boundaries of the segments: segment i spans from bounds[i] to bounds[i + 1].
+     */
+    private final int[] bounds;
+    private final int size;
+
+    HighlightedText(String text, int[] bounds, int size) {
+        this.text = text;
+        this.bounds = bounds;
+        this.size = size;
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return text.substring(bounds[index], bounds[index + 1]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,117 @@
+package net.englab.contextsearcher.subtitles;
+
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.exceptions.SubtitleFormatException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A read-only list of subtitle entries backed by the binary format (see {@link SubtitleCodec}).
+ * Entries are decoded on demand every time they are accessed, so {@link #get(int)} and
+ * {@link #subList(int, int)} only allocate the entries that are actually touched.
+ */
+public final class LazySubtitleList extends AbstractList<SubtitleEntry> implements RandomAccess {
+
+    private final ByteBuffer buffer;
+    private final SubtitleCodec.Header header;
+
+    /**
+     * The record and text offsets of the entries if the encoded subtitles don't have an offset table.
+     */
+    private final int[] recordOffsets;
+    private final int[] textOffsets;
+
+    LazySubtitleList(ByteBuffer buffer) {
+        try {
+            this.buffer = buffer;
+            this.header = SubtitleCodec.readHeader(buffer.duplicate());
+            if (header.offsetTablePosition() < 0) {
+                this.recordOffsets = new int[header.entryCount()];
+                this.textOffsets = new int[header.entryCount()];
+                buildOffsets();
+            } else {
+                this.recordOffsets = null;
+                this.textOffsets = null;
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new SubtitleFormatException("The binary subtitles are truncated");
+        }
+    }
+
+    @Override
+    public SubtitleEntry get(int index) {
+        Objects.checkIndex(index, header.entryCount());
+
+        try {
+            int recordOffset;
+            int textOffset;
+            if (recordOffsets == null) {
+                int position = header.offsetTablePosition() + index * 2 * Integer.BYTES;
+                recordOffset = buffer.getInt(position);
+                textOffset = buffer.getInt(position + Integer.BYTES);
+            } else {
+                recordOffset = recordOffsets[index];
+                textOffset = textOffsets[index];
+            }
+
+            return new SubtitleCodec.EntryReader(
+                    buffer,
+                    header.recordsPosition() + recordOffset,
+                    header.textPosition() + textOffset
+            ).next();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            // a corrupted offset can point anywhere, and positioning a buffer outside of it is an IllegalArgumentException
+            throw new SubtitleFormatException("The binary subtitles are truncated");
+        }
+    }
+
+    @Override
+    public int size() {
+        return header.entryCount();
+    }
+
+    /**
+     * Returns the size of the encoded subtitles in bytes.
+     */
+    public int byteSize() {
+        return buffer.limit();
+    }
+
+    /**
+     * Returns the heap size in bytes of the offsets built for the subtitles that don't have an offset table.
+     */
+    public int offsetsByteSize() {
+        // two arrays with their headers
+        return recordOffsets == null ? 0 : 2 * (16 + header.entryCount() * Integer.BYTES);
+    }
+
+    /**
+     * Tells whether the encoded subtitles are outside the heap, e.g. in a memory-mapped snapshot.
+     */
+    public boolean isOffHeap() {
+        return buffer.isDirect();
+    }
+
+    /**
+     * Scans the record block once to find where each entry starts.
+     */
+    private void buildOffsets() {
+        ByteBuffer records = buffer.duplicate().position(header.recordsPosition());
+        int textOffset = 0;
+        for (int i = 0; i < header.entryCount(); i++) {
+            recordOffsets[i] = records.position() - header.recordsPosition();
+            textOffsets[i] = textOffset;
+
+            SubtitleCodec.readVarLong(records); // start time
+            SubtitleCodec.readVarLong(records); // duration
+            int partCount = SubtitleCodec.readSize(records);
+            for (int j = 0; j < partCount; j++) {
+                textOffset += SubtitleCodec.readSize(records);
+            }
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package net.englab.contextsearcher.subtitles;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.exceptions.SubtitleFormatException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A class that encodes subtitles into a compact binary format and decodes them back.
+ * <p>
+ * The layout of the format (version 1) is the following:
+ * <pre>
+ * byte     version
+ * byte     flags (bit 0 is set if the offset table is present)
+ * varint   the number of entries
+ * varint   the length of the record block in bytes
+ * varint   the length of the text block in bytes
+ * int32[]  the offset table: the record offset and the text offset of each entry (optional)
+ * byte[]   the record block: for each entry, its start time and duration in milliseconds
+ *          as zigzag varints, the number of text parts and the byte length of each part as varints
+ * byte[]   the text block: the UTF-8 text of all the entries one after another
+ * </pre>
+ * Times are stored with millisecond precision, which is the precision of YouTube subtitles.
+ * Finer times would be rounded, so the callers that must not change the subtitles check {@link #isExact} first.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class SubtitleCodec {
+
+    public static final byte VERSION = 1;
+
+    static final int OFFSET_TABLE_FLAG = 1;
+
+    /**
+     * Encodes the given subtitles into the binary format.
+     *
+     * @param entries the subtitle entries to encode
+     * @return the encoded subtitles
+     */
+    public static byte[] encode(List<SubtitleEntry> entries) {
+        int entryCount = entries.size();
+        int[] recordOffsets = new int[entryCount];
+        int[] textOffsets = new int[entryCount];
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream(entryCount * 8);
+        ByteArrayOutputStream text = new ByteArrayOutputStream(entryCount * 48);
+
+        for (int i = 0; i < entryCount; i++) {
+            SubtitleEntry entry = entries.get(i);
+            recordOffsets[i] = records.size();
+            textOffsets[i] = text.size();
+
+            long startTime = toMillis(entry.startTime());
+            long endTime = toMillis(entry.endTime());
+            writeVarLong(records, zigZag(startTime));
+            writeVarLong(records, zigZag(endTime - startTime));
+
+            writeVarLong(records, entry.text().size());
+            for (String part : entry.text()) {
+                byte[] bytes = part.getBytes(UTF_8);
+                writeVarLong(records, bytes.length);
+                text.writeBytes(bytes);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(records.size() + text.size() + entryCount * 8 + 16);
+        out.write(VERSION);
+        out.write(OFFSET_TABLE_FLAG);
+        writeVarLong(out, entryCount);
+        writeVarLong(out, records.size());
+        writeVarLong(out, text.size());
+        for (int i = 0; i < entryCount; i++) {
+            writeInt(out, recordOffsets[i]);
+            writeInt(out, textOffsets[i]);
+        }
+        out.writeBytes(records.toByteArray());
+        out.writeBytes(text.toByteArray());
+        return out.toByteArray();
+    }
+
+    /**
+     * Tells whether the given subtitles can be encoded without losing anything, i.e. all their times
+     * are whole milliseconds.
+     *
+     * @param entries the subtitle entries to check
+     * @return true if the decoded subtitles would be equal to the given ones
+     */
+    public static boolean isExact(List<SubtitleEntry> entries) {
+        for (SubtitleEntry entry : entries) {
+            if (!isWholeMillis(entry.startTime()) || !isWholeMillis(entry.endTime())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes all the subtitle entries from the binary format.
+     *
+     * @param bytes the encoded subtitles
+     * @return a list of the decoded subtitle entries
+     * @throws SubtitleFormatException if the subtitles are malformed
+     */
+    public static List<SubtitleEntry> decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decodes all the subtitle entries from the binary format.
+     * The position of the buffer is not changed.
+     *
+     * @param buffer the encoded subtitles, starting at index 0 of the buffer
+     * @return a list of the decoded subtitle entries
+     * @throws SubtitleFormatException if the subtitles are malformed
+     */
+    public static List<SubtitleEntry> decode(ByteBuffer buffer) {
+        try {
+            Header header = readHeader(buffer.duplicate());
+            EntryReader reader = new EntryReader(buffer, header.recordsPosition(), header.textPosition());
+
+            List<SubtitleEntry> entries = new ArrayList<>(header.entryCount());
+            for (int i = 0; i < header.entryCount(); i++) {
+                entries.add(reader.next());
+            }
+            return entries;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new SubtitleFormatException("The binary subtitles are truncated");
+        }
+    }
+
+    /**
+     * Creates a lazy read-only view of the encoded subtitles that decodes entries on demand.
+     *
+     * @param bytes the encoded subtitles
+     * @return a list view of the encoded subtitles
+     * @throws SubtitleFormatException if the header of the subtitles is malformed
+     */
+    public static LazySubtitleList view(byte[] bytes) {
+        return view(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Creates a lazy read-only view of the encoded subtitles that decodes entries on demand.
+     * The buffer must not be modified while the view is in use.
+     *
+     * @param buffer the encoded subtitles, starting at index 0 of the buffer
+     * @return a list view of the encoded subtitles
+     * @throws SubtitleFormatException if the header of the subtitles is malformed
+     */
+    public static LazySubtitleList view(ByteBuffer buffer) {
+        return new LazySubtitleList(buffer);
+    }
+
+    /**
+     * Reads the header of the binary subtitles and leaves the buffer positioned right after it.
+     */
+    static Header readHeader(ByteBuffer buffer) {
+        byte version = buffer.get(0);
+        if (version != VERSION) {
+            throw new SubtitleFormatException("Unsupported binary subtitle version: " + version);
+        }
+        byte flags = buffer.get(1);
+        buffer.position(2);
+        int entryCount = readSize(buffer);
+        int recordsLength = readSize(buffer);
+        int textLength = readSize(buffer);
+
+        boolean hasOffsetTable = (flags & OFFSET_TABLE_FLAG) != 0;
+        int offsetTablePosition = hasOffsetTable ? buffer.position() : -1;
+        // the sizes are bounded by the length of the buffer, so their sum can't overflow a long
+        long recordsPosition = buffer.position() + (hasOffsetTable ? (long) entryCount * 2 * Integer.BYTES : 0);
+        long textPosition = recordsPosition + recordsLength;
+
+        if (textPosition + textLength > buffer.limit()) {
+            throw new SubtitleFormatException("The binary subtitles are truncated");
+        }
+        return new Header(entryCount, offsetTablePosition, (int) recordsPosition, (int) textPosition, textLength);
+    }
+
+    private static long toMillis(double seconds) {
+        return Math.round(seconds * 1000);
+    }
+
+    private static boolean isWholeMillis(double seconds) {
+        // the times are parsed from decimal strings, so a whole number of milliseconds is only close to it in binary
+        return Math.abs(seconds * 1000 - toMillis(seconds)) < 1e-6;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new SubtitleFormatException("Malformed varint in the binary subtitles");
+    }
+
+    /**
+     * Reads a varint that is a count or a length. None of them can be negative or bigger than the subtitles themselves,
+     * so a corrupted one is reported as a format error before anything is allocated for it.
+     */
+    static int readSize(ByteBuffer buffer) {
+        long size = readVarLong(buffer);
+        if (size < 0 || size > buffer.limit()) {
+            throw new SubtitleFormatException("Invalid size in the binary subtitles: " + size);
+        }
+        return (int) size;
+    }
+
+    /**
+     * The decoded header of the binary subtitles.
+     *
+     * @param entryCount            the number of subtitle entries
+     * @param offsetTablePosition   the position of the offset table, or -1 if there's no offset table
+     * @param recordsPosition       the position of the record block
+     * @param textPosition          the position of the text block
+     * @param textLength            the length of the text block in bytes
+     */
+    record Header(int entryCount, int offsetTablePosition, int recordsPosition, int textPosition, int textLength) {
+    }
+
+    /**
+     * Reads subtitle entries one after another starting from the given record and text positions.
+     */
+    static final class EntryReader {
+        private final ByteBuffer records;
+        private final ByteBuffer source;
+        private int textPosition;
+
+        EntryReader(ByteBuffer source, int recordPosition, int textPosition) {
+            this.records = source.duplicate().position(recordPosition);
+            this.source = source;
+            this.textPosition = textPosition;
+        }
+
+        SubtitleEntry next() {
+            long startTime = unZigZag(readVarLong(records));
+            long endTime = startTime + unZigZag(readVarLong(records));
+
+            int partCount = readSize(records);
+            List<String> text = new ArrayList<>(partCount);
+            for (int i = 0; i < partCount; i++) {
+                int length = readSize(records);
+                text.add(readString(source, textPosition, length));
+                textPosition += length;
+            }
+            return new SubtitleEntry(startTime / 1000.0, endTime / 1000.0, text);
+        }
+
+        private static String readString(ByteBuffer buffer, int position, int length) {
+            if (buffer.hasArray()) {
+                return new String(buffer.array(), buffer.arrayOffset() + position, length, UTF_8);
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(position, bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import net.englab.common.search.models.subtitles.SubtitleEntry;
 import net.englab.contextsearcher.exceptions.HighlightingException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -14,59 +15,166 @@ import java.util.List;
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class SubtitleHighlighter {
 
+    /**
+     * Finds the boundaries of the highlighted and non-highlighted parts of the Elasticsearch highlight.
+     * The result is the same as if we split the highlight by the tags and took the cumulative lengths
+     * of the parts, but it's done in one pass with no regex and no intermediate strings.
+     * As with {@link String#split(String)}, trailing empty parts are dropped.
+     *
+     * @param highlight the highlighted text from Elasticsearch
+     * @param preTag    the tag that opens a highlighted part
+     * @param postTag   the tag that closes a highlighted part
+     * @return the end offsets of the parts in the text without the tags
+     */
+    public static int[] parseHighlight(String highlight, String preTag, String postTag) {
+        int[] partEnds = new int[8];
+        int partCount = 0;
+        int textLength = 0;
+
+        int position = 0;
+        int nextPreTag = highlight.indexOf(preTag);
+        int nextPostTag = highlight.indexOf(postTag);
+
+        while (nextPreTag >= 0 || nextPostTag >= 0) {
+            boolean isPreTag = nextPostTag < 0 || (nextPreTag >= 0 && nextPreTag < nextPostTag);
+            int tagPosition = isPreTag ? nextPreTag : nextPostTag;
+
+            if (partCount == partEnds.length) {
+                partEnds = Arrays.copyOf(partEnds, partCount * 2);
+            }
+            textLength += tagPosition - position;
+            partEnds[partCount++] = textLength;
+            position = tagPosition + (isPreTag ? preTag.length() : postTag.length());
+
+            if (nextPreTag >= 0 && nextPreTag < position) {
+                nextPreTag = highlight.indexOf(preTag, position);
+            }
+            if (nextPostTag >= 0 && nextPostTag < position) {
+                nextPostTag = highlight.indexOf(postTag, position);
+            }
+        }
+
+        // if there are no tags at all, split returns the whole string even if it's empty
+        if (partCount == 0) {
+            return new int[] {highlight.length()};
+        }
+
+        if (partCount == partEnds.length) {
+            partEnds = Arrays.copyOf(partEnds, partCount + 1);
+        }
+        textLength += highlight.length() - position;
+        partEnds[partCount++] = textLength;
+
+        while (partCount > 0 && partEnds[partCount - 1] == (partCount > 1 ? partEnds[partCount - 2] : 0)) {
+            partCount--;
+        }
+        return Arrays.copyOf(partEnds, partCount);
+    }
+
+    /**
+     * Applies the Elasticsearch highlighting split by the tags to the given subtitles.
+     * It's kept for the tests written against the split parts, the search parses the highlight instead.
+     *
+     * @param highlightedParts  the parts of the highlight between the tags
+     * @param sentencePosition  the position where the sentence starts in the original subtitle entry
+     * @param subtitleEntries   a part of subtitle entries where the text needs to be highlighted
+     * @return a copy of the subtitle entries with the text highlighted
+     */
+    static List<SubtitleEntry> highlight(String[] highlightedParts, int sentencePosition, List<SubtitleEntry> subtitleEntries) {
+        int[] partEnds = new int[highlightedParts.length];
+        int end = 0;
+        for (int i = 0; i < highlightedParts.length; i++) {
+            end += highlightedParts[i].length();
+            partEnds[i] = end;
+        }
+        return highlight(partEnds, sentencePosition, subtitleEntries);
+    }
+
     /**
      * Applies the Elasticsearch highlighting to the given subtitles.
+     * The text of the highlighted entries shares the original text until it's accessed.
+     *
+     * @param partEnds          the end offsets of the highlighted parts (see {@link #parseHighlight})
+     * @param sentencePosition  the position where the sentence starts in the original subtitle entry
+     * @param subtitleEntries   a part of subtitle entries where the text needs to be highlighted
+     * @return a copy of the subtitle entries with the text highlighted
+     * @throws HighlightingException if the highlighted parts don't fit the subtitle entries
+     */
+    public static List<SubtitleEntry> highlight(int[] partEnds, int sentencePosition, List<SubtitleEntry> subtitleEntries) {
+        return highlight(partEnds, sentencePosition, subtitleEntries, SubtitleOffsets.of(subtitleEntries));
+    }
+
+    /**
+     * Applies the Elasticsearch highlighting to the given subtitles using their precomputed offsets.
+     * The entry of every highlighted part is found with a binary search, so the entries
+     * between the highlighted parts are never touched.
      *
-     * @param highlightedParts  the highlighted text from Elasticsearch
+     * @param partEnds          the end offsets of the highlighted parts (see {@link #parseHighlight})
      * @param sentencePosition  the position where the sentence starts in the original subtitle entry
-     * @param subtitleEntries   a part of subtitle entries where the text needs to be highlighted.
-     *                          This parameter will be updated by the method.
+     * @param subtitleEntries   a part of subtitle entries where the text needs to be highlighted
+     * @param offsets           the offsets of the subtitle entries
      * @return a copy of the subtitle entries with the text highlighted
-     * @throws HighlightingException if an unexpected error occurs during highlighting
+     * @throws HighlightingException if the highlighted parts don't fit the subtitle entries
      */
-    public static List<SubtitleEntry> highlight(String[] highlightedParts, int sentencePosition, List<SubtitleEntry> subtitleEntries) {
+    public static List<SubtitleEntry> highlight(int[] partEnds, int sentencePosition,
+                                                List<SubtitleEntry> subtitleEntries, SubtitleOffsets offsets) {
         List<SubtitleEntry> result = new ArrayList<>(subtitleEntries);
 
         int partIndex = 0;
-        int endPosition = sentencePosition + highlightedParts[0].length();
 
-        for (int i = 0; i < subtitleEntries.size(); i++) {
+        // skip subtitle entries until we find the one where we have the highlighted word
+        int i = offsets.firstEndingAfter(sentencePosition + partEnds[0], 0);
+        while (i < offsets.size()) {
             SubtitleEntry currentEntry = subtitleEntries.get(i);
             String entryText = currentEntry.text().get(0);
+            int entryLength = entryText.length();
+            int endPosition = sentencePosition + partEnds[partIndex] - offsets.start(i);
 
-            // there's no need to process entries with no text
-            if (entryText.isEmpty()) {
-                continue;
-            }
-
-            // skip subtitle entries until we find the one where we have the highlighted word
-            if (endPosition >= entryText.length()) {
-                endPosition -= entryText.length() + 1; // length + a space character
-                continue;
-            }
-
-            List<String> highlightedEntryText = new ArrayList<>();
+            // the segments of the entry text are consecutive, so we only need to keep their boundaries
+            int[] bounds = new int[Math.min(partEnds.length - partIndex, entryLength) + 2];
+            int segmentCount = 0;
 
             // try to split the current entry text
             int startPosition = 0;
-            for (; partIndex < highlightedParts.length - 1 && endPosition <= entryText.length(); partIndex++) {
-                String substring = entryText.substring(startPosition, endPosition);
-                highlightedEntryText.add(substring);
+            for (; partIndex < partEnds.length - 1 && endPosition <= entryLength; partIndex++) {
+                if (endPosition < startPosition) {
+                    throw new HighlightingException("The highlighted parts don't match the subtitle text");
+                }
+                if (segmentCount + 2 > bounds.length) {
+                    bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                }
+                bounds[segmentCount] = startPosition;
+                bounds[++segmentCount] = endPosition;
                 startPosition = endPosition;
-                endPosition += highlightedParts[partIndex + 1].length();
+                endPosition += partEnds[partIndex + 1] - partEnds[partIndex];
             }
 
             // add the tail
-            String lastPart = entryText.substring(startPosition);
-            if (!lastPart.isBlank()) {
-                highlightedEntryText.add(lastPart);
+            if (!isBlank(entryText, startPosition)) {
+                if (segmentCount + 2 > bounds.length) {
+                    bounds = Arrays.copyOf(bounds, bounds.length + 1);
+                }
+                bounds[segmentCount] = startPosition;
+                bounds[++segmentCount] = entryLength;
             }
 
-            endPosition -= entryText.length() + 1;
-
+            List<String> highlightedEntryText = new HighlightedText(entryText, bounds, segmentCount);
             result.set(i, new SubtitleEntry(currentEntry.startTime(), currentEntry.endTime(), highlightedEntryText));
+
+            i = offsets.firstEndingAfter(sentencePosition + partEnds[partIndex], i + 1);
         }
 
         return result;
     }
+
+    private static boolean isBlank(String text, int from) {
+        for (int i = from; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            if (!Character.isWhitespace(codePoint)) {
+                return false;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return true;
+    }
 }
@@ -0,0 +1,135 @@
+package net.englab.contextsearcher.subtitles;
+
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The character offsets of subtitle entries in the text of a video.
+ * The text is the first lines of the non-empty entries joined with a space, the same text
+ * {@link SubtitleHighlighter} walks through when it applies a highlight.
+ * The offsets are prefix sums of the entry lengths, so finding the entry at a position is a binary search
+ * over a primitive array instead of walking the entries or querying a range map.
+ */
+public final class SubtitleOffsets {
+
+    /**
+     * The offsets of the entries followed by the length of the whole text plus one.
+     * Empty entries don't take any space, so their offset is the same as the offset of the next entry.
+     */
+    private final int[] starts;
+    private final int from;
+    private final int size;
+
+    private SubtitleOffsets(int[] starts, int from, int size) {
+        this.starts = starts;
+        this.from = from;
+        this.size = size;
+    }
+
+    /**
+     * Computes the offsets of the given subtitle entries. Every entry is read once, so for a lazy list
+     * it's worth passing only the range that is needed, e.g. the entries of one sentence.
+     *
+     * @param subtitles the subtitle entries
+     * @return the offsets of the entries
+     */
+    public static SubtitleOffsets of(List<SubtitleEntry> subtitles) {
+        int[] starts = new int[subtitles.size() + 1];
+        for (int i = 0; i < subtitles.size(); i++) {
+            int length = textLength(subtitles.get(i));
+            starts[i + 1] = starts[i] + (length == 0 ? 0 : length + 1);
+        }
+        return new SubtitleOffsets(starts, 0, subtitles.size());
+    }
+
+    /**
+     * Returns the length of the text of the entry. Only the first line is counted, since it's the only one highlighted.
+     */
+    private static int textLength(SubtitleEntry entry) {
+        return entry.text().get(0).length();
+    }
+
+    /**
+     * Returns the offsets of a range of the entries. The offsets of the range start from 0.
+     * The offsets are shared, so it takes constant time.
+     *
+     * @param fromIndex the index of the first entry (inclusive)
+     * @param toIndex   the index of the last entry (exclusive)
+     * @return the offsets of the range
+     */
+    public SubtitleOffsets slice(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size);
+        return new SubtitleOffsets(starts, from + fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * Returns the number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the offset at which the text of the given entry starts.
+     */
+    public int start(int index) {
+        Objects.checkIndex(index, size);
+        return starts[from + index] - starts[from];
+    }
+
+    /**
+     * Returns the index of the entry at the given position of the text. The space after an entry belongs to it.
+     *
+     * @param position the position in the text
+     * @return the index of the entry, or -1 if the position is outside the text
+     */
+    public int entryAt(int position) {
+        int base = starts[from];
+        if (position < 0 || position >= starts[from + size] - base) {
+            return -1;
+        }
+        // the last entry that starts at or before the position. It's never empty, since an empty entry
+        // starts at the same offset as the entry after it.
+        return upperBound(from, from + size, base + position) - 1 - from;
+    }
+
+    /**
+     * Finds the first non-empty entry that ends after the given position, i.e. the first entry
+     * that has some text at or after the position.
+     *
+     * @param position  the position in the text
+     * @param fromIndex the index of the entry to start from
+     * @return the index of the entry, or {@link #size()} if there is no such entry
+     */
+    public int firstEndingAfter(int position, int fromIndex) {
+        if (fromIndex >= size) {
+            return size;
+        }
+        // a non-empty entry i ends at starts[i + 1] - 1, so we need the first i with starts[i + 1] > position + 1
+        int index = upperBound(from + fromIndex + 1, from + size + 1, starts[from] + position + 1) - 1 - from;
+        // empty entries before the next non-empty one start at the same offset, so they match too
+        while (index < size && starts[from + index + 1] == starts[from + index]) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the first index in the range whose offset is greater than the value, or the end of the range.
+     */
+    private int upperBound(int fromIndex, int toIndex, int value) {
+        int low = fromIndex;
+        int high = toIndex;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,198 @@
+package net.englab.contextsearcher.subtitles;
+
+import net.englab.contextsearcher.exceptions.SubtitleFormatException;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A read-only snapshot of the subtitles of one video index, memory-mapped from a file.
+ * The subtitles live outside the heap, so the whole corpus can be served from memory
+ * without making the garbage collector walk through it.
+ * <p>
+ * The layout of the file (version 1) is the following, all numbers are big-endian:
+ * <pre>
+ * int32    magic
+ * int32    version
+ * record[] for each video: uint16 the length of the YouTube video ID, the UTF-8 bytes of the ID,
+ *          int32 the length of the subtitles, the subtitles in the binary format (see {@link SubtitleCodec})
+ * slot[]   the hash table: for each slot, int64 the hash of the video ID and int64 the offset of its record,
+ *          or 0 if the slot is empty. The number of slots is a power of two, collisions are resolved by linear probing.
+ * int64    the offset of the hash table
+ * int64    the ID of the last video in the snapshot
+ * int32    the number of slots
+ * int32    the number of videos
+ * int32    version
+ * int32    magic
+ * </pre>
+ * The hash table is at the end, so the records can be streamed into the file before the number of videos is known.
+ * <p>
+ * The file is mapped with an automatic arena, so it's unmapped only when neither the snapshot nor any of
+ * the subtitles found in it are reachable. Replacing or deleting the file doesn't affect the open snapshots.
+ */
+public final class SubtitleSnapshot {
+
+    static final int MAGIC = 0x53554253;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 2 * Integer.BYTES;
+    static final int FOOTER_SIZE = 2 * Long.BYTES + 4 * Integer.BYTES;
+    static final int SLOT_SIZE = 2 * Long.BYTES;
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final Path path;
+    private final MemorySegment segment;
+    private final long tableOffset;
+    private final long lastVideoId;
+    private final int slotCount;
+    private final int videoCount;
+
+    private SubtitleSnapshot(Path path, MemorySegment segment) {
+        this.path = path;
+        this.segment = segment;
+
+        long size = segment.byteSize();
+        if (size < HEADER_SIZE + FOOTER_SIZE
+                || segment.get(INT, 0) != MAGIC
+                || segment.get(INT, size - Integer.BYTES) != MAGIC) {
+            throw new SubtitleFormatException("The file is not a subtitle snapshot: " + path);
+        }
+        int version = segment.get(INT, size - 2 * Integer.BYTES);
+        if (version != VERSION) {
+            throw new SubtitleFormatException("Unsupported subtitle snapshot version: " + version);
+        }
+        long footer = size - FOOTER_SIZE;
+        this.tableOffset = segment.get(LONG, footer);
+        this.lastVideoId = segment.get(LONG, footer + Long.BYTES);
+        this.slotCount = segment.get(INT, footer + 2 * Long.BYTES);
+        this.videoCount = segment.get(INT, footer + 2 * Long.BYTES + Integer.BYTES);
+        if (Integer.bitCount(slotCount) != 1 || tableOffset < HEADER_SIZE
+                || tableOffset + (long) slotCount * SLOT_SIZE != footer) {
+            throw new SubtitleFormatException("The subtitle snapshot is truncated: " + path);
+        }
+    }
+
+    /**
+     * Maps the given snapshot file into memory.
+     *
+     * @param path the path of the snapshot file
+     * @return the snapshot
+     * @throws IOException              if the file cannot be read
+     * @throws SubtitleFormatException  if the file is not a valid snapshot
+     */
+    public static SubtitleSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping outlives the channel
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
+            return new SubtitleSnapshot(path, segment);
+        }
+    }
+
+    /**
+     * Finds the subtitles of the given video.
+     *
+     * @param youtubeVideoId the YouTube video ID
+     * @return a lazy view of the subtitles backed by the mapped file, or null if the video is not in the snapshot
+     */
+    public LazySubtitleList find(String youtubeVideoId) {
+        byte[] id = youtubeVideoId.getBytes(UTF_8);
+        long hash = hash(id);
+        int mask = slotCount - 1;
+        for (int i = (int) hash & mask, probes = 0; probes < slotCount; i = (i + 1) & mask, probes++) {
+            long slot = tableOffset + (long) i * SLOT_SIZE;
+            long offset = segment.get(LONG, slot + Long.BYTES);
+            if (offset == 0) {
+                return null;
+            }
+            if (segment.get(LONG, slot) == hash && idEquals(offset, id)) {
+                return subtitlesAt(offset + Short.BYTES + id.length);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the path of the snapshot file.
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Returns the ID of the last video in the snapshot. The videos after it can be appended to a copy of the snapshot.
+     */
+    public long lastVideoId() {
+        return lastVideoId;
+    }
+
+    /**
+     * Returns the number of videos in the snapshot.
+     */
+    public int videoCount() {
+        return videoCount;
+    }
+
+    /**
+     * Returns the size of the snapshot file in bytes.
+     */
+    public long byteSize() {
+        return segment.byteSize();
+    }
+
+    /**
+     * Returns the offset right after the last record, which is where the hash table starts.
+     */
+    long recordsEnd() {
+        return tableOffset;
+    }
+
+    /**
+     * Calls the consumer with the ID and the record offset of every video in the snapshot.
+     */
+    void forEachRecord(BiConsumer<String, Long> consumer) {
+        for (int i = 0; i < slotCount; i++) {
+            long offset = segment.get(LONG, tableOffset + (long) i * SLOT_SIZE + Long.BYTES);
+            if (offset != 0) {
+                int idLength = Short.toUnsignedInt(segment.get(SHORT, offset));
+                byte[] id = segment.asSlice(offset + Short.BYTES, idLength).toArray(ValueLayout.JAVA_BYTE);
+                consumer.accept(new String(id, UTF_8), offset);
+            }
+        }
+    }
+
+    private boolean idEquals(long offset, byte[] id) {
+        int idLength = Short.toUnsignedInt(segment.get(SHORT, offset));
+        return idLength == id.length && MemorySegment.mismatch(
+                segment, offset + Short.BYTES, offset + Short.BYTES + idLength,
+                MemorySegment.ofArray(id), 0, id.length
+        ) == -1;
+    }
+
+    private LazySubtitleList subtitlesAt(long offset) {
+        int length = segment.get(INT, offset);
+        return SubtitleCodec.view(segment.asSlice(offset + Integer.BYTES, length).asByteBuffer());
+    }
+
+    /**
+     * The 64-bit FNV-1a hash of the video ID. It's stored in the file, so it must never change.
+     */
+    static long hash(byte[] id) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : id) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
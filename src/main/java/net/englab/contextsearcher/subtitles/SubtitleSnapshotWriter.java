@@ -0,0 +1,138 @@
+package net.englab.contextsearcher.subtitles;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes a {@link SubtitleSnapshot} file. The records are streamed into a temporary file next to the target,
+ * which replaces the target only once the snapshot is complete, so readers never see a half-written snapshot.
+ * <p>
+ * A writer can start from an existing snapshot, in which case its records are copied as they are
+ * and only the new videos have to be added.
+ */
+public final class SubtitleSnapshotWriter implements Closeable {
+
+    private final Path target;
+    private final Path temporary;
+    private final DataOutputStream out;
+    private final Map<String, Long> offsets = new HashMap<>();
+    private long position;
+    private boolean finished;
+
+    /**
+     * Starts a new snapshot.
+     *
+     * @param target    the path of the snapshot file
+     * @param base      the snapshot to start from, or null to start from scratch
+     * @throws IOException if the temporary file cannot be written
+     */
+    public SubtitleSnapshotWriter(Path target, SubtitleSnapshot base) throws IOException {
+        this.target = target;
+        this.temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16));
+        try {
+            if (base == null) {
+                out.writeInt(SubtitleSnapshot.MAGIC);
+                out.writeInt(SubtitleSnapshot.VERSION);
+                position = SubtitleSnapshot.HEADER_SIZE;
+            } else {
+                // the header and the records keep their offsets, so only the hash table has to be rebuilt
+                try (FileChannel channel = FileChannel.open(base.path(), StandardOpenOption.READ)) {
+                    channel.transferTo(0, base.recordsEnd(), Channels.newChannel(out));
+                }
+                position = base.recordsEnd();
+                base.forEachRecord(offsets::put);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds the subtitles of a video. If the video is already in the snapshot, the new subtitles replace the old ones.
+     *
+     * @param youtubeVideoId    the YouTube video ID
+     * @param subtitles         the subtitles in the binary format (see {@link SubtitleCodec})
+     * @throws IOException if the temporary file cannot be written
+     */
+    public void add(String youtubeVideoId, byte[] subtitles) throws IOException {
+        byte[] id = youtubeVideoId.getBytes(UTF_8);
+        if (id.length > 0xFFFF) {
+            throw new IllegalArgumentException("The YouTube video ID is too long: " + youtubeVideoId);
+        }
+        offsets.put(youtubeVideoId, position);
+        out.writeShort(id.length);
+        out.write(id);
+        out.writeInt(subtitles.length);
+        out.write(subtitles);
+        position += Short.BYTES + id.length + Integer.BYTES + subtitles.length;
+    }
+
+    /**
+     * Returns the number of videos in the snapshot so far.
+     */
+    public int videoCount() {
+        return offsets.size();
+    }
+
+    /**
+     * Writes the hash table and replaces the target file with the complete snapshot.
+     *
+     * @param lastVideoId the ID of the last video in the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void finish(long lastVideoId) throws IOException {
+        int slotCount = Integer.highestOneBit(Math.max(2, offsets.size() * 2 - 1)) << 1;
+        long[] hashes = new long[slotCount];
+        long[] slotOffsets = new long[slotCount];
+        int mask = slotCount - 1;
+        offsets.forEach((youtubeVideoId, offset) -> {
+            long hash = SubtitleSnapshot.hash(youtubeVideoId.getBytes(UTF_8));
+            int i = (int) hash & mask;
+            while (slotOffsets[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            slotOffsets[i] = offset;
+        });
+
+        for (int i = 0; i < slotCount; i++) {
+            out.writeLong(hashes[i]);
+            out.writeLong(slotOffsets[i]);
+        }
+        out.writeLong(position);
+        out.writeLong(lastVideoId);
+        out.writeInt(slotCount);
+        out.writeInt(offsets.size());
+        out.writeInt(SubtitleSnapshot.VERSION);
+        out.writeInt(SubtitleSnapshot.MAGIC);
+        out.close();
+
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+    }
+
+    /**
+     * Deletes the temporary file unless the snapshot has been finished.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            out.close();
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -0,0 +1 @@
+ALTER TABLE indexed_video ADD COLUMN IF NOT EXISTS subtitles_binary BYTEA;
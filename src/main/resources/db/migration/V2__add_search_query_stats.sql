@@ -0,0 +1,9 @@
+-- how often each normalized phrase is searched for, which is where the phrase suggestions come from
+CREATE TABLE IF NOT EXISTS search_query_stats (
+    phrase          TEXT PRIMARY KEY,
+    search_count    BIGINT NOT NULL,
+    hit_count       BIGINT,
+    updated_at      TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS search_query_stats_search_count_idx ON search_query_stats (search_count DESC);
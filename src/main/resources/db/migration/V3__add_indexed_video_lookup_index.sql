@@ -0,0 +1,8 @@
+-- every search looks up the subtitles of the found videos by the index name and the YouTube video ID.
+-- The index is built concurrently, so the indexer can keep writing to the table meanwhile
+-- (see the .conf file of this migration, which runs it outside of a transaction).
+-- A concurrent build that fails leaves an invalid index behind, which IF NOT EXISTS would take for a built one,
+-- so a retry drops whatever is left of the previous attempt and builds the index again.
+DROP INDEX CONCURRENTLY IF EXISTS indexed_video_index_name_youtube_video_id_idx;
+CREATE INDEX CONCURRENTLY indexed_video_index_name_youtube_video_id_idx
+    ON indexed_video (index_name, youtube_video_id);
@@ -0,0 +1,20 @@
+-- the videos whose JSON subtitles can't be encoded without rounding them are marked,
+-- so the migration doesn't parse them again on every run
+ALTER TABLE indexed_video ADD COLUMN IF NOT EXISTS subtitles_binary_skipped BOOLEAN NOT NULL DEFAULT FALSE;
+
+-- the binary subtitles are a copy of the JSON ones, so they are dropped whenever the JSON ones change,
+-- and the migration converts them again. The cast makes the comparison work for any type of the JSON column.
+CREATE OR REPLACE FUNCTION indexed_video_reset_binary_subtitles() RETURNS TRIGGER AS $$
+BEGIN
+    NEW.subtitles_binary := NULL;
+    NEW.subtitles_binary_skipped := FALSE;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS indexed_video_reset_binary_subtitles ON indexed_video;
+CREATE TRIGGER indexed_video_reset_binary_subtitles
+    BEFORE UPDATE OF subtitles ON indexed_video
+    FOR EACH ROW
+    WHEN (NEW.subtitles::TEXT IS DISTINCT FROM OLD.subtitles::TEXT)
+    EXECUTE FUNCTION indexed_video_reset_binary_subtitles();
@@ -0,0 +1,82 @@
+package net.englab.contextsearcher.repositories;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StoredSubtitlesRepositoryTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final StoredSubtitlesRepository storedSubtitlesRepository = new StoredSubtitlesRepository(jdbcTemplate);
+
+    @Test
+    void theVideoIdsAreBoundAsOneArray() throws SQLException {
+        Set<String> youtubeVideoIds = Set.of("first", "second", "third");
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        Array array = mock(Array.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(connection.createArrayOf(eq("varchar"), any())).thenReturn(array);
+
+        storedSubtitlesRepository.findSubtitles("videos-1", youtubeVideoIds);
+
+        ArgumentCaptor<PreparedStatementCreator> statementCreator = ArgumentCaptor.forClass(PreparedStatementCreator.class);
+        verify(jdbcTemplate).query(statementCreator.capture(), any(RowCallbackHandler.class));
+        assertSame(statement, statementCreator.getValue().createPreparedStatement(connection));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(connection).prepareStatement(sql.capture());
+        assertTrue(sql.getValue().contains("WHERE index_name = ? AND youtube_video_id = ANY (?)"));
+
+        ArgumentCaptor<Object[]> elements = ArgumentCaptor.forClass(Object[].class);
+        verify(connection).createArrayOf(eq("varchar"), elements.capture());
+        assertEquals(youtubeVideoIds, Set.of(elements.getValue()));
+        verify(statement).setString(1, "videos-1");
+        verify(statement).setArray(2, array);
+    }
+
+    @Test
+    void everyRowIsRead() throws SQLException {
+        byte[] binarySubtitles = {1, 2, 3};
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getString(1)).thenReturn("first", "second");
+        when(resultSet.getBytes(2)).thenReturn(binarySubtitles, (byte[]) null);
+        when(resultSet.getString(3)).thenReturn(null, "[]");
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(resultSet);
+            handler.processRow(resultSet);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        List<StoredSubtitles> actual = storedSubtitlesRepository.findSubtitles("videos-1", Set.of("first", "second"));
+
+        assertEquals(2, actual.size());
+        assertEquals("first", actual.get(0).youtubeVideoId());
+        assertSame(binarySubtitles, actual.get(0).binarySubtitles());
+        assertNull(actual.get(0).jsonSubtitles());
+        assertEquals("second", actual.get(1).youtubeVideoId());
+        assertNull(actual.get(1).binarySubtitles());
+        assertEquals("[]", actual.get(1).jsonSubtitles());
+    }
+
+    @Test
+    void nothingIsQueriedForNoVideos() {
+        assertEquals(List.of(), storedSubtitlesRepository.findSubtitles("videos-1", Set.of()));
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
@@ -0,0 +1,83 @@
+package net.englab.contextsearcher.rest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import net.englab.common.search.models.common.EnglishVariety;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.models.search.VideoFragment;
+import net.englab.contextsearcher.models.search.VideoFragmentPage;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VideoFragmentPageConverterTest {
+
+    private static final VideoFragmentPage PAGE = new VideoFragmentPage(42, List.of(
+            new VideoFragment("first", EnglishVariety.values()[0], 1, List.of(
+                    new SubtitleEntry(0.0, 1.5, List.of("Hello")),
+                    new SubtitleEntry(1.5, 3.0, List.of("<b>world</b>", "again"))
+            ), 0, 10),
+            new VideoFragment("second", null, null, List.of())
+    ), "cursor");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final VideoFragmentPageConverter converter = new VideoFragmentPageConverter(objectMapper);
+
+    @Test
+    void jsonIsTheSameAsTheDefaultOne() throws IOException {
+        MockHttpOutputMessage message = write(MediaType.APPLICATION_JSON);
+
+        assertEquals(objectMapper.writeValueAsString(PAGE), message.getBodyAsString());
+        assertEquals(MediaType.APPLICATION_JSON, message.getHeaders().getContentType());
+    }
+
+    @Test
+    void cborHasTheSameStructureAsJson() throws IOException {
+        MockHttpOutputMessage message = write(MediaType.APPLICATION_CBOR);
+
+        JsonNode page = objectMapper.copyWith(new CBORFactory()).readTree(message.getBodyAsBytes());
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(PAGE)), page);
+    }
+
+    @Test
+    void compactFormatWritesSubtitleEntriesAsArrays() throws IOException {
+        JsonNode page = objectMapper.readTree(write(VideoFragmentPageConverter.COMPACT_JSON).getBodyAsString());
+
+        assertEquals(42, page.get("count").asLong());
+        assertEquals("cursor", page.get("cursor").asText());
+        JsonNode first = page.get("videos").get(0);
+        assertEquals("first", first.get("youtubeVideoId").asText());
+        assertEquals(10, first.get("subtitlesTotal").asInt());
+        assertEquals(objectMapper.readTree("[[0.0,1.5,\"Hello\"],[1.5,3.0,\"<b>world</b>\",\"again\"]]"), first.get("subtitles"));
+        JsonNode second = page.get("videos").get(1);
+        assertTrue(second.get("subtitleEntryIndex").isNull());
+        assertFalse(second.has("subtitlesOffset"));
+    }
+
+    @Test
+    void compactCborIsSmallerThanJson() throws IOException {
+        int json = write(MediaType.APPLICATION_JSON).getBodyAsBytes().length;
+        int compactCbor = write(VideoFragmentPageConverter.COMPACT_CBOR).getBodyAsBytes().length;
+
+        assertTrue(compactCbor < json, compactCbor + " >= " + json);
+    }
+
+    @Test
+    void onlyPagesAreWritten() {
+        assertTrue(converter.canWrite(VideoFragmentPage.class, null));
+        assertFalse(converter.canWrite(VideoFragment.class, null));
+        assertFalse(converter.canRead(VideoFragmentPage.class, MediaType.APPLICATION_JSON));
+    }
+
+    private MockHttpOutputMessage write(MediaType mediaType) throws IOException {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        converter.write(PAGE, mediaType, message);
+        return message;
+    }
+}
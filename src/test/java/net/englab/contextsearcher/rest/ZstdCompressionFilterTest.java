@@ -0,0 +1,75 @@
+package net.englab.contextsearcher.rest;
+
+import com.github.luben.zstd.ZstdInputStream;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZstdCompressionFilterTest {
+
+    private static final String BODY = "{\"count\":0,\"videos\":[]}".repeat(100);
+
+    private final ZstdCompressionFilter filter = new ZstdCompressionFilter();
+
+    @Test
+    void zstdIsUsedOnlyWhenPreferred() {
+        assertTrue(ZstdCompressionFilter.prefersZstd("zstd"));
+        assertTrue(ZstdCompressionFilter.prefersZstd("gzip, deflate, br, zstd"));
+        assertTrue(ZstdCompressionFilter.prefersZstd("gzip;q=0.5, zstd;q=0.8, identity"));
+        assertFalse(ZstdCompressionFilter.prefersZstd(null));
+        assertFalse(ZstdCompressionFilter.prefersZstd("gzip, deflate"));
+        assertFalse(ZstdCompressionFilter.prefersZstd("gzip, zstd;q=0.5"));
+        assertFalse(ZstdCompressionFilter.prefersZstd("zstd;q=0"));
+    }
+
+    @Test
+    void bodyIsCompressed() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/search");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, zstd");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                resp.setContentLength(BODY.length());
+                resp.getOutputStream().write(BODY.getBytes(StandardCharsets.UTF_8));
+            }
+        }));
+
+        assertEquals("zstd", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertNull(response.getHeader(HttpHeaders.CONTENT_LENGTH));
+        assertTrue(response.getContentAsByteArray().length < BODY.length());
+        try (InputStream input = new ZstdInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals(BODY, new String(input.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void otherRequestsAreLeftAsTheyAre() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/search");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                resp.getWriter().write(BODY);
+            }
+        }));
+
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(BODY, response.getContentAsString());
+    }
+}
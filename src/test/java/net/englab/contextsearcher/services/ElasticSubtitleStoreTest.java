@@ -0,0 +1,146 @@
+package net.englab.contextsearcher.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.MgetRequest;
+import co.elastic.clients.elasticsearch.core.MgetResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.indices.ElasticsearchIndicesClient;
+import co.elastic.clients.elasticsearch.indices.ExistsRequest;
+import co.elastic.clients.transport.endpoints.BooleanResponse;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.configs.SubtitleStorageProperties;
+import net.englab.contextsearcher.models.entities.IndexedVideo;
+import net.englab.contextsearcher.repositories.IndexedVideoRepository;
+import net.englab.contextsearcher.subtitles.SubtitleCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Limit;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ElasticSubtitleStoreTest {
+
+    private static final Instant START = Instant.parse("2024-06-01T00:00:00Z");
+    private static final List<SubtitleEntry> SUBTITLES = List.of(new SubtitleEntry(0.0, 1.0, List.of("first")));
+
+    private final ElasticsearchClient elasticsearchClient = mock(ElasticsearchClient.class);
+    private final ElasticsearchIndicesClient indicesClient = mock(ElasticsearchIndicesClient.class);
+    private final IndexedVideoRepository indexedVideoRepository = mock(IndexedVideoRepository.class);
+    private final Clock clock = mock(Clock.class);
+    private final ElasticSubtitleStore elasticSubtitleStore = new ElasticSubtitleStore(
+            elasticsearchClient,
+            indexedVideoRepository,
+            mock(VideoIndexResolver.class),
+            new SubtitleStorageProperties(SubtitleStorageProperties.Mode.ELASTICSEARCH, "subtitles-", 2,
+                    Duration.ofMinutes(1), Duration.ofDays(1)),
+            clock
+    );
+
+    @BeforeEach
+    void setUp() {
+        when(clock.instant()).thenReturn(START);
+    }
+
+    @Test
+    void foundSubtitlesAreDecoded() throws IOException {
+        MgetResponse<ElasticSubtitleStore.SubtitleDocument> response = MgetResponse.of(r -> r.docs(List.of(
+                MultiGetResponseItem.of(i -> i.result(g -> g
+                        .index("subtitles-videos-1")
+                        .id("first")
+                        .found(true)
+                        .source(new ElasticSubtitleStore.SubtitleDocument(1, SubtitleCodec.encode(SUBTITLES))))),
+                MultiGetResponseItem.of(i -> i.result(g -> g
+                        .index("subtitles-videos-1")
+                        .id("second")
+                        .found(false)))
+        )));
+        doReturn(response).when(elasticsearchClient).mget(any(MgetRequest.class), eq(ElasticSubtitleStore.SubtitleDocument.class));
+
+        Map<String, List<SubtitleEntry>> actual = elasticSubtitleStore.findSubtitles("videos-1", Set.of("first", "second"));
+
+        assertEquals(Map.of("first", SUBTITLES), actual);
+    }
+
+    @Test
+    void onlyNewVideosAreCopied() throws IOException {
+        subtitleIndexEndsWith(5);
+        when(indexedVideoRepository.findByIndexNameAndIdGreaterThanOrderById("videos-1", 5L, Limit.of(2)))
+                .thenReturn(List.of(video(6, "sixth"), video(7, "seventh")));
+        when(indexedVideoRepository.findByIndexNameAndIdGreaterThanOrderById("videos-1", 7L, Limit.of(2)))
+                .thenReturn(List.of());
+
+        elasticSubtitleStore.update("videos-1");
+        elasticSubtitleStore.update("videos-1");
+
+        ArgumentCaptor<BulkRequest> bulk = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(elasticsearchClient).bulk(bulk.capture());
+        assertEquals(List.of("sixth", "seventh"), copiedVideoIds(bulk.getValue()));
+        // the last video is found only once, after that it's remembered
+        verify(elasticsearchClient, times(1)).search(any(SearchRequest.class), eq(ElasticSubtitleStore.SubtitleDocument.class));
+        verify(indexedVideoRepository, times(2)).findByIndexNameAndIdGreaterThanOrderById("videos-1", 7L, Limit.of(2));
+    }
+
+    @Test
+    void allVideosAreCopiedAgainAfterTheRebuildInterval() throws IOException {
+        subtitleIndexEndsWith(2);
+        when(indexedVideoRepository.findByIndexNameAndIdGreaterThanOrderById("videos-1", 0L, Limit.of(2)))
+                .thenReturn(List.of(video(1, "first"), video(2, "second")));
+        when(indexedVideoRepository.findByIndexNameAndIdGreaterThanOrderById("videos-1", 2L, Limit.of(2)))
+                .thenReturn(List.of());
+
+        elasticSubtitleStore.update("videos-1");
+        verify(elasticsearchClient, never()).bulk(any(BulkRequest.class));
+
+        when(clock.instant()).thenReturn(START.plus(Duration.ofDays(1)).plusSeconds(1));
+        elasticSubtitleStore.update("videos-1");
+
+        ArgumentCaptor<BulkRequest> bulk = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(elasticsearchClient).bulk(bulk.capture());
+        // the videos updated in place are copied again, so the subtitle index doesn't keep serving their old subtitles
+        assertEquals(List.of("first", "second"), copiedVideoIds(bulk.getValue()));
+    }
+
+    private void subtitleIndexEndsWith(long lastVideoId) throws IOException {
+        when(elasticsearchClient.indices()).thenReturn(indicesClient);
+        when(indicesClient.exists(any(ExistsRequest.class))).thenReturn(new BooleanResponse(true));
+        SearchResponse<ElasticSubtitleStore.SubtitleDocument> lastVideo = SearchResponse.of(r -> r
+                .took(1)
+                .timedOut(false)
+                .shards(s -> s.total(1).successful(1).failed(0))
+                .hits(h -> h.hits(List.of(Hit.of(hit -> hit
+                        .index("subtitles-videos-1")
+                        .id("old")
+                        .source(new ElasticSubtitleStore.SubtitleDocument(lastVideoId, null))))))
+        );
+        doReturn(lastVideo).when(elasticsearchClient).search(any(SearchRequest.class), eq(ElasticSubtitleStore.SubtitleDocument.class));
+        when(elasticsearchClient.bulk(any(BulkRequest.class)))
+                .thenReturn(BulkResponse.of(r -> r.took(1).errors(false).items(List.of())));
+    }
+
+    private static List<String> copiedVideoIds(BulkRequest bulk) {
+        return bulk.operations().stream()
+                .map(BulkOperation::index)
+                .map(operation -> operation.id())
+                .toList();
+    }
+
+    private static IndexedVideo video(long id, String youtubeVideoId) {
+        return new IndexedVideo(id, "videos-1", youtubeVideoId, null, null, SubtitleCodec.encode(SUBTITLES), false);
+    }
+}
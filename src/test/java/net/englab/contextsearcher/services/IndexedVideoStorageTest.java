@@ -0,0 +1,128 @@
+package net.englab.contextsearcher.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.models.entities.IndexedVideo;
+import net.englab.contextsearcher.models.entities.SubtitleConverter;
+import net.englab.contextsearcher.repositories.IndexedVideoRepository;
+import net.englab.contextsearcher.repositories.StoredSubtitles;
+import net.englab.contextsearcher.repositories.StoredSubtitlesRepository;
+import net.englab.contextsearcher.subtitles.SubtitleCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class IndexedVideoStorageTest {
+
+    private static final List<SubtitleEntry> FIRST_SUBTITLES = List.of(new SubtitleEntry(0.0, 1.0, List.of("first")));
+    private static final List<SubtitleEntry> SECOND_SUBTITLES = List.of(new SubtitleEntry(0.0, 1.0, List.of("second")));
+    private static final List<SubtitleEntry> THIRD_SUBTITLES = List.of(new SubtitleEntry(0.0, 1.0, List.of("third")));
+
+    private final IndexedVideoRepository indexedVideoRepository = mock(IndexedVideoRepository.class);
+    private final StoredSubtitlesRepository storedSubtitlesRepository = mock(StoredSubtitlesRepository.class);
+    private final SubtitleSnapshotStore subtitleSnapshotStore = mock(SubtitleSnapshotStore.class);
+    private final ElasticSubtitleStore elasticSubtitleStore = mock(ElasticSubtitleStore.class);
+    private final SearchLimiters searchLimiters = spy(SearchLimiters.disabled());
+    private final IndexedVideoStorage indexedVideoStorage = new IndexedVideoStorage(
+            indexedVideoRepository,
+            storedSubtitlesRepository,
+            subtitleSnapshotStore,
+            elasticSubtitleStore,
+            new SearchMetrics(ObservationRegistry.create(), new SimpleMeterRegistry()),
+            searchLimiters
+    );
+
+    @Test
+    void onlySnapshotMissesAreReadFromTheDatabase() {
+        when(subtitleSnapshotStore.findSubtitles("videos-1", Set.of("first", "second", "third")))
+                .thenReturn(Map.of("first", FIRST_SUBTITLES));
+        when(storedSubtitlesRepository.findSubtitles("videos-1", Set.of("second", "third"))).thenReturn(List.of(
+                new StoredSubtitles("second", SubtitleCodec.encode(SECOND_SUBTITLES), null),
+                new StoredSubtitles("third", null, new SubtitleConverter().convertToDatabaseColumn(THIRD_SUBTITLES))
+        ));
+
+        Map<String, List<SubtitleEntry>> actual = indexedVideoStorage.findSubtitles("videos-1", Set.of("first", "second", "third"));
+
+        assertEquals(Map.of("first", FIRST_SUBTITLES, "second", SECOND_SUBTITLES, "third", THIRD_SUBTITLES), actual);
+    }
+
+    @Test
+    void theDatabaseIsSkippedWhenTheSnapshotHasEverything() {
+        when(subtitleSnapshotStore.findSubtitles("videos-1", Set.of("first")))
+                .thenReturn(Map.of("first", FIRST_SUBTITLES));
+
+        assertEquals(Map.of("first", FIRST_SUBTITLES), indexedVideoStorage.findSubtitles("videos-1", Set.of("first")));
+        verifyNoInteractions(storedSubtitlesRepository);
+    }
+
+    @Test
+    void theSubtitleIndexComesBeforeTheDatabase() {
+        when(elasticSubtitleStore.isEnabled()).thenReturn(true);
+        when(subtitleSnapshotStore.findSubtitles("videos-1", Set.of("first", "second"))).thenReturn(Map.of());
+        when(elasticSubtitleStore.findSubtitles("videos-1", Set.of("first", "second")))
+                .thenReturn(Map.of("first", FIRST_SUBTITLES));
+        when(storedSubtitlesRepository.findSubtitles("videos-1", Set.of("second")))
+                .thenReturn(List.of(new StoredSubtitles("second", SubtitleCodec.encode(SECOND_SUBTITLES), null)));
+
+        Map<String, List<SubtitleEntry>> actual = indexedVideoStorage.findSubtitles("videos-1", Set.of("first", "second"));
+
+        assertEquals(Map.of("first", FIRST_SUBTITLES, "second", SECOND_SUBTITLES), actual);
+    }
+
+    @Test
+    void theDatabaseIsReadWhenTheSubtitleIndexFails() {
+        when(elasticSubtitleStore.isEnabled()).thenReturn(true);
+        when(subtitleSnapshotStore.findSubtitles("videos-1", Set.of("first"))).thenReturn(Map.of());
+        when(elasticSubtitleStore.findSubtitles("videos-1", Set.of("first")))
+                .thenThrow(new IllegalStateException("Elasticsearch is unavailable"));
+        when(storedSubtitlesRepository.findSubtitles("videos-1", Set.of("first")))
+                .thenReturn(List.of(new StoredSubtitles("first", SubtitleCodec.encode(FIRST_SUBTITLES), null)));
+
+        assertEquals(Map.of("first", FIRST_SUBTITLES), indexedVideoStorage.findSubtitles("videos-1", Set.of("first")));
+        // the multi get never waits for the Elasticsearch limiter
+        verify(searchLimiters, never()).limit(eq(SearchStage.ELASTIC), anyBoolean(), any());
+    }
+
+    @Test
+    void theDatabaseCostFollowsTheNumberOfMissingVideos() {
+        Set<String> fewVideoIds = videoIds(10);
+        Set<String> manyVideoIds = videoIds(11);
+        when(subtitleSnapshotStore.findSubtitles(eq("videos-1"), any())).thenReturn(Map.of());
+
+        indexedVideoStorage.findSubtitles("videos-1", fewVideoIds);
+        verify(searchLimiters).limit(eq(SearchStage.DATABASE), eq(true), any());
+
+        indexedVideoStorage.findSubtitles("videos-1", manyVideoIds);
+        verify(searchLimiters).limit(eq(SearchStage.DATABASE), eq(false), any());
+    }
+
+    @Test
+    void subtitlesFinerThanAMillisecondAreMarkedAsSkipped() {
+        String exactSubtitles = new SubtitleConverter().convertToDatabaseColumn(FIRST_SUBTITLES);
+        String inexactSubtitles = new SubtitleConverter().convertToDatabaseColumn(
+                List.of(new SubtitleEntry(0.0, 1.0005, List.of("second"))));
+        when(indexedVideoRepository.findByIdGreaterThanAndBinarySubtitlesIsNullAndBinarySubtitlesSkippedFalseOrderById(
+                eq(0L), any())).thenReturn(List.of(
+                new IndexedVideo(1L, "videos-1", "first", null, exactSubtitles, null, false),
+                new IndexedVideo(2L, "videos-1", "second", null, inexactSubtitles, null, false)
+        ));
+
+        assertEquals(2, indexedVideoStorage.convertSubtitles(0, 10));
+
+        verify(indexedVideoRepository).updateBinarySubtitles(eq(1L), any());
+        verify(indexedVideoRepository).markBinarySubtitlesSkipped(2L);
+        verify(indexedVideoRepository, never()).updateBinarySubtitles(eq(2L), any());
+    }
+
+    private static Set<String> videoIds(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "video-" + i).collect(Collectors.toSet());
+    }
+}
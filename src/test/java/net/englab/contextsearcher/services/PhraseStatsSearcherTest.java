@@ -0,0 +1,113 @@
+package net.englab.contextsearcher.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.TotalHitsRelation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import net.englab.common.search.models.common.EnglishVariety;
+import net.englab.contextsearcher.configs.PhraseStatsProperties;
+import net.englab.contextsearcher.models.search.PhraseStats;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PhraseStatsSearcherTest {
+
+    private static final EnglishVariety VARIETY = EnglishVariety.values()[0];
+    private static final PhraseStatsProperties EXACT = new PhraseStatsProperties(true, 10_000, 100, Duration.ofMinutes(1));
+    private static final PhraseStatsProperties APPROXIMATE = new PhraseStatsProperties(false, 1_000, 100, Duration.ofMinutes(1));
+
+    private final ElasticsearchClient elasticsearchClient = mock(ElasticsearchClient.class);
+    private final VideoIndexResolver videoIndexResolver = mock(VideoIndexResolver.class);
+    private final PhraseStatsSearcher phraseStatsSearcher = new PhraseStatsSearcher(
+            elasticsearchClient,
+            videoIndexResolver,
+            new SearchMetrics(ObservationRegistry.create(), new SimpleMeterRegistry()),
+            SearchLimiters.disabled(),
+            EXACT
+    );
+
+    @Test
+    void requestOnlyCounts() {
+        SearchRequest request = PhraseStatsSearcher.buildStatsRequest("take care", null, true, EXACT);
+
+        assertEquals(Integer.valueOf(0), request.size());
+        assertNull(request.highlight());
+        assertTrue(request.trackTotalHits().isEnabled());
+        assertTrue(request.aggregations().get("varieties").isTerms());
+    }
+
+    @Test
+    void approximateCountWithoutFacets() {
+        SearchRequest request = PhraseStatsSearcher.buildStatsRequest("take care", VARIETY, false, APPROXIMATE);
+
+        assertEquals(Integer.valueOf(1_000), request.trackTotalHits().count());
+        assertTrue(request.aggregations().isEmpty());
+    }
+
+    @Test
+    void countsPerVariety() {
+        SearchResponse<Void> response = response(1_000, TotalHitsRelation.Gte, Map.of(VARIETY.name(), 700L, "UNKNOWN", 5L));
+
+        PhraseStats stats = PhraseStatsSearcher.toStats(response, true);
+
+        assertEquals(new PhraseStats(1_000, false, Map.of(VARIETY, 700L)), stats);
+        assertEquals(new PhraseStats(1_000, false, null), PhraseStatsSearcher.toStats(response, false));
+    }
+
+    @Test
+    void statsAreCachedPerIndex() throws IOException {
+        when(videoIndexResolver.resolveIndexName()).thenReturn("videos-1");
+        doReturn(response(42, TotalHitsRelation.Eq, Map.of()))
+                .when(elasticsearchClient).search(any(SearchRequest.class), eq(Void.class));
+
+        assertEquals(42, phraseStatsSearcher.count("Take care", null, true).count());
+        assertEquals(42, phraseStatsSearcher.count("take  care", null, true).count());
+        verify(elasticsearchClient, times(1)).search(any(SearchRequest.class), eq(Void.class));
+
+        phraseStatsSearcher.onVideoIndexSwitched(new VideoIndexSwitchedEvent("videos-1", "videos-2"));
+        when(videoIndexResolver.resolveIndexName()).thenReturn("videos-2");
+        phraseStatsSearcher.count("take care", null, true);
+        verify(elasticsearchClient, times(2)).search(any(SearchRequest.class), eq(Void.class));
+    }
+
+    @Test
+    void theOriginalPhraseIsCounted() throws IOException {
+        when(videoIndexResolver.resolveIndexName()).thenReturn("videos-1");
+        doReturn(response(42, TotalHitsRelation.Eq, Map.of()))
+                .when(elasticsearchClient).search(any(SearchRequest.class), eq(Void.class));
+
+        phraseStatsSearcher.count("Take care!", null, true);
+
+        ArgumentCaptor<SearchRequest> request = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(elasticsearchClient).search(request.capture(), eq(Void.class));
+        // the normalized phrase is only the key of the cache
+        assertEquals(
+                PhraseStatsSearcher.buildStatsRequest("Take care!", null, true, EXACT).query().toString(),
+                request.getValue().query().toString()
+        );
+    }
+
+    private static SearchResponse<Void> response(long total, TotalHitsRelation relation, Map<String, Long> varieties) {
+        List<StringTermsBucket> buckets = varieties.entrySet().stream()
+                .map(e -> StringTermsBucket.of(b -> b.key(e.getKey()).docCount(e.getValue())))
+                .toList();
+        return SearchResponse.of(r -> r
+                .took(1)
+                .timedOut(false)
+                .shards(s -> s.total(1).successful(1).failed(0))
+                .hits(h -> h.total(t -> t.value(total).relation(relation)).hits(List.of()))
+                .aggregations("varieties", a -> a.sterms(t -> t.buckets(b -> b.array(buckets))))
+        );
+    }
+}
@@ -0,0 +1,65 @@
+package net.englab.contextsearcher.services;
+
+import net.englab.contextsearcher.configs.PhraseSuggestionProperties;
+import net.englab.contextsearcher.models.entities.SearchQueryStats;
+import net.englab.contextsearcher.models.search.PhraseSuggestion;
+import net.englab.contextsearcher.repositories.SearchQueryStatsRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PhraseSuggesterTest {
+
+    private final SearchQueryStatsRepository searchQueryStatsRepository = mock(SearchQueryStatsRepository.class);
+    private final PhraseSuggester phraseSuggester = new PhraseSuggester(
+            searchQueryStatsRepository, new PhraseSuggestionProperties(true, Duration.ofMinutes(1), 1_000, 2, 20)
+    );
+
+    @Test
+    void normalizePrefix() {
+        assertEquals("take", PhraseSuggester.normalizePrefix("Take"));
+        assertEquals("take ", PhraseSuggester.normalizePrefix(" Take "));
+        assertEquals("take it ", PhraseSuggester.normalizePrefix("take  it\t"));
+        assertEquals("take,", PhraseSuggester.normalizePrefix("take,"));
+        assertEquals("don't", PhraseSuggester.normalizePrefix("Don't"));
+        assertEquals("", PhraseSuggester.normalizePrefix("  "));
+    }
+
+    @Test
+    void searchesAreSavedInBulk() {
+        phraseSuggester.record("Take care", 120L);
+        phraseSuggester.record(" take  care", null);
+        phraseSuggester.record("hello", null);
+        // too many distinct phrases
+        phraseSuggester.record("by the way", 10L);
+        // too long
+        phraseSuggester.record("as a matter of fact, yes", 10L);
+
+        phraseSuggester.save();
+        phraseSuggester.save();
+
+        verify(searchQueryStatsRepository).addSearches("take care", 2, 120L);
+        verify(searchQueryStatsRepository).addSearches("hello", 1, null);
+        verifyNoMoreInteractions(searchQueryStatsRepository);
+    }
+
+    @Test
+    void suggestionsComeFromTheRebuiltIndex() {
+        when(searchQueryStatsRepository.findByHitCountGreaterThanOrderBySearchCountDesc(0, Limit.of(1_000))).thenReturn(List.of(
+                new SearchQueryStats("take care", 5, 120L, Instant.now()),
+                new SearchQueryStats("take it easy", 7, 40L, Instant.now())
+        ));
+        assertEquals(List.of(), phraseSuggester.suggest("take", 10));
+
+        phraseSuggester.rebuild();
+
+        assertEquals(List.of(new PhraseSuggestion("take it easy", 40), new PhraseSuggestion("take care", 120)),
+                phraseSuggester.suggest("Take ", 10));
+    }
+}
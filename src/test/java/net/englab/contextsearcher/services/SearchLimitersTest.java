@@ -0,0 +1,124 @@
+package net.englab.contextsearcher.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.englab.contextsearcher.configs.SearchLimiterProperties;
+import net.englab.contextsearcher.exceptions.SearchOverloadedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchLimitersTest {
+
+    private static final SearchLimiterProperties.StageLimit STAGE_LIMIT = new SearchLimiterProperties.StageLimit(10, 2, 10);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SearchLimiters searchLimiters = new SearchLimiters(
+            new SearchLimiterProperties(true, STAGE_LIMIT, STAGE_LIMIT, 10, 0.2, Duration.ofSeconds(2)),
+            meterRegistry
+    );
+
+    @Test
+    void partOfTheLimitIsReservedForCheapSearches() {
+        List<SearchLimiters.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            permits.add(searchLimiters.acquire(SearchStage.ELASTIC, false));
+        }
+        assertThrows(SearchOverloadedException.class, () -> searchLimiters.acquire(SearchStage.ELASTIC, false));
+
+        permits.add(searchLimiters.acquire(SearchStage.ELASTIC, true));
+        permits.add(searchLimiters.acquire(SearchStage.ELASTIC, true));
+        assertThrows(SearchOverloadedException.class, () -> searchLimiters.acquire(SearchStage.ELASTIC, true));
+
+        // the database has a limit of its own
+        searchLimiters.acquire(SearchStage.DATABASE, false).release(null);
+
+        assertEquals(10.0, meterRegistry.get("search.limiter.inflight").tag("stage", "elastic").gauge().value());
+        assertEquals(1.0, meterRegistry.get("search.limiter.rejections").tag("priority", "expensive").counter().count());
+        assertEquals(1.0, meterRegistry.get("search.limiter.rejections").tag("priority", "cheap").counter().count());
+
+        permits.getFirst().release(null);
+        permits.getFirst().release(null);
+        assertEquals(9.0, meterRegistry.get("search.limiter.inflight").tag("stage", "elastic").gauge().value());
+    }
+
+    @Test
+    void rejectionsAskToRetryLater() {
+        SearchOverloadedException e = new SearchOverloadedException("Overloaded", Duration.ofSeconds(2));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+        assertEquals("2", e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void limitFollowsTheLatency() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(20, 5, 200);
+
+        // the latency is stable while the limit is reached, so it grows
+        for (int i = 0; i < 50; i++) {
+            int inflight = fill(limiter);
+            limiter.onSuccess(TimeUnit.MILLISECONDS.toNanos(10), inflight);
+            drain(limiter);
+        }
+        int grownLimit = limiter.limit();
+        assertTrue(grownLimit > 20, "limit " + grownLimit);
+
+        // the latency has gone up five times, so the requests are queuing somewhere
+        for (int i = 0; i < 50; i++) {
+            int inflight = fill(limiter);
+            limiter.onSuccess(TimeUnit.MILLISECONDS.toNanos(50), inflight);
+            drain(limiter);
+        }
+        assertTrue(limiter.limit() < grownLimit, "limit " + limiter.limit());
+        assertTrue(limiter.limit() >= 5);
+    }
+
+    @Test
+    void limitDoesNotGrowWhenItIsFarFromReached() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(20, 5, 200);
+
+        for (int i = 0; i < 50; i++) {
+            int inflight = limiter.tryAcquire(0);
+            limiter.onSuccess(TimeUnit.MILLISECONDS.toNanos(10), inflight);
+        }
+
+        assertEquals(20, limiter.limit());
+        assertEquals(0, limiter.inflight());
+    }
+
+    @Test
+    void timeoutsShrinkTheLimit() {
+        searchLimiters.acquire(SearchStage.DATABASE, true).release(new IllegalStateException("unrelated"));
+        assertEquals(10.0, meterRegistry.get("search.limiter.limit").tag("stage", "database").gauge().value());
+
+        searchLimiters.acquire(SearchStage.DATABASE, true).release(new RuntimeException(new TimeoutException()));
+        assertEquals(9.0, meterRegistry.get("search.limiter.limit").tag("stage", "database").gauge().value());
+        assertEquals(0.0, meterRegistry.get("search.limiter.inflight").tag("stage", "database").gauge().value());
+    }
+
+    /**
+     * Takes all the slots but one and returns the number of requests in flight before the last one.
+     */
+    private static int fill(AdaptiveLimiter limiter) {
+        int inflight = 0;
+        while (limiter.tryAcquire(0) >= 0) {
+            inflight++;
+        }
+        limiter.onIgnore();
+        return inflight - 1;
+    }
+
+    private static void drain(AdaptiveLimiter limiter) {
+        while (limiter.inflight() > 0) {
+            limiter.onIgnore();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package net.englab.contextsearcher.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.models.search.VideoFragment;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchMetricsTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObservationRegistry observationRegistry = ObservationRegistry.create();
+    private final SearchMetrics searchMetrics = new SearchMetrics(observationRegistry, meterRegistry);
+
+    SearchMetricsTest() {
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+    }
+
+    @Test
+    void stagesAreTimedAndTraced() {
+        SearchTrace trace = searchMetrics.newTrace();
+
+        String result = trace.bind(() -> {
+            searchMetrics.observe(SearchStage.HIGHLIGHT, () -> "first");
+            searchMetrics.observe(SearchStage.HIGHLIGHT, () -> "second");
+            return searchMetrics.observe(SearchStage.ELASTIC, () -> "hits");
+        });
+
+        assertEquals("hits", result);
+        assertEquals(1, meterRegistry.get("search.stage").tag("stage", "elastic").timer().count());
+        assertEquals(2, meterRegistry.get("search.stage").tag("stage", "highlight").timer().count());
+        assertTrue(trace.toServerTiming().matches("elastic;dur=\\d+\\.\\d, highlight;dur=\\d+\\.\\d;desc=\"x2\""),
+                trace.toServerTiming());
+    }
+
+    @Test
+    void failedStagesAreRecorded() {
+        SearchTrace trace = searchMetrics.newTrace();
+
+        assertThrows(IllegalStateException.class, () -> trace.bind(() -> searchMetrics.observe(SearchStage.DATABASE, () -> {
+            throw new IllegalStateException("The database is down");
+        })));
+
+        assertEquals(1, meterRegistry.get("search.stage")
+                .tag("stage", "database")
+                .tag("error", "IllegalStateException")
+                .timer().count());
+        assertTrue(trace.toServerTiming().startsWith("database;dur="));
+    }
+
+    @Test
+    void pageSizeIsRecorded() {
+        List<SubtitleEntry> subtitles = List.of(new SubtitleEntry(0, 1, List.of("a")), new SubtitleEntry(1, 2, List.of("b")));
+
+        searchMetrics.recordPage(List.of(
+                new VideoFragment("video1", null, 0, subtitles),
+                new VideoFragment("video1", null, 1, subtitles),
+                new VideoFragment("video2", null, 0, subtitles)
+        ));
+
+        assertEquals(3, meterRegistry.get("search.page.hits").summary().totalAmount());
+        assertEquals(2, meterRegistry.get("search.page.videos").summary().totalAmount());
+        assertEquals(6, meterRegistry.get("search.page.subtitle.entries").summary().totalAmount());
+    }
+}
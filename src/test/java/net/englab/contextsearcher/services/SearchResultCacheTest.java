@@ -0,0 +1,136 @@
+package net.englab.contextsearcher.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.englab.contextsearcher.configs.SearchResultCacheProperties;
+import net.englab.contextsearcher.models.search.VideoFragmentPage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SearchResultCacheTest {
+
+    private static final VideoFragmentPage PAGE = new VideoFragmentPage(1, List.of());
+
+    private final AsyncVideoSearcher asyncVideoSearcher = mock(AsyncVideoSearcher.class);
+    private final VideoIndexResolver videoIndexResolver = mock(VideoIndexResolver.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SearchResultCache searchResultCache = new SearchResultCache(
+            asyncVideoSearcher, videoIndexResolver, new SearchResultCacheProperties(true, 1_000, Duration.ofMinutes(1), null),
+            meterRegistry
+    );
+
+    @Test
+    void normalize() {
+        assertEquals("the big bang", SearchResultCache.normalize("  The \tBig   Bang "));
+        assertEquals("don't, stop!", SearchResultCache.normalize("Don't, stop!"));
+        // the tokenizer doesn't split on them, so these are different phrases
+        assertEquals("3.14", SearchResultCache.normalize("3.14"));
+        assertEquals("foo_bar", SearchResultCache.normalize("foo_bar"));
+        assertEquals("", SearchResultCache.normalize(null));
+    }
+
+    @Test
+    void equivalentPhrasesShareThePage() {
+        when(videoIndexResolver.resolveIndexNameAsync()).thenReturn(CompletableFuture.completedFuture("videos-1"));
+        when(asyncVideoSearcher.search("The Big Bang", null, 0, 10, null)).thenReturn(CompletableFuture.completedFuture(PAGE));
+
+        assertSame(PAGE, searchResultCache.search("The Big Bang", null, 0, 10, null));
+        assertSame(PAGE, searchResultCache.search(" the big  bang", null, 0, 10, null));
+
+        // elastic gets the phrase as it was typed, the normalized one is only the key
+        verify(asyncVideoSearcher, times(1)).search("The Big Bang", null, 0, 10, null);
+        verify(asyncVideoSearcher, never()).search("the big bang", null, 0, 10, null);
+    }
+
+    @Test
+    void theIndexIsResolvedWithoutBlocking() {
+        CompletableFuture<String> indexName = new CompletableFuture<>();
+        when(videoIndexResolver.resolveIndexNameAsync()).thenReturn(indexName);
+        when(asyncVideoSearcher.search("phrase", null, 0, 10, null)).thenReturn(CompletableFuture.completedFuture(PAGE));
+
+        CompletableFuture<VideoFragmentPage> page = searchResultCache.searchAsync("phrase", null, 0, 10, null);
+        assertFalse(page.isDone());
+        indexName.complete("videos-1");
+
+        assertSame(PAGE, page.join());
+        verify(videoIndexResolver, never()).resolveIndexName();
+    }
+
+    @Test
+    void concurrentRequestsAreCoalesced() {
+        CompletableFuture<VideoFragmentPage> search = new CompletableFuture<>();
+        when(videoIndexResolver.resolveIndexNameAsync()).thenReturn(CompletableFuture.completedFuture("videos-1"));
+        when(asyncVideoSearcher.search("phrase", null, 0, 10, null)).thenReturn(search);
+
+        CompletableFuture<VideoFragmentPage> first = searchResultCache.searchAsync("phrase", null, 0, 10, null);
+        CompletableFuture<VideoFragmentPage> second = searchResultCache.searchAsync("phrase", null, 0, 10, null);
+        search.complete(PAGE);
+
+        assertSame(PAGE, first.join());
+        assertSame(PAGE, second.join());
+        verify(asyncVideoSearcher, times(1)).search("phrase", null, 0, 10, null);
+    }
+
+    @Test
+    void cancellingOneRequestDoesNotCancelTheSharedSearch() {
+        CompletableFuture<VideoFragmentPage> search = new CompletableFuture<>();
+        when(videoIndexResolver.resolveIndexNameAsync()).thenReturn(CompletableFuture.completedFuture("videos-1"));
+        when(asyncVideoSearcher.search("phrase", null, 0, 10, null)).thenReturn(search);
+
+        CompletableFuture<VideoFragmentPage> first = searchResultCache.searchAsync("phrase", null, 0, 10, null);
+        CompletableFuture<VideoFragmentPage> second = searchResultCache.searchAsync("phrase", null, 0, 10, null);
+        first.cancel(true);
+        search.complete(PAGE);
+
+        assertFalse(search.isCancelled());
+        assertSame(PAGE, second.join());
+    }
+
+    @Test
+    void hitsAndMissesAreExported() {
+        when(videoIndexResolver.resolveIndexNameAsync()).thenReturn(CompletableFuture.completedFuture("videos-1"));
+        when(asyncVideoSearcher.search("phrase", null, 0, 10, null)).thenReturn(CompletableFuture.completedFuture(PAGE));
+
+        searchResultCache.search("phrase", null, 0, 10, null);
+        searchResultCache.search("phrase", null, 0, 10, null);
+
+        assertEquals(1, gets("hit"));
+        assertEquals(1, gets("miss"));
+    }
+
+    @Test
+    void disabledCacheCallsTheSearcherDirectly() {
+        SearchResultCache disabledCache = new SearchResultCache(
+                asyncVideoSearcher, videoIndexResolver, new SearchResultCacheProperties(false, 1_000, Duration.ofMinutes(1), null),
+                new SimpleMeterRegistry()
+        );
+        CompletableFuture<VideoFragmentPage> search = new CompletableFuture<>();
+        when(asyncVideoSearcher.search("phrase", null, 0, 10, null)).thenReturn(search);
+
+        disabledCache.searchAsync("phrase", null, 0, 10, null).cancel(true);
+
+        assertTrue(search.isCancelled());
+        verifyNoInteractions(videoIndexResolver);
+    }
+
+    @Test
+    void indexSwitchInvalidatesPages() {
+        when(videoIndexResolver.resolveIndexNameAsync()).thenReturn(CompletableFuture.completedFuture("videos-1"));
+        when(asyncVideoSearcher.search("phrase", null, 0, 10, null)).thenAnswer(invocation -> CompletableFuture.completedFuture(PAGE));
+
+        searchResultCache.search("phrase", null, 0, 10, null);
+        searchResultCache.onVideoIndexSwitched(new VideoIndexSwitchedEvent("videos-1", "videos-2"));
+        searchResultCache.search("phrase", null, 0, 10, null);
+
+        verify(asyncVideoSearcher, times(2)).search("phrase", null, 0, 10, null);
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "search-results").tag("result", result).functionCounter().count();
+    }
+}
@@ -0,0 +1,87 @@
+package net.englab.contextsearcher.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.englab.contextsearcher.configs.SearchWarmUpProperties;
+import net.englab.contextsearcher.models.search.VideoFragmentPage;
+import net.englab.contextsearcher.rest.VideoFragmentPageConverter;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SearchWarmUpTest {
+
+    private static final VideoFragmentPage PAGE = new VideoFragmentPage(0, List.of());
+
+    private final AsyncVideoSearcher asyncVideoSearcher = mock(AsyncVideoSearcher.class);
+    private final VideoFragmentPageConverter pageConverter = spy(new VideoFragmentPageConverter(new ObjectMapper()));
+
+    @Test
+    void everyPhraseIsSearchedForByEveryWorker() {
+        when(asyncVideoSearcher.search(anyString(), isNull(), eq(0), eq(20), isNull())).thenReturn(CompletableFuture.completedFuture(PAGE));
+
+        warmUp(new SearchWarmUpProperties(true, List.of("hello", "by the way"), 3, 20, 2, Duration.ofMinutes(1)));
+
+        verify(asyncVideoSearcher, times(6)).search("hello", null, 0, 20, null);
+        verify(asyncVideoSearcher, times(6)).search("by the way", null, 0, 20, null);
+    }
+
+    @Test
+    void pagesAreWrittenInEverySupportedMediaType() throws Exception {
+        when(asyncVideoSearcher.search("hello", null, 0, 10, null)).thenReturn(CompletableFuture.completedFuture(PAGE));
+
+        warmUp(new SearchWarmUpProperties(true, List.of("hello"), 1, 10, 1, Duration.ofMinutes(1)));
+
+        for (MediaType mediaType : List.of(MediaType.APPLICATION_JSON, VideoFragmentPageConverter.COMPACT_JSON,
+                MediaType.APPLICATION_CBOR, VideoFragmentPageConverter.COMPACT_CBOR)) {
+            verify(pageConverter).write(eq(PAGE), eq(mediaType), any(HttpOutputMessage.class));
+        }
+    }
+
+    @Test
+    void failuresDoNotStopTheStartup() {
+        when(asyncVideoSearcher.search(anyString(), any(), anyInt(), anyInt(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("Elasticsearch is unavailable")));
+
+        assertDoesNotThrow(() -> warmUp(new SearchWarmUpProperties(true, List.of("hello"), 2, 10, 1, Duration.ofMinutes(1))));
+
+        verify(asyncVideoSearcher, times(2)).search("hello", null, 0, 10, null);
+    }
+
+    @Test
+    void aHangingSearchIsAbandonedAtTheDeadline() {
+        CompletableFuture<VideoFragmentPage> hangingSearch = new CompletableFuture<>();
+        when(asyncVideoSearcher.search("hello", null, 0, 10, null)).thenReturn(hangingSearch);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () ->
+                warmUp(new SearchWarmUpProperties(true, List.of("hello"), 5, 10, 1, Duration.ofMillis(200))));
+
+        assertTrue(hangingSearch.isCancelled());
+        verify(asyncVideoSearcher, times(1)).search("hello", null, 0, 10, null);
+    }
+
+    @Test
+    void searchesAreSkippedAfterTheTimeout() {
+        warmUp(new SearchWarmUpProperties(true, List.of("hello"), 100, 10, 1, Duration.ZERO));
+
+        verifyNoInteractions(asyncVideoSearcher);
+    }
+
+    @Test
+    void nothingIsSearchedForWhenDisabled() {
+        warmUp(new SearchWarmUpProperties(false, List.of("hello"), 5, 10, 4, Duration.ofMinutes(1)));
+
+        verifyNoInteractions(asyncVideoSearcher);
+    }
+
+    private void warmUp(SearchWarmUpProperties properties) {
+        new SearchWarmUp(asyncVideoSearcher, new HttpMessageConverters(false, List.of(pageConverter)), properties).run(null);
+    }
+}
@@ -0,0 +1,125 @@
+package net.englab.contextsearcher.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.configs.SubtitleCacheProperties;
+import net.englab.contextsearcher.subtitles.SubtitleCodec;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SubtitleCacheTest {
+
+    private static final List<SubtitleEntry> FIRST_SUBTITLES = List.of(new SubtitleEntry(0.0, 1.0, List.of("first")));
+    private static final List<SubtitleEntry> SECOND_SUBTITLES = List.of(new SubtitleEntry(0.0, 1.0, List.of("second")));
+
+    private final IndexedVideoStorage indexedVideoStorage = mock(IndexedVideoStorage.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SubtitleCache subtitleCache = new SubtitleCache(indexedVideoStorage, new SubtitleCacheProperties(1_000), meterRegistry);
+
+    @Test
+    void onlyMissesAreLoaded() {
+        when(indexedVideoStorage.findSubtitles("videos-1", Set.of("first")))
+                .thenReturn(Map.of("first", FIRST_SUBTITLES));
+        when(indexedVideoStorage.findSubtitles("videos-1", Set.of("second")))
+                .thenReturn(Map.of("second", SECOND_SUBTITLES));
+
+        subtitleCache.findSubtitles("videos-1", Set.of("first"));
+        Map<String, List<SubtitleEntry>> actual = subtitleCache.findSubtitles("videos-1", Set.of("first", "second"));
+
+        assertEquals(Map.of("first", FIRST_SUBTITLES, "second", SECOND_SUBTITLES), actual);
+        verify(indexedVideoStorage).findSubtitles("videos-1", Set.of("first"));
+        verify(indexedVideoStorage).findSubtitles("videos-1", Set.of("second"));
+        assertEquals(1, gets("hit"));
+        assertEquals(2, gets("miss"));
+    }
+
+    @Test
+    void missingVideosAreNotReturned() {
+        when(indexedVideoStorage.findSubtitles("videos-1", Set.of("unknown"))).thenReturn(Map.of());
+
+        Map<String, List<SubtitleEntry>> actual = subtitleCache.findSubtitles("videos-1", Set.of("unknown"));
+
+        assertTrue(actual.isEmpty());
+    }
+
+    @Test
+    void indexSwitchEvictsPreviousGeneration() {
+        when(indexedVideoStorage.findSubtitles(anyString(), eq(Set.of("first"))))
+                .thenReturn(Map.of("first", FIRST_SUBTITLES));
+
+        subtitleCache.findSubtitles("videos-1", Set.of("first"));
+        subtitleCache.findSubtitles("videos-2", Set.of("first"));
+        subtitleCache.onVideoIndexSwitched(new VideoIndexSwitchedEvent("videos-1", "videos-2"));
+        subtitleCache.findSubtitles("videos-1", Set.of("first"));
+        subtitleCache.findSubtitles("videos-2", Set.of("first"));
+
+        verify(indexedVideoStorage, times(2)).findSubtitles("videos-1", Set.of("first"));
+        verify(indexedVideoStorage).findSubtitles("videos-2", Set.of("first"));
+    }
+
+    @Test
+    void hitsOfBothIndicesDoNotEvictEachOther() {
+        when(indexedVideoStorage.findSubtitles(anyString(), eq(Set.of("first"))))
+                .thenReturn(Map.of("first", FIRST_SUBTITLES));
+
+        for (int i = 0; i < 3; i++) {
+            subtitleCache.findSubtitles("videos-1", Set.of("first"));
+            subtitleCache.findSubtitles("videos-2", Set.of("first"));
+        }
+
+        verify(indexedVideoStorage).findSubtitles("videos-1", Set.of("first"));
+        verify(indexedVideoStorage).findSubtitles("videos-2", Set.of("first"));
+    }
+
+    @Test
+    void parsedAndBinarySubtitlesAreWeighedInBytes() {
+        List<SubtitleEntry> subtitles = List.of(
+                new SubtitleEntry(0.0, 1.5, List.of("your Lorentz factor by now is 650")),
+                new SubtitleEntry(1.5, 3.0, List.of("left over radiation ", "from the Big Bang"))
+        );
+        byte[] binarySubtitles = SubtitleCodec.encode(subtitles);
+
+        assertEquals(binarySubtitles.length, SubtitleCache.weigh(SubtitleCodec.view(binarySubtitles)));
+        // the parsed entries take up more than their text, so they can't be lighter than the encoded ones
+        assertTrue(SubtitleCache.weigh(subtitles) > binarySubtitles.length);
+    }
+
+    @Test
+    void builtOffsetsAreWeighed() {
+        List<SubtitleEntry> subtitles = List.of(
+                new SubtitleEntry(0.0, 1.5, List.of("your Lorentz factor by now is 650")),
+                new SubtitleEntry(1.5, 3.0, List.of("left over radiation ", "from the Big Bang"))
+        );
+        byte[] binarySubtitles = withoutOffsetTable(SubtitleCodec.encode(subtitles), subtitles.size());
+        ByteBuffer offHeapSubtitles = ByteBuffer.allocateDirect(binarySubtitles.length).put(binarySubtitles).flip();
+        // two int arrays with an offset of each entry and their headers
+        int offsetsByteSize = 2 * (16 + subtitles.size() * Integer.BYTES);
+
+        assertEquals(binarySubtitles.length + offsetsByteSize, SubtitleCache.weigh(SubtitleCodec.view(binarySubtitles)));
+        assertEquals(64 + offsetsByteSize, SubtitleCache.weigh(SubtitleCodec.view(offHeapSubtitles)));
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "subtitles").tag("result", result).functionCounter().count();
+    }
+
+    /**
+     * Drops the offset table, which comes right after the version, the flags and three one-byte varints.
+     */
+    private static byte[] withoutOffsetTable(byte[] binarySubtitles, int entryCount) {
+        int tablePosition = 5;
+        int tableSize = entryCount * 2 * Integer.BYTES;
+        byte[] result = new byte[binarySubtitles.length - tableSize];
+        System.arraycopy(binarySubtitles, 0, result, 0, tablePosition);
+        System.arraycopy(binarySubtitles, tablePosition + tableSize, result, tablePosition, result.length - tablePosition);
+        result[1] = 0;
+        return result;
+    }
+}
@@ -0,0 +1,75 @@
+package net.englab.contextsearcher.services;
+
+import net.englab.contextsearcher.models.search.PhraseSuggestion;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SuggestionIndexTest {
+
+    private static final SuggestionIndex INDEX = new SuggestionIndex(List.of(
+            new SuggestionIndex.Phrase("take care", 50, 120),
+            new SuggestionIndex.Phrase("take it easy", 80, 40),
+            new SuggestionIndex.Phrase("takeover", 90, 5),
+            new SuggestionIndex.Phrase("take", 10, 3000),
+            new SuggestionIndex.Phrase("hello", 100, 700),
+            new SuggestionIndex.Phrase("take off", 50, 60)
+    ));
+
+    @Test
+    void mostSearchedPhrasesComeFirst() {
+        assertEquals(List.of(
+                new PhraseSuggestion("takeover", 5),
+                new PhraseSuggestion("take it easy", 40),
+                new PhraseSuggestion("take care", 120),
+                new PhraseSuggestion("take off", 60),
+                new PhraseSuggestion("take", 3000)
+        ), INDEX.suggest("tak", 10));
+    }
+
+    @Test
+    void suggestionsAreLimited() {
+        assertEquals(List.of(new PhraseSuggestion("take it easy", 40), new PhraseSuggestion("take care", 120)),
+                INDEX.suggest("take ", 2));
+        assertEquals(List.of(new PhraseSuggestion("hello", 700)), INDEX.suggest("", 1));
+    }
+
+    @Test
+    void unknownPrefixes() {
+        assertEquals(List.of(), INDEX.suggest("takes", 10));
+        assertEquals(List.of(), INDEX.suggest("zebra", 10));
+        assertEquals(List.of(), INDEX.suggest("a", 10));
+        assertEquals(List.of(), SuggestionIndex.EMPTY.suggest("take", 10));
+    }
+
+    @Test
+    void sameAsSortingAllThePhrases() {
+        Random random = new Random(42);
+        List<SuggestionIndex.Phrase> phrases = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            StringBuilder phrase = new StringBuilder();
+            for (int j = random.nextInt(1, 8); j > 0; j--) {
+                phrase.append((char) ('a' + random.nextInt(3)));
+            }
+            phrase.append(i);
+            phrases.add(new SuggestionIndex.Phrase(phrase.toString(), random.nextInt(50), i));
+        }
+        SuggestionIndex index = new SuggestionIndex(phrases);
+
+        for (String prefix : List.of("", "a", "b", "ab", "cab", "aaa", "c1")) {
+            List<PhraseSuggestion> expected = phrases.stream()
+                    .filter(phrase -> phrase.phrase().startsWith(prefix))
+                    .sorted(Comparator.comparingLong(SuggestionIndex.Phrase::searchCount).reversed()
+                            .thenComparing(SuggestionIndex.Phrase::phrase))
+                    .limit(20)
+                    .map(phrase -> new PhraseSuggestion(phrase.phrase(), phrase.hitCount()))
+                    .toList();
+            assertEquals(expected, index.suggest(prefix, 20), prefix);
+        }
+    }
+}
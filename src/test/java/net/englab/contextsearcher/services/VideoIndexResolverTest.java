@@ -0,0 +1,165 @@
+package net.englab.contextsearcher.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.ElasticsearchIndicesClient;
+import co.elastic.clients.elasticsearch.indices.GetAliasRequest;
+import co.elastic.clients.elasticsearch.indices.GetAliasResponse;
+import co.elastic.clients.elasticsearch.indices.get_alias.IndexAliases;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class VideoIndexResolverTest {
+
+    private static final Instant START = Instant.parse("2024-06-01T00:00:00Z");
+
+    private final ElasticsearchClient elasticsearchClient = mock(ElasticsearchClient.class);
+    private final ElasticsearchIndicesClient indicesClient = mock(ElasticsearchIndicesClient.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final Clock clock = mock(Clock.class);
+    private final VideoIndexResolver videoIndexResolver = new VideoIndexResolver(elasticsearchClient, eventPublisher, clock);
+
+    @BeforeEach
+    void setUp() {
+        when(elasticsearchClient.indices()).thenReturn(indicesClient);
+        when(clock.instant()).thenReturn(START);
+    }
+
+    @Test
+    void theIndexWithTheHighestNumberIsTaken() throws IOException {
+        aliasPointsTo("videos-9", "videos-10");
+
+        assertEquals("videos-10", videoIndexResolver.resolveIndexName());
+    }
+
+    @Test
+    void indexOrder() {
+        List<String> names = List.of("videos-100", "videos", "videos-9", "videos-10", "videos-99999999999999999999");
+
+        assertEquals(
+                List.of("videos", "videos-9", "videos-10", "videos-100", "videos-99999999999999999999"),
+                names.stream().sorted(VideoIndexResolver.INDEX_ORDER).toList()
+        );
+    }
+
+    @Test
+    void theNameIsKeptForTheRefreshInterval() throws IOException {
+        aliasPointsTo("videos-1");
+
+        videoIndexResolver.resolveIndexName();
+        when(clock.instant()).thenReturn(START.plusSeconds(9));
+        videoIndexResolver.resolveIndexName();
+        verify(indicesClient, times(1)).getAlias(any(GetAliasRequest.class));
+
+        when(clock.instant()).thenReturn(START.plusSeconds(11));
+        videoIndexResolver.resolveIndexName();
+        verify(indicesClient, times(2)).getAlias(any(GetAliasRequest.class));
+    }
+
+    @Test
+    void theSwitchIsPublished() throws IOException {
+        aliasPointsTo("videos-1");
+        videoIndexResolver.resolveIndexName();
+        // the first resolution is not a switch
+        verifyNoInteractions(eventPublisher);
+
+        aliasPointsTo("videos-2");
+        when(clock.instant()).thenReturn(START.plusSeconds(11));
+
+        assertEquals("videos-2", videoIndexResolver.resolveIndexName());
+        verify(eventPublisher).publishEvent(new VideoIndexSwitchedEvent("videos-1", "videos-2"));
+    }
+
+    @Test
+    void theSameIndexIsNotPublished() throws IOException {
+        aliasPointsTo("videos-1");
+
+        videoIndexResolver.resolveIndexName();
+        when(clock.instant()).thenReturn(START.plusSeconds(11));
+        videoIndexResolver.resolveIndexName();
+
+        verifyNoInteractions(eventPublisher);
+    }
+
+    @Test
+    void theResolvedNameIsReturnedWithoutAskingElastic() throws IOException {
+        aliasPointsTo("videos-1");
+
+        assertEquals("videos-1", videoIndexResolver.resolveIndexNameAsync().join());
+        // even once it's due to be refreshed, the refresh is left to the scheduled task
+        when(clock.instant()).thenReturn(START.plusSeconds(11));
+        CompletableFuture<String> indexName = videoIndexResolver.resolveIndexNameAsync();
+
+        assertTrue(indexName.isDone());
+        assertEquals("videos-1", indexName.join());
+        verify(indicesClient, times(1)).getAlias(any(GetAliasRequest.class));
+    }
+
+    @Test
+    void concurrentCallersAskElasticOnce() throws Exception {
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GetAliasResponse response = GetAliasResponse.of(r -> r.result("videos-1", IndexAliases.of(a -> a.aliases(Map.of()))));
+        when(indicesClient.getAlias(any(GetAliasRequest.class))).thenAnswer(invocation -> {
+            fetching.countDown();
+            release.await();
+            return response;
+        });
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(videoIndexResolver::resolveIndexName);
+        fetching.await();
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(videoIndexResolver::resolveIndexName);
+        release.countDown();
+
+        assertEquals("videos-1", first.get(10, TimeUnit.SECONDS));
+        assertEquals("videos-1", second.get(10, TimeUnit.SECONDS));
+        verify(indicesClient, times(1)).getAlias(any(GetAliasRequest.class));
+    }
+
+    @Test
+    void theLastNameIsReturnedWhileAnotherCallerRefreshesIt() throws Exception {
+        aliasPointsTo("videos-1");
+        videoIndexResolver.resolveIndexName();
+
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GetAliasResponse response = GetAliasResponse.of(r -> r.result("videos-2", IndexAliases.of(a -> a.aliases(Map.of()))));
+        when(indicesClient.getAlias(any(GetAliasRequest.class))).thenAnswer(invocation -> {
+            fetching.countDown();
+            release.await();
+            return response;
+        });
+        when(clock.instant()).thenReturn(START.plusSeconds(11));
+
+        CompletableFuture<String> refresh = CompletableFuture.supplyAsync(videoIndexResolver::resolveIndexName);
+        fetching.await();
+        assertEquals("videos-1", videoIndexResolver.resolveIndexName());
+        release.countDown();
+
+        assertEquals("videos-2", refresh.get(10, TimeUnit.SECONDS));
+        verify(indicesClient, times(2)).getAlias(any(GetAliasRequest.class));
+        verify(eventPublisher, times(1)).publishEvent(new VideoIndexSwitchedEvent("videos-1", "videos-2"));
+    }
+
+    private void aliasPointsTo(String... indexNames) throws IOException {
+        GetAliasResponse response = GetAliasResponse.of(r -> {
+            for (String indexName : indexNames) {
+                r.result(indexName, IndexAliases.of(a -> a.aliases(Map.of())));
+            }
+            return r;
+        });
+        when(indicesClient.getAlias(any(GetAliasRequest.class))).thenReturn(response);
+    }
+}
@@ -0,0 +1,308 @@
+package net.englab.contextsearcher.services;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch.core.ClosePointInTimeRequest;
+import co.elastic.clients.elasticsearch.core.OpenPointInTimeRequest;
+import co.elastic.clients.elasticsearch.core.OpenPointInTimeResponse;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.TotalHitsRelation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Range;
+import com.google.common.collect.TreeRangeMap;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import net.englab.common.search.json.SearchCommonModule;
+import net.englab.common.search.models.common.EnglishVariety;
+import net.englab.common.search.models.elastic.VideoFragmentDocument;
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.configs.PointInTimeProperties;
+import net.englab.contextsearcher.configs.SearchExecutors;
+import net.englab.contextsearcher.configs.SearchPipelineProperties;
+import net.englab.contextsearcher.exceptions.MalformedCursorException;
+import net.englab.contextsearcher.exceptions.SearchOverloadedException;
+import net.englab.contextsearcher.models.search.SearchCursor;
+import net.englab.contextsearcher.models.search.VideoFragment;
+import net.englab.contextsearcher.models.search.VideoFragmentPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static net.englab.common.search.models.elastic.VideoIndexProperties.ENGLISH_VARIETY;
+import static net.englab.common.search.models.elastic.VideoIndexProperties.SENTENCE;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class VideoSearcherTest {
+
+    /**
+     * A cursor of an open point in time, so the pages don't depend on opening one.
+     */
+    private static final String CONTINUATION = new SearchCursor("pit-1", List.of(FieldValue.of(1.5))).encode();
+
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .addModule(new SearchCommonModule())
+            .build();
+
+    private final ElasticsearchClient elasticsearchClient = mock(ElasticsearchClient.class);
+    private final SubtitleCache subtitleCache = mock(SubtitleCache.class);
+    private final SearchPipelineProperties properties = new SearchPipelineProperties(
+            Duration.ofSeconds(3), Duration.ofSeconds(3), Duration.ofSeconds(2), 4, 8
+    );
+    private final SearchExecutors searchExecutors = new SearchExecutors(properties);
+    private final VideoSearcher videoSearcher = new VideoSearcher(
+            elasticsearchClient,
+            subtitleCache,
+            new SearchMetrics(ObservationRegistry.create(), new SimpleMeterRegistry()),
+            SearchLimiters.disabled(),
+            new PointInTimeRegistry(elasticsearchClient, new PointInTimeProperties(Duration.ofSeconds(30), 2)),
+            searchExecutors,
+            properties
+    );
+
+    private final Map<String, List<SubtitleEntry>> subtitleMap = new HashMap<>();
+
+    @AfterEach
+    void shutdown() {
+        searchExecutors.shutdown();
+    }
+
+    @Test
+    void smallAndLargePagesKeepTheOrderOfTheHits() throws IOException {
+        for (int size : new int[]{3, 20}) {
+            List<Hit<VideoFragmentDocument>> hits = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                hits.add(hit("video" + i, true));
+            }
+            respondWith(hits, "pit-1");
+
+            VideoFragmentPage page = videoSearcher.search("world", null, CONTINUATION, size, null);
+
+            assertEquals(size, page.videos().size());
+            for (int i = 0; i < size; i++) {
+                VideoFragment fragment = page.videos().get(i);
+                assertEquals("video" + i, fragment.youtubeVideoId());
+                assertEquals(Integer.valueOf(1), fragment.subtitleEntryIndex());
+            }
+        }
+    }
+
+    @Test
+    void theFirstFailingHitDecidesTheError() throws IOException {
+        List<Hit<VideoFragmentDocument>> hits = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            hits.add(hit("video" + i, i != 5));
+        }
+        // a later hit fails with another exception
+        hits.set(12, Hit.of(h -> h.index("videos").id("12")));
+        respondWith(hits, "pit-1");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> videoSearcher.search("world", null, CONTINUATION, 20, null));
+        assertEquals("Failed to find the first and last subtitle entries. Sentence range map is not correct.", e.getMessage());
+    }
+
+    @Test
+    void theFirstCursorPageOpensAPointInTime() throws IOException {
+        pointInTimeOpens("pit-1");
+        respondWith(List.of(hit("first", true), hit("second", true)), "pit-2");
+
+        VideoFragmentPage page = videoSearcher.search("world", null, SearchCursor.START_TOKEN, 2, null);
+
+        SearchRequest request = searchRequest();
+        assertEquals("pit-1", request.pit().id());
+        assertTrue(request.searchAfter().isEmpty());
+        assertEquals(2, page.videos().size());
+        // elastic may return another ID with the page, and the next page has to use it
+        SearchCursor next = SearchCursor.decode(page.cursor());
+        assertEquals("pit-2", next.pitId());
+        assertEquals(values(sortValues("second")), values(next.searchAfter()));
+        verify(elasticsearchClient, never()).closePointInTime(any(ClosePointInTimeRequest.class));
+    }
+
+    @Test
+    void theNextPageContinuesAfterTheCursor() throws IOException {
+        respondWith(List.of(hit("third", true), hit("fourth", true)), "pit-2");
+        String cursor = new SearchCursor("pit-2", sortValues("second")).encode();
+
+        VideoFragmentPage page = videoSearcher.search("world", null, cursor, 2, null);
+
+        SearchRequest request = searchRequest();
+        assertEquals("pit-2", request.pit().id());
+        assertEquals(values(sortValues("second")), values(request.searchAfter()));
+        assertEquals(values(sortValues("fourth")), values(SearchCursor.decode(page.cursor()).searchAfter()));
+        verify(elasticsearchClient, never()).openPointInTime(any(OpenPointInTimeRequest.class));
+    }
+
+    @Test
+    void theLastPageClosesThePointInTime() throws IOException {
+        respondWith(List.of(hit("fifth", true)), "pit-3");
+        String cursor = new SearchCursor("pit-2", sortValues("fourth")).encode();
+
+        VideoFragmentPage page = videoSearcher.search("world", null, cursor, 2, null);
+
+        assertEquals(1, page.videos().size());
+        assertNull(page.cursor());
+        verify(elasticsearchClient).closePointInTime(argThat((ClosePointInTimeRequest request) -> request.id().equals("pit-3")));
+    }
+
+    @Test
+    void anEmptyPageClosesThePointInTime() throws IOException {
+        pointInTimeOpens("pit-1");
+        respondWith(List.of(), "pit-1");
+
+        VideoFragmentPage page = videoSearcher.search("world", null, SearchCursor.START_TOKEN, 0, null);
+
+        assertTrue(page.videos().isEmpty());
+        assertNull(page.cursor());
+        verify(elasticsearchClient).closePointInTime(any(ClosePointInTimeRequest.class));
+    }
+
+    @Test
+    void aMalformedCursorIsABadRequest() {
+        MalformedCursorException e = assertThrows(MalformedCursorException.class,
+                () -> videoSearcher.search("world", null, "not a cursor", 2, null));
+
+        ResponseStatus status = AnnotatedElementUtils.findMergedAnnotation(e.getClass(), ResponseStatus.class);
+        assertNotNull(status);
+        assertEquals(HttpStatus.BAD_REQUEST, status.code());
+        verifyNoInteractions(elasticsearchClient);
+    }
+
+    @Test
+    void theNumberOfOpenPointsInTimeIsBounded() throws IOException {
+        pointInTimeOpens("pit-1", "pit-2");
+        respondWith(List.of(hit("first", true)), "pit-1");
+        videoSearcher.search("world", null, SearchCursor.START_TOKEN, 1, null);
+        respondWith(List.of(hit("first", true)), "pit-2");
+        videoSearcher.search("world", null, SearchCursor.START_TOKEN, 1, null);
+
+        assertThrows(SearchOverloadedException.class,
+                () -> videoSearcher.search("world", null, SearchCursor.START_TOKEN, 1, null));
+        verify(elasticsearchClient, times(2)).openPointInTime(any(OpenPointInTimeRequest.class));
+
+        // the last page of a cursor makes room for a new one
+        respondWith(List.of(), "pit-1");
+        videoSearcher.search("world", null, new SearchCursor("pit-1", sortValues("first")).encode(), 1, null);
+        pointInTimeOpens("pit-3");
+        respondWith(List.of(hit("first", true)), "pit-3");
+        assertNotNull(videoSearcher.search("world", null, SearchCursor.START_TOKEN, 1, null).cursor());
+    }
+
+    @Test
+    void theSourceFilterKeepsEverythingTheFragmentNeeds() throws IOException {
+        Hit<VideoFragmentDocument> fullHit = hit("video", true);
+        ObjectNode source = source("video", true).put(ENGLISH_VARIETY, EnglishVariety.values()[0].name());
+        List<String> includes = VideoSearcher.buildSearchRequest("world", null, 0, 10).source().filter().includes();
+
+        ObjectNode filteredSource = source.deepCopy().retain(includes);
+        Hit<VideoFragmentDocument> filteredHit = withSource(fullHit, filteredSource);
+
+        assertTrue(filteredSource.size() < source.size(), "The sentence is expected to be left out");
+        assertEquals(
+                VideoSearcher.buildVideoFragment(withSource(fullHit, source), subtitleMap, 1),
+                VideoSearcher.buildVideoFragment(filteredHit, subtitleMap, 1)
+        );
+    }
+
+    private Hit<VideoFragmentDocument> withSource(Hit<VideoFragmentDocument> hit, ObjectNode source) throws IOException {
+        VideoFragmentDocument document = objectMapper.treeToValue(source, VideoFragmentDocument.class);
+        return Hit.of(h -> h
+                .index(hit.index())
+                .id(hit.id())
+                .source(document)
+                .highlight(hit.highlight())
+        );
+    }
+
+    /**
+     * Builds a hit on the second of three subtitle entries of its own video.
+     */
+    private Hit<VideoFragmentDocument> hit(String youtubeVideoId, boolean validRangeMap) throws IOException {
+        subtitleMap.put(youtubeVideoId, List.of(
+                new SubtitleEntry(0, 1, List.of("hello")),
+                new SubtitleEntry(1, 2, List.of("brave new world")),
+                new SubtitleEntry(2, 3, List.of("goodbye"))
+        ));
+        VideoFragmentDocument document = objectMapper.treeToValue(source(youtubeVideoId, validRangeMap), VideoFragmentDocument.class);
+
+        return Hit.of(h -> h
+                .index("videos")
+                .id(youtubeVideoId)
+                .source(document)
+                .highlight(SENTENCE, List.of("new " + VideoSearcher.MATCH_START + "world" + VideoSearcher.MATCH_END))
+                .sort(sortValues(youtubeVideoId))
+        );
+    }
+
+    private ObjectNode source(String youtubeVideoId, boolean validRangeMap) {
+        TreeRangeMap<Integer, Integer> sentenceRangeMap = TreeRangeMap.create();
+        sentenceRangeMap.put(Range.closedOpen(validRangeMap ? 0 : 100, 200), 1);
+
+        ObjectNode source = objectMapper.createObjectNode()
+                .put("youtubeVideoId", youtubeVideoId)
+                .put("sentence", "new world")
+                .put("sentencePosition", 6);
+        source.set("sentenceRangeMap", objectMapper.valueToTree(sentenceRangeMap));
+        return source;
+    }
+
+    /**
+     * The score and the tiebreaker elastic sorts the hits of a point in time by.
+     */
+    private static List<FieldValue> sortValues(String youtubeVideoId) {
+        return List.of(FieldValue.of(1.5), FieldValue.of(youtubeVideoId));
+    }
+
+    private static List<Object> values(List<FieldValue> fieldValues) {
+        return fieldValues.stream().map(FieldValue::_get).toList();
+    }
+
+    private void pointInTimeOpens(String... pitIds) throws IOException {
+        var stubbing = when(elasticsearchClient.openPointInTime(any(OpenPointInTimeRequest.class)));
+        for (String pitId : pitIds) {
+            OpenPointInTimeResponse response = mock(OpenPointInTimeResponse.class);
+            when(response.id()).thenReturn(pitId);
+            stubbing = stubbing.thenReturn(response);
+        }
+    }
+
+    private SearchRequest searchRequest() throws IOException {
+        ArgumentCaptor<SearchRequest> request = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(elasticsearchClient).search(request.capture(), eq(VideoFragmentDocument.class));
+        return request.getValue();
+    }
+
+    private void respondWith(List<Hit<VideoFragmentDocument>> hits, String pitId) throws IOException {
+        SearchResponse<VideoFragmentDocument> response = SearchResponse.of(r -> r
+                .pitId(pitId)
+                .took(1)
+                .timedOut(false)
+                .shards(s -> s.total(1).successful(1).failed(0))
+                .hits(h -> h.total(t -> t.value(hits.size()).relation(TotalHitsRelation.Eq)).hits(hits))
+        );
+        doReturn(response).when(elasticsearchClient).search(any(SearchRequest.class), eq(VideoFragmentDocument.class));
+        when(subtitleCache.findSubtitles(eq("videos"), anySet())).thenAnswer(invocation -> {
+            Set<String> youtubeVideoIds = invocation.getArgument(1);
+            Map<String, List<SubtitleEntry>> found = new HashMap<>();
+            youtubeVideoIds.forEach(id -> found.put(id, subtitleMap.get(id)));
+            return found;
+        });
+    }
+}
@@ -0,0 +1,99 @@
+package net.englab.contextsearcher.subtitles;
+
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.exceptions.SubtitleFormatException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubtitleCodecTest {
+
+    private static final List<SubtitleEntry> ENTRIES = List.of(
+            new SubtitleEntry(0.0, 1.52, List.of("your Lorentz factor by now is 650. And the")),
+            new SubtitleEntry(1.52, 4.001, List.of("")),
+            new SubtitleEntry(4.001, 3600.999, List.of("left over radiation ", "from", " the Big Bang")),
+            new SubtitleEntry(3600.999, 3602.5, List.of("naïve café — 日本語 😀"))
+    );
+
+    @Test
+    void roundTrip() {
+        byte[] bytes = SubtitleCodec.encode(ENTRIES);
+
+        assertEquals(ENTRIES, SubtitleCodec.decode(bytes));
+    }
+
+    @Test
+    void lazyView() {
+        List<SubtitleEntry> view = SubtitleCodec.view(SubtitleCodec.encode(ENTRIES));
+
+        assertEquals(ENTRIES.size(), view.size());
+        assertEquals(ENTRIES.get(2), view.get(2));
+        assertEquals(ENTRIES.subList(1, 3), view.subList(1, 3));
+        assertEquals(ENTRIES, view);
+        assertThrows(IndexOutOfBoundsException.class, () -> view.get(ENTRIES.size()));
+    }
+
+    @Test
+    void emptySubtitles() {
+        byte[] bytes = SubtitleCodec.encode(List.of());
+
+        assertEquals(List.of(), SubtitleCodec.decode(bytes));
+    }
+
+    @Test
+    void unknownVersion() {
+        byte[] bytes = SubtitleCodec.encode(ENTRIES);
+        bytes[0] = 42;
+
+        assertThrows(SubtitleFormatException.class, () -> SubtitleCodec.decode(bytes));
+    }
+
+    @Test
+    void truncatedSubtitles() {
+        byte[] bytes = SubtitleCodec.encode(ENTRIES);
+
+        assertThrows(SubtitleFormatException.class, () -> SubtitleCodec.decode(Arrays.copyOf(bytes, bytes.length - 5)));
+    }
+
+    @Test
+    void negativeEntryCount() {
+        byte[] corrupted = withEntryCount(SubtitleCodec.encode(ENTRIES), -1);
+
+        assertThrows(SubtitleFormatException.class, () -> SubtitleCodec.decode(corrupted));
+        assertThrows(SubtitleFormatException.class, () -> SubtitleCodec.view(corrupted));
+    }
+
+    @Test
+    void overflowingEntryCount() {
+        byte[] corrupted = withEntryCount(SubtitleCodec.encode(ENTRIES), Integer.MAX_VALUE + 1L);
+
+        assertThrows(SubtitleFormatException.class, () -> SubtitleCodec.decode(corrupted));
+        assertThrows(SubtitleFormatException.class, () -> SubtitleCodec.view(corrupted));
+    }
+
+    @Test
+    void onlyWholeMillisecondsAreExact() {
+        assertTrue(SubtitleCodec.isExact(ENTRIES));
+        assertFalse(SubtitleCodec.isExact(List.of(new SubtitleEntry(0.0, 1.0005, List.of("finer than a millisecond")))));
+    }
+
+    /**
+     * Replaces the entry count, which is the one-byte varint right after the version and the flags.
+     */
+    private static byte[] withEntryCount(byte[] bytes, long entryCount) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(bytes, 0, 2);
+        long value = entryCount;
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+        out.write(bytes, 3, bytes.length - 3);
+        return out.toByteArray();
+    }
+}
@@ -3,12 +3,21 @@ package net.englab.contextsearcher.subtitles;
 import net.englab.common.search.models.subtitles.SubtitleEntry;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class SubtitleHighlighterTest {
 
+    private static final String PRE_TAG = "<em>";
+    private static final String POST_TAG = "</em>";
+
+    private static final String[] WORDS = {
+            "the", "Big", "Bang,", "radiation", "a", "I", "say", "chaps", "'raspberry'", "light.", "did", "x", "Bang"
+    };
+
     @Test
     void test() {
         String[] parts = {
@@ -68,4 +77,223 @@ class SubtitleHighlighterTest {
 
         assertEquals(expectedEntries, actualEntries);
     }
+
+    @Test
+    void parsedHighlightTest() {
+        String highlight = "And <em>the</em> left over radiation from <em>the</em> Big Bang, <em>the</em> Cosmic Microwave "
+                + "Background, has now blue shifted all <em>the</em> way from <em>the</em> microwave to visible red light.";
+        List<SubtitleEntry> entries = List.of(
+                new SubtitleEntry(0.0, 0.0, List.of("your Lorentz factor by now is 650. And the")),
+                new SubtitleEntry(0.0, 0.0, List.of("left over radiation from the Big Bang, the Cosmic Microwave Background, has now")),
+                new SubtitleEntry(0.0, 0.0, List.of("blue shifted all the way from the microwave to visible red light. Over the"))
+        );
+
+        int[] partEnds = SubtitleHighlighter.parseHighlight(highlight, PRE_TAG, POST_TAG);
+        List<SubtitleEntry> actualEntries = SubtitleHighlighter.highlight(partEnds, 35, entries);
+
+        List<SubtitleEntry> expectedEntries = List.of(
+                new SubtitleEntry(0.0, 0.0, List.of("your Lorentz factor by now is 650. And ", "the")),
+                new SubtitleEntry(0.0, 0.0, List.of("left over radiation from ", "the", " Big Bang, ", "the", " Cosmic Microwave Background, has now")),
+                new SubtitleEntry(0.0, 0.0, List.of("blue shifted all ", "the", " way from ", "the", " microwave to visible red light. Over the"))
+        );
+
+        assertEquals(expectedEntries, actualEntries);
+    }
+
+    @Test
+    void parsedHighlightEmptyBlockTest() {
+        String highlight = "'I say chaps last one to arrive in Manchester has to telephone the Queen and a blow raspberry' But "
+                + "<em>little</em> <em>did</em> Claude Grahame White know that his expensive hobby things were soon to become "
+                + "a major military importance.";
+        List<SubtitleEntry> entries = List.of(
+                new SubtitleEntry(0.0, 0.0, List.of("'I say chaps last one to arrive in Manchester has to telephone the Queen and a blow raspberry'")),
+                new SubtitleEntry(0.0, 0.0, List.of("")),
+                new SubtitleEntry(0.0, 0.0, List.of("But little did Claude Grahame White know that his expensive hobby things")),
+                new SubtitleEntry(0.0, 0.0, List.of("were soon to become a major military importance."))
+        );
+
+        int[] partEnds = SubtitleHighlighter.parseHighlight(highlight, PRE_TAG, POST_TAG);
+        List<SubtitleEntry> actualEntries = SubtitleHighlighter.highlight(partEnds, 0, entries);
+
+        List<SubtitleEntry> expectedEntries = List.of(
+                new SubtitleEntry(0.0, 0.0, List.of("'I say chaps last one to arrive in Manchester has to telephone the Queen and a blow raspberry'")),
+                new SubtitleEntry(0.0, 0.0, List.of("")),
+                new SubtitleEntry(0.0, 0.0, List.of("But ", "little", " ", "did", " Claude Grahame White know that his expensive hobby things")),
+                new SubtitleEntry(0.0, 0.0, List.of("were soon to become a major military importance."))
+        );
+
+        assertEquals(expectedEntries, actualEntries);
+    }
+
+    @Test
+    void parseHighlightTest() {
+        String[] highlights = {
+                "", "no tags", "<em>a</em>", "a <em>b</em>", "<em>a</em> b", "<em>a</em><em>b</em> c",
+                "a <em>b</em> <em>c</em> d", "<em></em>", "a<em></em>", "<em>a</em></em>"
+        };
+
+        for (String highlight : highlights) {
+            assertArrayEquals(
+                    partEnds(highlight.split("<em>|</em>")),
+                    SubtitleHighlighter.parseHighlight(highlight, PRE_TAG, POST_TAG),
+                    highlight
+            );
+        }
+    }
+
+    /**
+     * Compares the highlighting with a straightforward string-based one on randomly generated subtitles.
+     */
+    @Test
+    void differentialTest() {
+        Random random = new Random(42);
+
+        for (int iteration = 0; iteration < 10_000; iteration++) {
+            List<SubtitleEntry> entries = randomEntries(random);
+
+            // the sentence starts and ends at word boundaries of non-empty entries
+            List<Integer> nonEmpty = new ArrayList<>();
+            for (int i = 0; i < entries.size(); i++) {
+                if (!entries.get(i).text().get(0).isEmpty()) {
+                    nonEmpty.add(i);
+                }
+            }
+            if (nonEmpty.isEmpty()) {
+                continue;
+            }
+            int first = nonEmpty.get(random.nextInt(nonEmpty.size()));
+            int last = nonEmpty.get(nonEmpty.indexOf(first) + random.nextInt(nonEmpty.size() - nonEmpty.indexOf(first)));
+            List<SubtitleEntry> entriesToHighlight = entries.subList(first, last + 1);
+
+            List<String> words = new ArrayList<>();
+            for (SubtitleEntry entry : entriesToHighlight) {
+                String text = entry.text().get(0);
+                if (!text.isEmpty()) {
+                    words.addAll(List.of(text.split(" ", -1)));
+                }
+            }
+            String firstText = entriesToHighlight.getFirst().text().get(0);
+            int firstWordCount = firstText.split(" ", -1).length;
+            int startWord = random.nextInt(firstWordCount);
+            int lastWordCount = entriesToHighlight.getLast().text().get(0).split(" ", -1).length;
+            int endWord = words.size() - random.nextInt(lastWordCount);
+            if (endWord <= startWord) {
+                continue;
+            }
+
+            int sentencePosition = 0;
+            for (int i = 0; i < startWord; i++) {
+                sentencePosition += words.get(i).length() + 1;
+            }
+
+            StringBuilder highlight = new StringBuilder();
+            boolean highlighted = false;
+            for (int i = startWord; i < endWord; i++) {
+                if (i > startWord) {
+                    highlight.append(' ');
+                }
+                String word = words.get(i);
+                if (!word.isEmpty() && (random.nextInt(4) == 0 || (!highlighted && i == endWord - 1))) {
+                    highlight.append("<em>").append(word).append("</em>");
+                    highlighted = true;
+                } else {
+                    highlight.append(word);
+                }
+            }
+            if (!highlighted) {
+                continue;
+            }
+
+            String[] parts = highlight.toString().split("<em>|</em>");
+            int[] partEnds = SubtitleHighlighter.parseHighlight(highlight.toString(), PRE_TAG, POST_TAG);
+
+            assertArrayEquals(partEnds(parts), partEnds, highlight.toString());
+            List<SubtitleEntry> expected = highlightBySplitting(parts, sentencePosition, entriesToHighlight);
+            assertEquals(expected, SubtitleHighlighter.highlight(partEnds, sentencePosition, entriesToHighlight), highlight.toString());
+            assertEquals(
+                    expected,
+                    SubtitleHighlighter.highlight(partEnds, sentencePosition, entriesToHighlight,
+                            SubtitleOffsets.of(entries).slice(first, last + 1)),
+                    highlight.toString()
+            );
+        }
+    }
+
+    /**
+     * The reference highlighting, which walks through the entries and cuts their text
+     * into the parts of the Elasticsearch highlight split by the tags.
+     */
+    private static List<SubtitleEntry> highlightBySplitting(String[] highlightedParts, int sentencePosition,
+                                                            List<SubtitleEntry> subtitleEntries) {
+        List<SubtitleEntry> result = new ArrayList<>(subtitleEntries);
+
+        int partIndex = 0;
+        int endPosition = sentencePosition + highlightedParts[0].length();
+
+        for (int i = 0; i < subtitleEntries.size(); i++) {
+            SubtitleEntry currentEntry = subtitleEntries.get(i);
+            String entryText = currentEntry.text().get(0);
+
+            if (entryText.isEmpty()) {
+                continue;
+            }
+            if (endPosition >= entryText.length()) {
+                endPosition -= entryText.length() + 1; // length + a space character
+                continue;
+            }
+
+            List<String> highlightedEntryText = new ArrayList<>();
+            int startPosition = 0;
+            for (; partIndex < highlightedParts.length - 1 && endPosition <= entryText.length(); partIndex++) {
+                highlightedEntryText.add(entryText.substring(startPosition, endPosition));
+                startPosition = endPosition;
+                endPosition += highlightedParts[partIndex + 1].length();
+            }
+            String lastPart = entryText.substring(startPosition);
+            if (!lastPart.isBlank()) {
+                highlightedEntryText.add(lastPart);
+            }
+            endPosition -= entryText.length() + 1;
+
+            result.set(i, new SubtitleEntry(currentEntry.startTime(), currentEntry.endTime(), highlightedEntryText));
+        }
+        return result;
+    }
+
+    /**
+     * Generates entries with up to three lines, some of them empty. Only the first line is highlighted,
+     * so the other lines must not shift the positions of the entries after them.
+     */
+    private static List<SubtitleEntry> randomEntries(Random random) {
+        int entryCount = 1 + random.nextInt(6);
+        List<SubtitleEntry> entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            int lineCount = 1 + random.nextInt(3);
+            List<String> lines = new ArrayList<>(lineCount);
+            for (int j = 0; j < lineCount; j++) {
+                lines.add(randomLine(random));
+            }
+            entries.add(new SubtitleEntry(i, i + 1, lines));
+        }
+        return entries;
+    }
+
+    private static String randomLine(Random random) {
+        int wordCount = random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(8);
+        List<String> words = new ArrayList<>(wordCount);
+        for (int j = 0; j < wordCount; j++) {
+            words.add(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return String.join(" ", words);
+    }
+
+    private static int[] partEnds(String[] parts) {
+        int[] partEnds = new int[parts.length];
+        int end = 0;
+        for (int i = 0; i < parts.length; i++) {
+            end += parts[i].length();
+            partEnds[i] = end;
+        }
+        return partEnds;
+    }
 }
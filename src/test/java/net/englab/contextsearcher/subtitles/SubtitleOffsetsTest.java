@@ -0,0 +1,81 @@
+package net.englab.contextsearcher.subtitles;
+
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubtitleOffsetsTest {
+
+    // the text is "ab cde f"
+    private static final List<SubtitleEntry> ENTRIES = List.of(
+            new SubtitleEntry(0, 1, List.of("")),
+            new SubtitleEntry(1, 2, List.of("ab")),
+            new SubtitleEntry(2, 3, List.of("")),
+            new SubtitleEntry(3, 4, List.of("cde")),
+            new SubtitleEntry(4, 5, List.of("f")),
+            new SubtitleEntry(5, 6, List.of(""))
+    );
+
+    @Test
+    void entryAt() {
+        SubtitleOffsets offsets = SubtitleOffsets.of(ENTRIES);
+
+        int[] expected = {1, 1, 1, 3, 3, 3, 3, 4, 4};
+        for (int position = 0; position < expected.length; position++) {
+            assertEquals(expected[position], offsets.entryAt(position), "position " + position);
+        }
+        assertEquals(-1, offsets.entryAt(-1));
+        assertEquals(-1, offsets.entryAt(9));
+        assertEquals(3, offsets.start(3));
+        assertEquals(3, offsets.start(2));
+    }
+
+    @Test
+    void firstEndingAfter() {
+        SubtitleOffsets offsets = SubtitleOffsets.of(ENTRIES);
+
+        assertEquals(1, offsets.firstEndingAfter(0, 0));
+        assertEquals(1, offsets.firstEndingAfter(1, 0));
+        // the space after "ab" and the end of "ab" belong to the next non-empty entry
+        assertEquals(3, offsets.firstEndingAfter(2, 0));
+        assertEquals(3, offsets.firstEndingAfter(0, 2));
+        assertEquals(4, offsets.firstEndingAfter(6, 0));
+        assertEquals(6, offsets.firstEndingAfter(8, 0));
+        assertEquals(6, offsets.firstEndingAfter(0, 6));
+    }
+
+    @Test
+    void slice() {
+        SubtitleOffsets offsets = SubtitleOffsets.of(ENTRIES).slice(2, 5);
+
+        assertEquals(3, offsets.size());
+        assertEquals(0, offsets.start(0));
+        assertEquals(0, offsets.start(1));
+        assertEquals(4, offsets.start(2));
+        assertEquals(1, offsets.entryAt(0));
+        assertEquals(2, offsets.entryAt(5));
+        assertEquals(-1, offsets.entryAt(6));
+        assertEquals(2, offsets.firstEndingAfter(3, 0));
+        assertEquals(3, offsets.firstEndingAfter(5, 0));
+    }
+
+    @Test
+    void onlyTheFirstLineOfAnEntryIsCounted() {
+        // the text is "ab e", the highlighter never looks past the first line either
+        SubtitleOffsets offsets = SubtitleOffsets.of(List.of(
+                new SubtitleEntry(0, 1, List.of("ab", "", "cd")),
+                new SubtitleEntry(1, 2, List.of("e")),
+                new SubtitleEntry(2, 3, List.of("", "f"))
+        ));
+
+        assertEquals(3, offsets.start(1));
+        assertEquals(5, offsets.start(2));
+        assertEquals(0, offsets.entryAt(2));
+        assertEquals(1, offsets.entryAt(3));
+        assertEquals(1, offsets.entryAt(4));
+        assertEquals(-1, offsets.entryAt(5));
+    }
+}
@@ -0,0 +1,112 @@
+package net.englab.contextsearcher.subtitles;
+
+import net.englab.common.search.models.subtitles.SubtitleEntry;
+import net.englab.contextsearcher.exceptions.SubtitleFormatException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubtitleSnapshotTest {
+
+    private static final List<SubtitleEntry> FIRST = List.of(
+            new SubtitleEntry(0.0, 1.5, List.of("Hello")),
+            new SubtitleEntry(1.5, 3.0, List.of("naïve café — 日本語 😀"))
+    );
+    private static final List<SubtitleEntry> SECOND = List.of(new SubtitleEntry(0.0, 2.0, List.of("second")));
+    private static final List<SubtitleEntry> THIRD = List.of(new SubtitleEntry(1.0, 2.0, List.of("third", "video")));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void videosAreFoundById() throws IOException {
+        Path path = directory.resolve("videos-1.snapshot");
+        try (SubtitleSnapshotWriter writer = new SubtitleSnapshotWriter(path, null)) {
+            writer.add("first", SubtitleCodec.encode(FIRST));
+            writer.add("second", SubtitleCodec.encode(SECOND));
+            writer.finish(2);
+        }
+
+        SubtitleSnapshot snapshot = SubtitleSnapshot.open(path);
+
+        assertEquals(2, snapshot.videoCount());
+        assertEquals(2, snapshot.lastVideoId());
+        assertEquals(FIRST, snapshot.find("first"));
+        assertEquals(SECOND, snapshot.find("second"));
+        assertNull(snapshot.find("third"));
+        assertNull(snapshot.find(""));
+        assertFalse(Files.exists(directory.resolve("videos-1.snapshot.tmp")));
+    }
+
+    @Test
+    void manyVideos() throws IOException {
+        Path path = directory.resolve("videos-1.snapshot");
+        try (SubtitleSnapshotWriter writer = new SubtitleSnapshotWriter(path, null)) {
+            for (int i = 0; i < 1_000; i++) {
+                writer.add("video-" + i, SubtitleCodec.encode(List.of(new SubtitleEntry(i, i + 1, List.of("text " + i)))));
+            }
+            writer.finish(1_000);
+        }
+
+        SubtitleSnapshot snapshot = SubtitleSnapshot.open(path);
+
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals("text " + i, snapshot.find("video-" + i).getFirst().text().getFirst());
+        }
+        assertNull(snapshot.find("video-1000"));
+    }
+
+    @Test
+    void newVideosAreAppendedToTheExistingSnapshot() throws IOException {
+        Path path = directory.resolve("videos-1.snapshot");
+        try (SubtitleSnapshotWriter writer = new SubtitleSnapshotWriter(path, null)) {
+            writer.add("first", SubtitleCodec.encode(FIRST));
+            writer.add("second", SubtitleCodec.encode(SECOND));
+            writer.finish(2);
+        }
+        SubtitleSnapshot base = SubtitleSnapshot.open(path);
+
+        try (SubtitleSnapshotWriter writer = new SubtitleSnapshotWriter(path, base)) {
+            writer.add("third", SubtitleCodec.encode(THIRD));
+            writer.add("second", SubtitleCodec.encode(THIRD));
+            assertEquals(3, writer.videoCount());
+            writer.finish(4);
+        }
+        SubtitleSnapshot snapshot = SubtitleSnapshot.open(path);
+
+        assertEquals(3, snapshot.videoCount());
+        assertEquals(4, snapshot.lastVideoId());
+        assertEquals(FIRST, snapshot.find("first"));
+        assertEquals(THIRD, snapshot.find("second"));
+        assertEquals(THIRD, snapshot.find("third"));
+        // the base snapshot is still mapped and unaffected
+        assertEquals(SECOND, base.find("second"));
+        assertNull(base.find("third"));
+    }
+
+    @Test
+    void unfinishedSnapshotDoesNotReplaceTheTarget() throws IOException {
+        Path path = directory.resolve("videos-1.snapshot");
+        try (SubtitleSnapshotWriter writer = new SubtitleSnapshotWriter(path, null)) {
+            writer.add("first", SubtitleCodec.encode(FIRST));
+        }
+
+        assertFalse(Files.exists(path));
+        assertFalse(Files.exists(directory.resolve("videos-1.snapshot.tmp")));
+    }
+
+    @Test
+    void malformedFilesAreRejected() throws IOException {
+        Path empty = Files.write(directory.resolve("empty.snapshot"), new byte[0]);
+        Path garbage = Files.write(directory.resolve("garbage.snapshot"), new byte[64]);
+
+        assertThrows(SubtitleFormatException.class, () -> SubtitleSnapshot.open(empty));
+        assertThrows(SubtitleFormatException.class, () -> SubtitleSnapshot.open(garbage));
+    }
+}